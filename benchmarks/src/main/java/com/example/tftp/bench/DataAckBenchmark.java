@@ -0,0 +1,69 @@
+package com.example.tftp.bench;
+
+import com.example.tftp.model.TftpOptions;
+import com.example.tftp.model.TftpPacket;
+import com.example.tftp.model.TftpPacketView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One block's worth of codec work on both ends, without the network: the sender encodes DATA,
+ * the receiver decodes it and encodes the ACK, the sender decodes the ACK. Done once with
+ * {@link TftpPacket} objects and once the way the engines do it, with {@link TftpPacketView}
+ * over reused buffers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DataAckBenchmark {
+
+    @Param({"512", "1428", "8192"})
+    public int blockSize;
+
+    private byte[] payload;
+    private ByteBuffer dataBuffer;
+    private ByteBuffer ackBuffer;
+    private final TftpPacketView view = new TftpPacketView();
+    private int block;
+
+    @Setup
+    public void setUp() {
+        payload = new byte[blockSize];
+        dataBuffer = ByteBuffer.allocate(blockSize + TftpOptions.HEADER_SIZE);
+        ackBuffer = ByteBuffer.allocate(TftpOptions.HEADER_SIZE);
+    }
+
+    @Benchmark
+    public int packetObjects() throws IOException {
+        int n = ++block & 0xFFFF;
+        byte[] data = TftpPacket.createDATA(n, payload).toBytes();
+        TftpPacket received = TftpPacket.fromBytes(data);
+        byte[] ack = TftpPacket.createACK(received.getBlockNumber()).toBytes();
+        return TftpPacket.fromBytes(ack).getBlockNumber();
+    }
+
+    @Benchmark
+    public int packetView() {
+        int n = ++block & 0xFFFF;
+        TftpPacketView.beginData(dataBuffer, n).put(payload).flip();
+        view.wrap(dataBuffer);
+        TftpPacketView.encodeAck(ackBuffer, view.getBlockNumber());
+        return view.wrap(ackBuffer).getBlockNumber();
+    }
+}
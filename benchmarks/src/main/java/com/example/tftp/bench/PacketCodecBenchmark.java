@@ -0,0 +1,72 @@
+package com.example.tftp.bench;
+
+import com.example.tftp.model.TftpException;
+import com.example.tftp.model.TftpMode;
+import com.example.tftp.model.TftpOptions;
+import com.example.tftp.model.TftpPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** {@link TftpPacket#toBytes()} and {@link TftpPacket#fromBytes(byte[])} for each opcode. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketCodecBenchmark {
+
+    @Param({"RRQ", "WRQ", "DATA", "ACK", "ERROR", "OACK"})
+    public String opcode;
+
+    private TftpPacket packet;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        packet = create(opcode);
+        bytes = packet.toBytes();
+    }
+
+    // requests and OACK carry the options a windowed client asks for
+    static TftpPacket create(String opcode) {
+        switch (opcode) {
+            case "RRQ":
+                return TftpPacket.createRRQ("images/boot/vmlinuz-6.1.0", TftpMode.OCTET, TftpOptions.request(1428, 16, 0, 0));
+            case "WRQ":
+                return TftpPacket.createWRQ("images/boot/vmlinuz-6.1.0", TftpMode.OCTET, TftpOptions.request(1428, 16, 8_388_608, 0));
+            case "DATA":
+                return TftpPacket.createDATA(4242, new byte[TftpOptions.DEFAULT_BLOCK_SIZE]);
+            case "ACK":
+                return TftpPacket.createACK(4242);
+            case "ERROR":
+                return TftpPacket.createERROR(TftpException.FILE_NOT_FOUND, "File 'vmlinuz-6.1.0' not found");
+            case "OACK":
+                return TftpPacket.createOACK(TftpOptions.request(1428, 16, 8_388_608, 0));
+            default:
+                throw new IllegalArgumentException(opcode);
+        }
+    }
+
+    @Benchmark
+    public byte[] toBytes() throws IOException {
+        return packet.toBytes();
+    }
+
+    @Benchmark
+    public TftpPacket fromBytes() throws IOException {
+        return TftpPacket.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.tftp.bench;
+
+import com.example.tftp.io.TftpReader;
+import com.example.tftp.io.TftpWriter;
+import com.example.tftp.model.TftpException;
+import com.example.tftp.server.NioTftpServer;
+import com.example.tftp.server.TftpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Whole RRQ and WRQ transfers over loopback against a server running in the same JVM.
+ * One op is one file, so ops/s times fileSize is the goodput; with -prof gc the B/op
+ * figure covers client and server together.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    @Param({"pool", "nio"})
+    public String engine;
+
+    @Param({"65536", "1048576", "16777216"})
+    public int fileSize;
+
+    @Param({"1", "16"})
+    public int windowSize;
+
+    @Param({"1428"})
+    public int blockSize;
+
+    private Path serverDir;
+    private Path clientDir;
+    private File source;
+    private File target;
+    private int port;
+    private Runnable stopServer;
+    private Thread serverThread;
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        serverDir = Files.createTempDirectory("tftp-bench-server");
+        clientDir = Files.createTempDirectory("tftp-bench-client");
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        Files.write(serverDir.resolve("read.bin"), data);
+        source = clientDir.resolve("upload.bin").toFile();
+        Files.write(source.toPath(), data);
+        target = clientDir.resolve("download.bin").toFile();
+
+        try (DatagramSocket probe = new DatagramSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        if (engine.equals("nio")) {
+            NioTftpServer server = new NioTftpServer(port, serverDir.toString(), NioTftpServer.DEFAULT_EVENT_LOOPS);
+            stopServer = server::stop;
+            serverThread = new Thread(server::start, "bench-server");
+        } else {
+            TftpServer server = new TftpServer(port, serverDir.toString());
+            stopServer = server::stop;
+            serverThread = new Thread(server::start, "bench-server");
+        }
+        serverThread.setDaemon(true);
+        serverThread.start();
+        awaitServer();
+    }
+
+    // the server binds its socket on its own thread: retry a first read until it answers
+    private void awaitServer() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                read();
+                return;
+            } catch (IOException | TftpException e) {
+                if (System.nanoTime() > deadline) throw e;
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws Exception {
+        stopServer.run();
+        serverThread.join(5000);
+        try (Stream<Path> paths = Stream.concat(Files.walk(serverDir), Files.walk(clientDir))) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    // the server refuses to overwrite: every upload needs the name free again; a transfer takes
+    // milliseconds, so a per-invocation teardown does not skew the numbers
+    @TearDown(Level.Invocation)
+    public void removeUpload() {
+        serverDir.resolve("write.bin").toFile().delete();
+    }
+
+    @Benchmark
+    public File read() throws Exception {
+        TftpReader reader = new TftpReader();
+        reader.setBlockSize(blockSize);
+        reader.setWindowSize(windowSize);
+        reader.readFile("read.bin", target, InetAddress.getLoopbackAddress(), port, null);
+        return target;
+    }
+
+    @Benchmark
+    public File write() throws Exception {
+        TftpWriter writer = new TftpWriter();
+        writer.setBlockSize(blockSize);
+        writer.setWindowSize(windowSize);
+        writer.writeFile("write.bin", source, InetAddress.getLoopbackAddress(), port, null);
+        return source;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.tftp;
 
+import com.example.tftp.client.cli.TftpCli;
+import com.example.tftp.client.load.LoadGenerator;
 import com.example.tftp.client.view.ClientGUI;
 import com.example.tftp.server.TftpServer;
 import javax.swing.*;
@@ -12,6 +14,15 @@ public class Main {
                 System.arraycopy(args, 1, serverArgs, 0, serverArgs.length);
                 TftpServer.main(serverArgs);
             }
+            else if (args[0].equals("get") || args[0].equals("put")) {
+                // headless: no Swing class is loaded on this path
+                TftpCli.main(args);
+            }
+            else if (args[0].equals("load")) {
+                String[] loadArgs = new String[args.length - 1];
+                System.arraycopy(args, 1, loadArgs, 0, loadArgs.length);
+                LoadGenerator.main(loadArgs);
+            }
             else if (args[0].equals("client")) {
                 SwingUtilities.invokeLater(() -> {
                     ClientGUI frame = new ClientGUI();
@@ -35,6 +46,8 @@ public class Main {
         System.out.println("Modes:");
         System.out.println("  client     - Start TFTP client (default)");
         System.out.println("  server     - Start TFTP server");
+        System.out.println("  get, put   - Headless batch transfers (see TftpCli -h)");
+        System.out.println("  load       - Load generator for stress tests (see load -h)");
         System.out.println();
         System.out.println("Server options:");
         System.out.println("  -p PORT    - Port number (default: 69)");
@@ -44,5 +57,7 @@ public class Main {
         System.out.println("  java -jar tftp-client-server.jar");
         System.out.println("  java -jar tftp-client-server.jar client");
         System.out.println("  java -jar tftp-client-server.jar server -p 6969 -d /var/tftp");
+        System.out.println("  java -jar tftp-client-server.jar get -s 10.0.0.5 -j 8 boot.img initrd.img");
+        System.out.println("  java -jar tftp-client-server.jar load -p 6969 -c 2000 -f boot.img");
     }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.example.tftp.client;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Turns per-block progress into a few updates per second. The engines only bump counters;
+ * a timer samples them every {@code interval} and hands one {@link Snapshot} to the sink
+ * through {@code deliverOn} (e.g. {@code SwingUtilities::invokeLater}). A tick is skipped
+ * while the previous snapshot has not been consumed yet, so a busy receiver is never queued up.
+ */
+public class ProgressAggregator implements AutoCloseable {
+    public static final long DEFAULT_INTERVAL_MILLIS = 50;
+    // time constant of the "current" rate: short enough to follow changes, long enough not to flicker
+    private static final double RATE_TAU_SECONDS = 1.0;
+
+    /** Progress at one tick; rates in bytes per second, {@code etaMillis} -1 when unknown. */
+    public static final class Snapshot {
+        private final long transferred;
+        private final long total;
+        private final double currentRate;
+        private final double averageRate;
+        private final long etaMillis;
+        private final long elapsedMillis;
+
+        Snapshot(long transferred, long total, double currentRate, double averageRate, long etaMillis, long elapsedMillis) {
+            this.transferred = transferred;
+            this.total = total;
+            this.currentRate = currentRate;
+            this.averageRate = averageRate;
+            this.etaMillis = etaMillis;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getTransferred() { return transferred; }
+        public long getTotal() { return total; } // -1 if unknown
+        public double getCurrentRate() { return currentRate; }
+        public double getAverageRate() { return averageRate; }
+        public long getEtaMillis() { return etaMillis; }
+        public long getElapsedMillis() { return elapsedMillis; }
+    }
+
+    private final LongSupplier transferred;
+    private final LongSupplier total;
+    private final Consumer<Snapshot> sink;
+    private final Executor deliverOn;
+    private final long intervalMillis;
+    private final ScheduledExecutorService timer;
+    private final AtomicBoolean delivering = new AtomicBoolean();
+
+    private ScheduledFuture<?> ticks; // guarded by this
+    private volatile boolean running;
+    // sampler state, guarded by this
+    private long startedAt;
+    private long startBytes;
+    private long lastAt;
+    private long lastBytes;
+    private double rate;
+
+    public ProgressAggregator(LongSupplier transferred, LongSupplier total, Consumer<Snapshot> sink,
+                              Executor deliverOn, long intervalMillis) {
+        if (intervalMillis <= 0) throw new IllegalArgumentException("Interval must be positive: " + intervalMillis);
+        this.transferred = transferred;
+        this.total = total;
+        this.sink = sink;
+        this.deliverOn = deliverOn;
+        this.intervalMillis = intervalMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tftp-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Starts sampling from the current counters; does nothing if already running. */
+    public synchronized void start() {
+        if (ticks != null) return;
+        reset(System.nanoTime());
+        running = true;
+        ticks = timer.scheduleAtFixedRate(() -> tick(System.nanoTime()), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops sampling and delivers a last snapshot, so the final numbers are always shown. */
+    public synchronized void stop() {
+        if (ticks == null) return;
+        ticks.cancel(false);
+        ticks = null;
+        running = false;
+        Snapshot last = sample(System.nanoTime());
+        deliverOn.execute(() -> sink.accept(last));
+    }
+
+    @Override
+    public void close() {
+        stop();
+        timer.shutdown();
+    }
+
+    synchronized void reset(long now) {
+        startedAt = now;
+        lastAt = now;
+        startBytes = transferred.getAsLong();
+        lastBytes = startBytes;
+        rate = 0;
+    }
+
+    void tick(long now) {
+        if (delivering.get()) return; // the last one is still waiting to be shown
+        Snapshot snapshot = sample(now);
+        delivering.set(true);
+        deliverOn.execute(() -> {
+            try {
+                if (running) sink.accept(snapshot); // a tick that lost the race with stop() is dropped
+            } finally {
+                delivering.set(false);
+            }
+        });
+    }
+
+    synchronized Snapshot sample(long now) {
+        long bytes = transferred.getAsLong();
+        long size = total.getAsLong();
+        if (bytes < lastBytes) {
+            reset(now); // the counters started over (a new batch)
+            bytes = lastBytes;
+        }
+        double dt = (now - lastAt) / 1e9;
+        if (dt > 0) {
+            // exponential average that does not depend on how regular the ticks are
+            double alpha = 1 - Math.exp(-dt / RATE_TAU_SECONDS);
+            rate += alpha * ((bytes - lastBytes) / dt - rate);
+            lastAt = now;
+            lastBytes = bytes;
+        }
+        double elapsed = (now - startedAt) / 1e9;
+        double average = elapsed > 0 ? (bytes - startBytes) / elapsed : 0;
+
+        long eta = -1;
+        if (size >= 0 && bytes >= size) {
+            eta = 0;
+        } else if (size > 0) {
+            double basis = rate > 0 ? rate : average;
+            if (basis > 0) eta = (long) ((size - bytes) / basis * 1000);
+        }
+        return new Snapshot(bytes, size, rate, average, eta, (long) (elapsed * 1000));
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.tftp.client;
+
+import com.example.tftp.io.TftpReader;
+import com.example.tftp.io.TftpWriter;
+import com.example.tftp.model.TftpOptions;
+import com.example.tftp.model.TftpRollover;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Downloads and uploads run on at most {@code parallelism} worker threads, the rest wait in
+ * submission order. Each submitted transfer is a {@link Transfer} handle that can be cancelled
+ * on its own, queued or running. Transfers submitted while the queue is busy form one batch;
+ * the batch counters and the aggregate throughput cover it until the queue goes idle.
+ * Listener calls come from the worker threads.
+ */
+public class TransferQueue {
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int MAX_PARALLELISM = 64;
+
+    public enum Direction { DOWNLOAD, UPLOAD }
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    public interface Listener {
+        default void onStateChanged(Transfer transfer) {}
+        default void onProgress(Transfer transfer) {}
+        default void onLog(Transfer transfer, String message) {}
+        default void onOptionsNegotiated(Transfer transfer, TftpOptions options) {}
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Listener listener;
+    private final List<Transfer> batch = new CopyOnWriteArrayList<>();
+    private final LongAdder transferredBytes = new LongAdder();
+    private final AtomicInteger ids = new AtomicInteger();
+    private volatile TftpRollover rollover = TftpRollover.ZERO;
+    private volatile int timeout; // seconds, 0 = adaptive
+
+    private int pending; // queued + running, guarded by this
+    private long busySince; // System.nanoTime() when the batch started
+    private long idleSince; // when it ended, 0 while busy
+    private long bytesAtBusyStart;
+
+    public TransferQueue(int parallelism, Listener listener) {
+        checkParallelism(parallelism);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "tftp-transfer-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.listener = listener != null ? listener : new Listener() {};
+    }
+
+    /** Number of transfers running at the same time; queued ones start as slots free up. */
+    public void setParallelism(int parallelism) {
+        checkParallelism(parallelism);
+        if (parallelism > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(parallelism);
+            executor.setCorePoolSize(parallelism);
+        } else {
+            executor.setCorePoolSize(parallelism);
+            executor.setMaximumPoolSize(parallelism);
+        }
+    }
+
+    public int getParallelism() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /** Applies to transfers that start after the call. */
+    public void setRollover(TftpRollover rollover) {
+        this.rollover = rollover;
+    }
+
+    /** Fixed retransmission timeout to request (RFC 2349), 0 keeps the adaptive RTO. */
+    public void setTimeout(int seconds) {
+        this.timeout = seconds;
+    }
+
+    private static void checkParallelism(int parallelism) {
+        if (parallelism < 1 || parallelism > MAX_PARALLELISM) {
+            throw new IllegalArgumentException("Parallelism must be between 1 and " + MAX_PARALLELISM + ": " + parallelism);
+        }
+    }
+
+    public Transfer download(InetAddress server, int port, String remoteName, File localFile,
+                             int blockSize, int windowSize) {
+        return submit(new Transfer(Direction.DOWNLOAD, server, port, remoteName, localFile, blockSize, windowSize));
+    }
+
+    /** Uploads under the local file's name. */
+    public Transfer upload(InetAddress server, int port, File localFile, int blockSize, int windowSize) {
+        return submit(new Transfer(Direction.UPLOAD, server, port, localFile.getName(), localFile, blockSize, windowSize));
+    }
+
+    private Transfer submit(Transfer transfer) {
+        synchronized (this) {
+            if (pending++ == 0) {
+                batch.clear();
+                busySince = System.nanoTime();
+                idleSince = 0;
+                bytesAtBusyStart = transferredBytes.sum();
+            }
+        }
+        batch.add(transfer);
+        listener.onStateChanged(transfer);
+        transfer.future = executor.submit(transfer::run);
+        return transfer;
+    }
+
+    public void cancelAll() {
+        for (Transfer transfer : batch) {
+            transfer.cancel();
+        }
+    }
+
+    /** Cancels everything and stops the workers. */
+    public void shutdown() {
+        cancelAll();
+        executor.shutdown();
+    }
+
+    // ---------------------- STATS ----------------------
+
+    /** Transfers of the current (or last) batch in submission order. */
+    public List<Transfer> getBatch() {
+        return new ArrayList<>(batch);
+    }
+
+    public int getPendingCount() {
+        synchronized (this) {
+            return pending;
+        }
+    }
+
+    public int countBatch(State state) {
+        int count = 0;
+        for (Transfer transfer : batch) {
+            if (transfer.state == state) count++;
+        }
+        return count;
+    }
+
+    public long getBatchTransferred() {
+        long sum = 0;
+        for (Transfer transfer : batch) {
+            sum += transfer.transferred;
+        }
+        return sum;
+    }
+
+    /** Sum of the batch's file sizes, -1 while a download has not reported its size yet. */
+    public long getBatchTotal() {
+        long sum = 0;
+        for (Transfer transfer : batch) {
+            if (transfer.total < 0) return -1;
+            sum += transfer.total;
+        }
+        return sum;
+    }
+
+    /** Bytes moved by all transfers since the queue was created. */
+    public long getTransferredBytes() {
+        return transferredBytes.sum();
+    }
+
+    /** Bytes per second of the current (or last) batch, all transfers together. */
+    public synchronized double getThroughput() {
+        if (busySince == 0) return 0;
+        long end = idleSince != 0 ? idleSince : System.nanoTime();
+        double seconds = (end - busySince) / 1e9;
+        return seconds > 0 ? (transferredBytes.sum() - bytesAtBusyStart) / seconds : 0;
+    }
+
+    private synchronized void finished() {
+        if (--pending == 0) {
+            idleSince = System.nanoTime();
+        }
+    }
+
+    // ---------------------- TRANSFER ----------------------
+
+    /** One download or upload, also its cancel token. */
+    public final class Transfer implements TftpReader.ProgressCallback, TftpWriter.ProgressCallback {
+        private final int id = ids.incrementAndGet();
+        private final Direction direction;
+        private final InetAddress server;
+        private final int port;
+        private final String remoteName;
+        private final File localFile;
+        private final int blockSize;
+        private final int windowSize;
+
+        private volatile State state = State.QUEUED;
+        private volatile long transferred;
+        private volatile long total;
+        private volatile Exception error;
+        private volatile boolean cancelRequested;
+        private volatile long startedAt; // System.nanoTime()
+        private volatile long finishedAt;
+        private volatile long retransmits;
+        private volatile TftpReader reader;
+        private volatile TftpWriter writer;
+        private Future<?> future;
+
+        private Transfer(Direction direction, InetAddress server, int port, String remoteName, File localFile,
+                         int blockSize, int windowSize) {
+            this.direction = direction;
+            this.server = server;
+            this.port = port;
+            this.remoteName = remoteName;
+            this.localFile = localFile;
+            this.blockSize = blockSize;
+            this.windowSize = windowSize;
+            this.total = direction == Direction.UPLOAD ? localFile.length() : -1;
+        }
+
+        /** Removes a queued transfer, stops a running one at its next block. */
+        public void cancel() {
+            cancelRequested = true;
+            Future<?> queued = future;
+            if (state == State.QUEUED && queued != null && queued.cancel(false)) {
+                finish(State.CANCELLED); // never started
+                executor.purge();
+                return;
+            }
+            stopEngine();
+        }
+
+        private void stopEngine() {
+            TftpReader r = reader;
+            if (r != null) r.cancel();
+            TftpWriter w = writer;
+            if (w != null) w.cancel();
+        }
+
+        private void run() {
+            if (cancelRequested) {
+                finish(State.CANCELLED);
+                return;
+            }
+            startedAt = System.nanoTime();
+            setState(State.RUNNING);
+            try {
+                if (direction == Direction.DOWNLOAD) {
+                    TftpReader r = new TftpReader();
+                    r.setBlockSize(blockSize);
+                    r.setWindowSize(windowSize);
+                    r.setTimeout(timeout);
+                    r.setRollover(rollover);
+                    reader = r;
+                    r.readFile(remoteName, localFile, server, port, this);
+                } else {
+                    TftpWriter w = new TftpWriter();
+                    w.setBlockSize(blockSize);
+                    w.setWindowSize(windowSize);
+                    w.setTimeout(timeout);
+                    w.setRollover(rollover);
+                    writer = w;
+                    w.writeFile(remoteName, localFile, server, port, this);
+                }
+                if (cancelRequested) {
+                    if (direction == Direction.DOWNLOAD) localFile.delete();
+                    finish(State.CANCELLED);
+                } else {
+                    if (direction == Direction.DOWNLOAD) total = transferred;
+                    finish(State.COMPLETED);
+                }
+            } catch (Exception e) {
+                error = e;
+                if (direction == Direction.DOWNLOAD) localFile.delete(); // partial or empty
+                finish(cancelRequested ? State.CANCELLED : State.FAILED);
+            } finally {
+                reader = null;
+                writer = null;
+            }
+        }
+
+        private synchronized void finish(State result) {
+            if (isDone()) return;
+            TftpReader r = reader;
+            TftpWriter w = writer;
+            if (r != null) retransmits = r.getRetransmits();
+            if (w != null) retransmits = w.getRetransmits();
+            finishedAt = System.nanoTime();
+            state = result;
+            finished(); // before the listener, so it sees the queue counters settled
+            listener.onStateChanged(this);
+        }
+
+        private void setState(State state) {
+            this.state = state;
+            listener.onStateChanged(this);
+        }
+
+        // ---------------------- ENGINE CALLBACKS ----------------------
+
+        @Override
+        public void onProgress(long transferred, long total) {
+            transferredBytes.add(transferred - this.transferred);
+            this.transferred = transferred;
+            if (total >= 0) this.total = total;
+            if (cancelRequested) stopEngine();
+            listener.onProgress(this);
+        }
+
+        @Override
+        public void onLog(String message) {
+            // the engine clears its flag when it starts and logs the request before the first wait,
+            // so a cancel that came in between is repeated here
+            if (cancelRequested) stopEngine();
+            listener.onLog(this, message);
+        }
+
+        @Override
+        public void onOptionsNegotiated(TftpOptions options) {
+            listener.onOptionsNegotiated(this, options);
+        }
+
+        // ---------------------- GETTERS ----------------------
+        public int getId() { return id; }
+        public Direction getDirection() { return direction; }
+        public String getRemoteName() { return remoteName; }
+        public File getLocalFile() { return localFile; }
+        public State getState() { return state; }
+        public long getTransferred() { return transferred; }
+        public long getTotal() { return total; } // -1 until a download learns the size
+        public Exception getError() { return error; }
+        public long getRetransmits() { return retransmits; }
+        /** Time spent running so far, 0 while queued; a transfer cancelled in the queue never ran. */
+        public long getDurationNanos() {
+            if (startedAt == 0) return 0;
+            return (finishedAt != 0 ? finishedAt : System.nanoTime()) - startedAt;
+        }
+        public boolean isDone() { return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED; }
+
+        @Override
+        public String toString() {
+            return "#" + id + " " + direction.name().toLowerCase() + " " + remoteName;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.tftp.client.cli;
+
+import com.example.tftp.client.TransferQueue;
+import com.example.tftp.client.TransferQueue.State;
+import com.example.tftp.client.TransferQueue.Transfer;
+import com.example.tftp.model.TftpOptions;
+import com.example.tftp.model.TftpRollover;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless client for scripts and build agents: batch get/put through {@link TransferQueue},
+ * one summary line per file on stdout (TSV or JSON Lines), engine logs on stderr with -v.
+ * Nothing here touches AWT/Swing, keep it that way.
+ * Exit code: 0 all transfers completed, 1 some failed, 2 bad arguments.
+ */
+public class TftpCli {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private String host = "127.0.0.1";
+    private int port = 69;
+    private int blockSize = TftpOptions.DEFAULT_BLOCK_SIZE;
+    private int windowSize = TftpOptions.DEFAULT_WINDOW_SIZE;
+    private int timeout; // seconds, 0 = adaptive
+    private int parallelism = TransferQueue.DEFAULT_PARALLELISM;
+    private TftpRollover rollover = TftpRollover.ZERO;
+    private File localDir = new File(".");
+    private boolean json;
+    private boolean verbose;
+
+    public TftpCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new TftpCli(System.out, System.err).run(args));
+    }
+
+    public int run(String[] args) {
+        String command = null;
+        List<String> names = new ArrayList<>();
+        List<String> manifests = new ArrayList<>();
+        List<String> manifestEntries = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-h") || arg.equals("--help")) {
+                    printHelp();
+                    return EXIT_OK;
+                } else if (arg.equals("-v")) {
+                    verbose = true;
+                } else if (arg.startsWith("-") && arg.length() > 1) {
+                    if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+                    String value = args[++i];
+                    switch (arg) {
+                        case "-s": host = value; break;
+                        case "-p": port = Integer.parseInt(value); break;
+                        case "-b": blockSize = Integer.parseInt(value); break;
+                        case "-w": windowSize = Integer.parseInt(value); break;
+                        case "-t": timeout = Integer.parseInt(value); break;
+                        case "-j": parallelism = Integer.parseInt(value); break;
+                        case "-r": rollover = TftpRollover.fromValue(Integer.parseInt(value)); break;
+                        case "-d": localDir = new File(value); break;
+                        case "-f": manifests.add(value); break;
+                        case "-o":
+                            if (!value.equals("tsv") && !value.equals("json")) {
+                                throw new IllegalArgumentException("Unknown output format: " + value);
+                            }
+                            json = value.equals("json");
+                            break;
+                        default: throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                } else if (command == null) {
+                    command = arg;
+                } else {
+                    names.add(arg);
+                }
+            }
+            if (command == null || (!command.equals("get") && !command.equals("put"))) {
+                throw new IllegalArgumentException("Expected get or put");
+            }
+            // checks the ranges the same way the engines will
+            TftpOptions.request(blockSize, windowSize, -1, timeout);
+            for (String manifest : manifests) {
+                manifestEntries.addAll(readManifest(manifest));
+            }
+            if (names.isEmpty() && manifestEntries.isEmpty()) throw new IllegalArgumentException("No files given");
+
+            InetAddress server = InetAddress.getByName(host);
+            if (command.equals("get")) {
+                List<String[]> downloads = new ArrayList<>();
+                for (String name : names) {
+                    downloads.add(new String[]{name});
+                }
+                for (String entry : manifestEntries) {
+                    downloads.add(entry.split("\\s+", 2));
+                }
+                return get(server, downloads);
+            }
+            names.addAll(manifestEntries);
+            return put(server, names);
+        } catch (IllegalArgumentException | IOException e) {
+            err.println("tftp: " + e.getMessage());
+            err.println("Try -h for help");
+            return EXIT_USAGE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        }
+    }
+
+    // ---------------------- COMMANDS ----------------------
+
+    // "REMOTE [LOCAL]": relative local paths and bare names are resolved against -d
+    private int get(InetAddress server, List<String[]> entries) throws InterruptedException {
+        List<File> localFiles = new ArrayList<>();
+        for (String[] entry : entries) {
+            File local = new File(entry.length > 1 ? entry[1] : new File(entry[0]).getName());
+            localFiles.add(local.isAbsolute() ? local : new File(localDir, local.getPath()));
+        }
+        return runBatch(entries.size(), queue -> {
+            List<Transfer> transfers = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                transfers.add(queue.download(server, port, entries.get(i)[0], localFiles.get(i), blockSize, windowSize));
+            }
+            return transfers;
+        });
+    }
+
+    private int put(InetAddress server, List<String> patterns) throws IOException, InterruptedException {
+        List<File> files = new ArrayList<>();
+        for (String pattern : patterns) {
+            List<File> matched = expandGlob(pattern);
+            if (matched.isEmpty()) throw new IllegalArgumentException("No files match " + pattern);
+            files.addAll(matched);
+        }
+        // the server sees only the file name: two files with the same name would overwrite each other
+        Set<String> remoteNames = new HashSet<>();
+        for (File file : files) {
+            if (!file.isFile()) throw new IllegalArgumentException("File not found: " + file);
+            if (!remoteNames.add(file.getName())) {
+                throw new IllegalArgumentException("Duplicate remote name " + file.getName() + " (" + file + ")");
+            }
+        }
+        return runBatch(files.size(), queue -> {
+            List<Transfer> transfers = new ArrayList<>();
+            for (File file : files) {
+                transfers.add(queue.upload(server, port, file, blockSize, windowSize));
+            }
+            return transfers;
+        });
+    }
+
+    private interface Submitter {
+        List<Transfer> submit(TransferQueue queue);
+    }
+
+    private int runBatch(int count, Submitter submitter) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(count);
+        TransferQueue queue = new TransferQueue(parallelism, new TransferQueue.Listener() {
+            @Override
+            public void onStateChanged(Transfer transfer) {
+                if (transfer.isDone()) {
+                    printTransfer(transfer);
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onLog(Transfer transfer, String message) {
+                if (verbose) err.println(transfer.getRemoteName() + ": " + message);
+            }
+        });
+        queue.setRollover(rollover);
+        queue.setTimeout(timeout);
+
+        if (!json) {
+            out.println("status\top\tremote\tlocal\tbytes\tmillis\tbytes_per_sec\tretransmits\terror");
+        }
+        long startedAt = System.nanoTime();
+        List<Transfer> transfers = submitter.submit(queue);
+        done.await();
+        long millis = (System.nanoTime() - startedAt) / 1_000_000;
+        queue.shutdown();
+
+        printTotal(transfers, millis);
+        return transfers.stream().allMatch(t -> t.getState() == State.COMPLETED) ? EXIT_OK : EXIT_FAILED;
+    }
+
+    // ---------------------- SUMMARY ----------------------
+
+    private synchronized void printTransfer(Transfer t) {
+        long millis = t.getDurationNanos() / 1_000_000;
+        long bytes = t.getTransferred();
+        String op = t.getDirection() == TransferQueue.Direction.DOWNLOAD ? "get" : "put";
+        String error = t.getError() != null ? String.valueOf(t.getError().getMessage()) : "";
+        if (json) {
+            out.println("{\"type\":\"file\",\"status\":\"" + t.getState().name().toLowerCase() +
+                    "\",\"op\":\"" + op +
+                    "\",\"remote\":" + quote(t.getRemoteName()) +
+                    ",\"local\":" + quote(t.getLocalFile().getPath()) +
+                    ",\"bytes\":" + bytes +
+                    ",\"millis\":" + millis +
+                    ",\"bytes_per_sec\":" + rate(bytes, millis) +
+                    ",\"retransmits\":" + t.getRetransmits() +
+                    (error.isEmpty() ? "" : ",\"error\":" + quote(error)) + "}");
+        } else {
+            out.println(t.getState().name().toLowerCase() + "\t" + op + "\t" + tsv(t.getRemoteName()) + "\t" +
+                    tsv(t.getLocalFile().getPath()) + "\t" + bytes + "\t" + millis + "\t" + rate(bytes, millis) + "\t" +
+                    t.getRetransmits() + "\t" + tsv(error));
+        }
+    }
+
+    // wall time of the whole batch, so bytes_per_sec is the aggregate rate
+    private synchronized void printTotal(List<Transfer> transfers, long millis) {
+        long bytes = 0;
+        long retransmits = 0;
+        int completed = 0;
+        for (Transfer t : transfers) {
+            bytes += t.getTransferred();
+            retransmits += t.getRetransmits();
+            if (t.getState() == State.COMPLETED) completed++;
+        }
+        int failed = transfers.size() - completed;
+        if (json) {
+            out.println("{\"type\":\"total\",\"files\":" + transfers.size() + ",\"completed\":" + completed +
+                    ",\"failed\":" + failed + ",\"bytes\":" + bytes + ",\"millis\":" + millis +
+                    ",\"bytes_per_sec\":" + rate(bytes, millis) + ",\"retransmits\":" + retransmits + "}");
+        } else {
+            out.println("total\t-\t" + transfers.size() + " files\t-\t" + bytes + "\t" + millis + "\t" +
+                    rate(bytes, millis) + "\t" + retransmits + "\t" + (failed > 0 ? failed + " failed" : ""));
+        }
+        out.flush();
+    }
+
+    private static long rate(long bytes, long millis) {
+        return millis > 0 ? bytes * 1000 / millis : bytes;
+    }
+
+    private static String tsv(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // ---------------------- FILE LISTS ----------------------
+
+    // one entry per line, blank lines and # comments skipped; "-" reads stdin
+    static List<String> readManifest(String path) throws IOException {
+        List<String> lines;
+        if (path.equals("-")) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            lines = reader.lines().collect(Collectors.toList());
+        } else {
+            lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        }
+        List<String> entries = new ArrayList<>();
+        for (String line : lines) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) entries.add(line);
+        }
+        return entries;
+    }
+
+    /**
+     * Local files matching a glob such as {@code images/*.bin} or {@code out/**}{@code /*.img},
+     * sorted; a pattern without wildcards is returned as is. The walk starts at the directory
+     * part before the first wildcard, so the rest of the tree is not scanned.
+     */
+    static List<File> expandGlob(String pattern) throws IOException {
+        int wildcard = -1;
+        for (int i = 0; i < pattern.length() && wildcard < 0; i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) wildcard = i;
+        }
+        if (wildcard < 0) {
+            List<File> single = new ArrayList<>();
+            single.add(new File(pattern));
+            return single;
+        }
+        int sep = Math.max(pattern.lastIndexOf('/', wildcard), pattern.lastIndexOf(File.separatorChar, wildcard));
+        Path base = Paths.get(sep < 0 ? "." : pattern.substring(0, sep + 1));
+        String rest = pattern.substring(sep + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+        int depth = rest.contains("**") ? Integer.MAX_VALUE : rest.split("[/\\\\]").length;
+        if (!Files.isDirectory(base)) return new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(base.relativize(p)))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void printHelp() {
+        out.println("TFTP command-line client");
+        out.println("Usage: java TftpCli [options] get REMOTE... | put FILE|GLOB...");
+        out.println();
+        out.println("Options:");
+        out.println("  -s HOST    Server address (default: 127.0.0.1)");
+        out.println("  -p PORT    Server port (default: 69)");
+        out.println("  -b SIZE    Block size to request, " + TftpOptions.MIN_BLOCK_SIZE + "-" + TftpOptions.MAX_BLOCK_SIZE +
+                " (default: " + TftpOptions.DEFAULT_BLOCK_SIZE + ")");
+        out.println("  -w N       Window size to request, " + TftpOptions.MIN_WINDOW_SIZE + "-" + TftpOptions.MAX_WINDOW_SIZE +
+                " (default: " + TftpOptions.DEFAULT_WINDOW_SIZE + ")");
+        out.println("  -t SEC     Fixed retransmission timeout to request (default: adaptive)");
+        out.println("  -j N       Transfers running at the same time, 1-" + TransferQueue.MAX_PARALLELISM +
+                " (default: " + TransferQueue.DEFAULT_PARALLELISM + ")");
+        out.println("  -r 0|1     Block number after 65535, as configured on the server (default: 0)");
+        out.println("  -d DIR     Where get saves files (default: current directory)");
+        out.println("  -f FILE    Manifest, one entry per line (# comments, - for stdin):");
+        out.println("             get: REMOTE [LOCAL], put: FILE or GLOB");
+        out.println("  -o FORMAT  Summary on stdout: tsv (default) or json (one object per line)");
+        out.println("  -v         Transfer log on stderr");
+        out.println("  -h, --help Show this help message");
+        out.println();
+        out.println("Exit code: 0 all files transferred, 1 some failed, 2 bad arguments");
+        out.println();
+        out.println("Examples:");
+        out.println("  java TftpCli -s 10.0.0.5 get boot.img initrd.img");
+        out.println("  java TftpCli -s 10.0.0.5 -j 16 -b 1428 -w 8 put 'images/*.bin'");
+        out.println("  java TftpCli -s 10.0.0.5 -o json -f files.txt -d /tmp/out get");
+    }
+}
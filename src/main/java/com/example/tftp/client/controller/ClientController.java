@@ -1,310 +1,253 @@
 package com.example.tftp.client.controller;
 
+import com.example.tftp.client.ProgressAggregator;
+import com.example.tftp.client.TransferQueue;
+import com.example.tftp.client.TransferQueue.State;
+import com.example.tftp.client.TransferQueue.Transfer;
 import com.example.tftp.client.view.ClientGUI;
-import com.example.tftp.io.TftpReader;
-import com.example.tftp.io.TftpWriter;
 import com.example.tftp.model.TftpException;
+import com.example.tftp.model.TftpOptions;
 import com.example.tftp.server.TftpLogger;
+import com.example.tftp.server.TftpLogger.Level;
 
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 
-public class ClientController {
+public class ClientController implements TransferQueue.Listener {
     private final ClientGUI gui;
-
-    private volatile boolean transferInProgress = false;
-    private volatile boolean cancelRequested = false;
-
-    private long currentTransferred = 0;
-    private long knownTotal = -1;
+    private final TransferQueue queue;
+    private final ProgressAggregator progress;
 
     public ClientController(ClientGUI view) {
         this.gui = view;
+        this.queue = new TransferQueue(TransferQueue.DEFAULT_PARALLELISM, this);
+        // the engines report every block; the GUI gets at most one update per tick
+        this.progress = new ProgressAggregator(queue::getBatchTransferred, queue::getBatchTotal,
+                gui::showProgress, SwingUtilities::invokeLater, ProgressAggregator.DEFAULT_INTERVAL_MILLIS);
 
         TftpLogger.init("./log");
         TftpLogger.log("Client UI started");
     }
 
     public void browseFile() {
-        if (transferInProgress) {
-            gui.logError("Transfer in progress. Please wait or cancel.");
-            return;
-        }
         String p = gui.showFileChooser();
         if (p != null) gui.setFilePath(p);
     }
 
     public void download() {
-        if (transferInProgress) {
-            gui.logError("Another transfer is already in progress.");
-            return;
-        }
-
         String address = gui.getAddress();
         String portStr = gui.getPort();
-        String remoteFilename = gui.getDownloadFilename();
+        String remoteFilenames = gui.getDownloadFilename();
 
         if (address.isEmpty() || portStr.isEmpty()) {
             gui.logError("Please enter server address and port.");
             return;
         }
-        if (remoteFilename.isEmpty()) {
+        if (remoteFilenames.isEmpty()) {
             gui.logError("Please enter remote filename to download.");
             return;
         }
 
-        TftpLogger.log("Starting download request: remote=" + remoteFilename +
+        String[] names = remoteFilenames.split("[\\s,]+");
+        TftpLogger.log("Starting download request: remote=" + String.join(", ", names) +
                 ", server=" + address + ":" + portStr);
 
-        String savePath = gui.showSaveDialog(remoteFilename);
-        if (savePath == null) return;
-
-        TftpLogger.log("Saving file to: " + savePath);
-
-        File localFile = new File(savePath);
-        if (localFile.exists()) {
-            int result = JOptionPane.showConfirmDialog(
-                    null,
-                    "File '" + localFile.getName() + "' already exists.\nDo you want to overwrite it?",
-                    "Confirm Overwrite",
-                    JOptionPane.YES_NO_OPTION
-            );
-            if (result != JOptionPane.YES_OPTION) {
-                gui.log("Download cancelled: file already exists.");
-                TftpLogger.log("Download cancelled: user refused overwrite");
-                return;
+        List<File> localFiles = new ArrayList<>();
+        if (names.length == 1) {
+            String savePath = gui.showSaveDialog(names[0]);
+            if (savePath == null) return;
+            localFiles.add(new File(savePath));
+        } else {
+            String dir = gui.showDirectoryChooser();
+            if (dir == null) return;
+            for (String name : names) {
+                localFiles.add(new File(dir, new File(name).getName()));
             }
         }
 
+        List<String> existing = new ArrayList<>();
+        for (File localFile : localFiles) {
+            if (localFile.exists()) existing.add(localFile.getName());
+        }
+        if (!existing.isEmpty() && !gui.confirmOverwrite(String.join("', '", existing))) {
+            gui.log("Download cancelled: file already exists.");
+            TftpLogger.log("Download cancelled: user refused overwrite");
+            return;
+        }
+
         try {
             InetAddress server = InetAddress.getByName(address);
             int port = Integer.parseInt(portStr);
-            startDownload(server, port, remoteFilename, localFile);
+            prepareBatch(server, port);
+            for (int i = 0; i < names.length; i++) {
+                TftpLogger.log("Saving file to: " + localFiles.get(i).getAbsolutePath());
+                queue.download(server, port, names[i], localFiles.get(i),
+                        gui.getRequestedBlockSize(), gui.getRequestedWindowSize());
+            }
         } catch (Exception e) {
             gui.logError("Download start failed: " + e.getMessage());
-            TftpLogger.log("Download start failed: " + e.getMessage());
+            TftpLogger.error("Download start failed: " + e.getMessage());
         }
     }
 
-    private void startDownload(InetAddress server, int port, String remoteFilename, File localFile) {
-        transferInProgress = true;
-        cancelRequested = false;
-        currentTransferred = 0;
-        knownTotal = -1;
-
-        gui.updateConnectionStatus("Connected to " + server.getHostAddress() + ":" + port, new Color(0,150,0));
-        gui.updateStatus("Downloading...", Color.BLUE);
-        gui.updateFileInfo("Downloading: " + remoteFilename);
-        gui.setProgressIndeterminate(true);
-
-        TftpLogger.log("Connecting to server " + server.getHostAddress() + ":" + port);
-        TftpLogger.log("Downloading file: " + remoteFilename);
-
-        TftpReader reader = new TftpReader();
-
-        Runnable transfer = () -> {
-            try {
-                reader.readFile(remoteFilename, localFile, server, port, new TftpReader.ProgressCallback() {
-                    @Override
-                    public void onProgress(long transferred, long total) {
-                        currentTransferred = transferred;
-                        knownTotal = total > 0 ? total : -1;
-
-                        TftpLogger.log("Download progress: " + transferred + "/" + total);
-
-                        SwingUtilities.invokeLater(() ->
-                                gui.setProgress(transferred, knownTotal, gui.getCurrentBlockSize())
-                        );
-                    }
-
-                    @Override
-                    public void onLog(String message) {
-                        TftpLogger.log("CLIENT: " + message);
-                        SwingUtilities.invokeLater(() -> gui.log(message));
-                    }
-                });
-
-                if (cancelRequested) {
-                    SwingUtilities.invokeLater(() -> {
-                        gui.log("Download cancelled by user");
-                        gui.updateStatus("Download cancelled", Color.ORANGE);
-                    });
-                    TftpLogger.log("Download cancelled by user");
-                    if (localFile.exists()) localFile.delete();
-                } else {
-                    long finalSize = localFile.exists() ? localFile.length() : currentTransferred;
-
-                    SwingUtilities.invokeLater(() -> {
-                        gui.setProgress(finalSize, finalSize, gui.getCurrentBlockSize());
-                        gui.updateProgress(1.0, "Completed");
-                        gui.updateStatus("Download completed", new Color(0,150,0));
-                        gui.updateFileInfo("Saved: " + localFile.getName() + " (" + gui.formatBytes(finalSize) + ")");
-                        gui.log("Download completed: " + localFile.getAbsolutePath());
-                    });
-
-                    TftpLogger.log("Download completed: " + localFile.getAbsolutePath());
-                }
-            } catch (TftpException te) {
-                SwingUtilities.invokeLater(() -> {
-                    gui.logError(
-                            "\n──────── TFTP ERROR ────────" +
-                                    "\nFile: " + remoteFilename +
-                                    "\nError Code: " + te.getErrorCode() +
-                                    "\nMessage: " + te.getMessage() +
-                                    "\n──────────────────────────────\n"
-                    );
-                    gui.updateStatus("TFTP Error", Color.RED);
-                });
-                TftpLogger.log("TFTP Error during download: " + te.getMessage());
-            } catch (Exception ex) {
-                SwingUtilities.invokeLater(() -> {
-                    gui.logError("Download failed: " + ex.getMessage());
-                    gui.updateStatus("Download failed", Color.RED);
-                });
-                TftpLogger.log("Download failed: " + ex.getMessage());
-            } finally {
-                transferInProgress = false;
-                cancelRequested = false;
-                SwingUtilities.invokeLater(() -> gui.setProgressIndeterminate(false));
-            }
-        };
-
-        new Thread(transfer, "tftp-download").start();
-    }
-
     public void upload() {
-        if (transferInProgress) {
-            gui.logError("Another transfer is already in progress.");
-            return;
-        }
-
         String address = gui.getAddress();
         String portStr = gui.getPort();
-        String filePath = gui.getUploadFilename();
+        String filePaths = gui.getUploadFilename();
 
         if (address.isEmpty() || portStr.isEmpty()) {
             gui.logError("Please enter server address and port.");
             return;
         }
 
-        if (filePath.isEmpty()) {
+        if (filePaths.isEmpty()) {
             gui.logError("Please select a file to upload.");
             return;
         }
 
-        File localFile = new File(filePath);
-        if (!localFile.exists()) {
-            gui.logError("File not found: " + filePath);
-            return;
+        List<File> localFiles = new ArrayList<>();
+        for (String filePath : filePaths.split(File.pathSeparator)) {
+            File localFile = new File(filePath);
+            if (!localFile.exists()) {
+                gui.logError("File not found: " + filePath);
+                continue;
+            }
+            localFiles.add(localFile);
         }
-
-        TftpLogger.log("Starting upload request: file=" + localFile.getAbsolutePath() +
-                ", server=" + address + ":" + portStr);
+        if (localFiles.isEmpty()) return;
 
         try {
             InetAddress server = InetAddress.getByName(address);
             int port = Integer.parseInt(portStr);
-
-            startUpload(server, port, localFile);
+            prepareBatch(server, port);
+            for (File localFile : localFiles) {
+                TftpLogger.log("Starting upload request: file=" + localFile.getAbsolutePath() +
+                        ", server=" + address + ":" + portStr);
+                queue.upload(server, port, localFile, gui.getRequestedBlockSize(), gui.getRequestedWindowSize());
+            }
         } catch (Exception e) {
             gui.logError("Upload start failed: " + e.getMessage());
-            TftpLogger.log("Upload start failed: " + e.getMessage());
+            TftpLogger.error("Upload start failed: " + e.getMessage());
         }
     }
 
-    private void startUpload(InetAddress server, int port, File localFile) {
-        transferInProgress = true;
-        cancelRequested = false;
-        currentTransferred = 0;
-        knownTotal = localFile.length();
-
+    private void prepareBatch(InetAddress server, int port) {
+        queue.setParallelism(gui.getRequestedParallelism());
+        if (queue.getPendingCount() == 0) {
+            gui.setCurrentBlockSize(TftpOptions.DEFAULT_BLOCK_SIZE);
+            gui.setProgressIndeterminate(true);
+            progress.start();
+        }
         gui.updateConnectionStatus("Connected to " + server.getHostAddress() + ":" + port, new Color(0,150,0));
-        gui.updateStatus("Uploading...", Color.BLUE);
-        gui.updateFileInfo("Uploading: " + localFile.getName());
-        gui.setProgressIndeterminate(false);
-        gui.setProgress(0, knownTotal, gui.getCurrentBlockSize());
-
         TftpLogger.log("Connecting to server " + server.getHostAddress() + ":" + port);
-        TftpLogger.log("Uploading file: " + localFile.getAbsolutePath());
-
-        TftpWriter writer = new TftpWriter();
-
-        Runnable transfer = () -> {
-            try {
-                writer.writeFile(localFile.getName(), localFile, server, port, new TftpWriter.ProgressCallback() {
-                    @Override
-                    public void onProgress(long transferred, long total) {
-                        currentTransferred = transferred;
-                        knownTotal = total > 0 ? total : -1;
-
-                        TftpLogger.log("Upload progress: " + transferred + "/" + total);
+    }
 
-                        SwingUtilities.invokeLater(() ->
-                                gui.setProgress(transferred, knownTotal, gui.getCurrentBlockSize())
-                        );
-                    }
+    public void cancel() {
+        if (queue.getPendingCount() == 0) return;
+        queue.cancelAll();
 
-                    @Override
-                    public void onLog(String message) {
-                        TftpLogger.log("CLIENT: " + message);
-                        SwingUtilities.invokeLater(() -> gui.log(message));
-                    }
-                });
+        gui.log("Cancelling transfers...");
+        gui.updateStatus("Cancelling...", Color.ORANGE);
 
-                if (cancelRequested) {
-                    SwingUtilities.invokeLater(() -> {
-                        gui.log("Upload cancelled by user");
-                        gui.updateStatus("Upload cancelled", Color.ORANGE);
-                    });
-                    TftpLogger.log("Upload cancelled by user");
-                } else {
-                    SwingUtilities.invokeLater(() -> {
-                        gui.setProgress(knownTotal, knownTotal, gui.getCurrentBlockSize());
-                        gui.updateProgress(1.0, "Completed");
-                        gui.updateStatus("Upload completed", new Color(0,150,0));
-                        gui.updateFileInfo("Uploaded: " + localFile.getName() + " (" + gui.formatBytes(knownTotal) + ")");
-                        gui.log("Upload completed: " + localFile.getAbsolutePath());
-                    });
+        TftpLogger.log("User requested transfer cancellation");
+    }
 
-                    TftpLogger.log("Upload completed: " + localFile.getAbsolutePath());
-                }
-            } catch (TftpException te) {
-                SwingUtilities.invokeLater(() -> {
+    // ---------------------- QUEUE EVENTS (worker threads) ----------------------
+
+    @Override
+    public void onStateChanged(Transfer transfer) {
+        String what = transfer.getDirection() == TransferQueue.Direction.DOWNLOAD ? "Download" : "Upload";
+        switch (transfer.getState()) {
+            case QUEUED:
+                TftpLogger.log(what + " queued: " + transfer.getRemoteName());
+                break;
+            case RUNNING:
+                gui.log(what + " started: " + transfer.getRemoteName());
+                TftpLogger.log(what + " started: " + transfer.getRemoteName());
+                break;
+            case COMPLETED:
+                gui.log(what + " completed: " + transfer.getLocalFile().getAbsolutePath() +
+                        " (" + gui.formatBytes(transfer.getTransferred()) + ")");
+                TftpLogger.log(what + " completed: " + transfer.getLocalFile().getAbsolutePath());
+                break;
+            case CANCELLED:
+                gui.log(what + " cancelled by user: " + transfer.getRemoteName());
+                TftpLogger.log(what + " cancelled by user: " + transfer.getRemoteName());
+                break;
+            case FAILED:
+                Exception e = transfer.getError();
+                if (e instanceof TftpException) {
                     gui.logError(
                             "\n──────── TFTP ERROR ────────" +
-                                    "\nFile: " + localFile.getName() +
-                                    "\nError Code: " + te.getErrorCode() +
-                                    "\nMessage: " + te.getMessage() +
+                                    "\nFile: " + transfer.getRemoteName() +
+                                    "\nError Code: " + ((TftpException) e).getErrorCode() +
+                                    "\nMessage: " + e.getMessage() +
                                     "\n──────────────────────────────\n"
                     );
-                    gui.updateStatus("TFTP Error", Color.RED);
-                });
-                TftpLogger.log("TFTP Error during upload: " + te.getMessage());
-            } catch (Exception ex) {
-                SwingUtilities.invokeLater(() -> {
-                    gui.logError("Upload failed: " + ex.getMessage());
-                    gui.updateStatus("Upload failed", Color.RED);
-                });
-                TftpLogger.log("Upload failed: " + ex.getMessage());
-            } finally {
-                transferInProgress = false;
-                cancelRequested = false;
-                SwingUtilities.invokeLater(() -> gui.setProgressIndeterminate(false));
-            }
-        };
+                    TftpLogger.error("TFTP Error during " + what.toLowerCase() + ": " + e.getMessage());
+                } else {
+                    gui.logError(what + " failed: " + transfer.getRemoteName() + ": " + e.getMessage());
+                    TftpLogger.error(what + " failed: " + e.getMessage());
+                }
+                break;
+        }
+        refresh();
+    }
 
-        new Thread(transfer, "tftp-upload").start();
+    @Override
+    public void onProgress(Transfer transfer) {
+        // once per block: keep it out of the log unless debugging
+        if (TftpLogger.isEnabled(Level.DEBUG)) {
+            TftpLogger.debug(transfer + " progress: " + transfer.getTransferred() + "/" + transfer.getTotal());
+        }
     }
 
-    public void cancel() {
-        if (!transferInProgress) return;
-        cancelRequested = true;
+    @Override
+    public void onLog(Transfer transfer, String message) {
+        TftpLogger.log("CLIENT: " + transfer.getRemoteName() + ": " + message);
+        // engine chatter is per packet event; timeouts are the part worth seeing by default
+        Level level = message.startsWith("Timeout") ? Level.WARN : Level.DEBUG;
+        gui.log(level, transfer.getRemoteName() + ": " + message);
+    }
 
-        gui.log("Cancelling transfer...");
-        gui.updateStatus("Cancelling...", Color.ORANGE);
+    @Override
+    public void onOptionsNegotiated(Transfer transfer, TftpOptions options) {
+        gui.setCurrentBlockSize(options.getBlockSize());
+        TftpLogger.log("Negotiated block size: " + options.getBlockSize() +
+                ", window size: " + options.getWindowSize() + " for " + transfer.getRemoteName());
+    }
 
-        TftpLogger.log("User requested transfer cancellation");
+    // сводка по всей пачке передач: статус, скорость, прогресс
+    private void refresh() {
+        int running = queue.countBatch(State.RUNNING);
+        int queued = queue.countBatch(State.QUEUED);
+        int completed = queue.countBatch(State.COMPLETED);
+        int failed = queue.countBatch(State.FAILED);
+        int total = queue.getBatch().size();
+        String speed = gui.formatBytes((long) queue.getThroughput()) + "/s";
+
+        if (running + queued > 0) {
+            gui.updateStatus("Transferring: " + running + " running, " + queued + " queued", Color.BLUE);
+            gui.updateFileInfo(completed + " of " + total + " done, " + speed);
+            return;
+        }
+
+        long bytes = queue.getBatchTransferred();
+        progress.stop(); // last snapshot, posted before the final status below
+        gui.setProgressIndeterminate(false);
+        gui.setProgress(bytes, queue.getBatchTotal(), gui.getCurrentBlockSize());
+        gui.updateFileInfo(completed + " of " + total + " done (" + gui.formatBytes(bytes) + ", " + speed + ")");
+        if (failed > 0) {
+            gui.updateStatus(failed + " transfer(s) failed", Color.RED);
+        } else if (completed < total) {
+            gui.updateStatus("Transfer cancelled", Color.ORANGE);
+        } else {
+            gui.updateProgress(1.0, "Completed");
+            gui.updateStatus("Transfer completed", new Color(0,150,0));
+        }
     }
 }
@@ -0,0 +1,238 @@
+package com.example.tftp.client.load;
+
+import com.example.tftp.model.TftpException;
+import com.example.tftp.model.TftpMode;
+import com.example.tftp.model.TftpOptions;
+import com.example.tftp.model.TftpPacket;
+import com.example.tftp.model.TftpPacketView;
+import com.example.tftp.model.TftpRollover;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One simulated client: a lock-step RRQ or WRQ that throws received data away (or uploads
+ * a prepared payload) so that the server, not the client's disk, is what gets measured.
+ * Every datagram it sends or receives is dropped with probability {@code loss}, which
+ * stands in for a lossy link in both directions. Retransmission uses a fixed timeout and
+ * retry count, the way PXE firmware does, not the adaptive RTO of {@link com.example.tftp.io.TftpReader}.
+ */
+class LoadClient {
+    private final InetAddress server;
+    private final int port;
+    private final int requestedBlockSize;
+    private final int timeoutMillis;
+    private final int maxRetries;
+    private final double loss;
+    private final TftpRollover rollover;
+    private final LoadStats stats;
+
+    private DatagramSocket socket;
+    private SocketAddress serverTid;
+    private byte[] receiveBytes;
+    private DatagramPacket receiveDatagram;
+    private final TftpPacketView view = new TftpPacketView();
+    private long transferred;
+    private long retransmits;
+    private long drops;
+    private int serverError; // code of the ERROR packet that ended the transfer, -1 if none
+
+    LoadClient(InetAddress server, int port, int blockSize, int timeoutMillis, int maxRetries, double loss,
+               TftpRollover rollover, LoadStats stats) {
+        this.server = server;
+        this.port = port;
+        this.requestedBlockSize = blockSize;
+        this.timeoutMillis = timeoutMillis;
+        this.maxRetries = maxRetries;
+        this.loss = loss;
+        this.rollover = rollover;
+        this.stats = stats;
+    }
+
+    /** Runs one transfer to the end and records its outcome; {@code payload} is null for an RRQ. */
+    void transfer(String filename, byte[] payload) {
+        boolean write = payload != null;
+        serverTid = null;
+        transferred = 0;
+        retransmits = 0;
+        drops = 0;
+        serverError = -1;
+        int capacity = Math.max(requestedBlockSize, TftpOptions.DEFAULT_BLOCK_SIZE) + TftpOptions.HEADER_SIZE;
+        receiveBytes = new byte[capacity];
+        receiveDatagram = new DatagramPacket(receiveBytes, capacity);
+
+        long startedAt = System.nanoTime();
+        try (DatagramSocket s = new DatagramSocket()) {
+            socket = s;
+            if (write) {
+                write(filename, payload);
+            } else {
+                read(filename);
+            }
+            stats.completed(write, System.nanoTime() - startedAt, transferred);
+        } catch (SocketTimeoutException e) {
+            stats.timedOut(write, transferred);
+        } catch (TftpException e) {
+            if (serverError >= 0) {
+                stats.errorPacket(write, serverError, transferred);
+            } else {
+                stats.failed(write, transferred);
+            }
+        } catch (IOException e) {
+            stats.failed(write, transferred);
+        } finally {
+            socket = null;
+            stats.addRetransmits(retransmits);
+            stats.addDrops(drops);
+        }
+    }
+
+    // ---------------------- RRQ ----------------------
+
+    private void read(String filename) throws IOException, TftpException {
+        Map<String, String> requested = TftpOptions.request(requestedBlockSize, TftpOptions.DEFAULT_WINDOW_SIZE);
+        byte[] rrq = TftpPacket.createRRQ(filename, TftpMode.OCTET, requested).toBytes();
+        DatagramPacket last = new DatagramPacket(rrq, rrq.length, server, port);
+        ByteBuffer ackBuffer = ByteBuffer.allocate(TftpOptions.HEADER_SIZE);
+        int blockSize = TftpOptions.DEFAULT_BLOCK_SIZE; // until an OACK says otherwise
+        long expected = 1;
+        send(last);
+
+        while (true) {
+            TftpPacketView packet = receiveOrResend(last);
+            if (packet.isOack() && expected == 1 && !requested.isEmpty()) {
+                blockSize = TftpOptions.fromOack(requested, packet.toPacket().getOptions()).getBlockSize();
+                last = ack(ackBuffer, 0);
+                send(last);
+            } else if (packet.isData()) {
+                long block = rollover.fromWire(packet.getBlockNumber(), expected);
+                if (block == expected) {
+                    transferred += packet.getDataLength();
+                    last = ack(ackBuffer, block);
+                    send(last);
+                    if (packet.getDataLength() < blockSize) return; // no dallying
+                    expected++;
+                } else if (block < expected) {
+                    // a duplicate means our ACK was lost: send it again
+                    retransmits++;
+                    send(last);
+                }
+            }
+        }
+    }
+
+    private DatagramPacket ack(ByteBuffer buffer, long block) {
+        TftpPacketView.encodeAck(buffer, rollover.toWire(block));
+        return new DatagramPacket(buffer.array(), buffer.limit(), serverTid);
+    }
+
+    // ---------------------- WRQ ----------------------
+
+    private void write(String filename, byte[] payload) throws IOException, TftpException {
+        Map<String, String> requested = TftpOptions.request(requestedBlockSize, TftpOptions.DEFAULT_WINDOW_SIZE);
+        byte[] wrq = TftpPacket.createWRQ(filename, TftpMode.OCTET, requested).toBytes();
+        DatagramPacket last = new DatagramPacket(wrq, wrq.length, server, port);
+        ByteBuffer dataBuffer = ByteBuffer.allocate(Math.max(requestedBlockSize, TftpOptions.DEFAULT_BLOCK_SIZE)
+                + TftpOptions.HEADER_SIZE);
+        int blockSize = TftpOptions.DEFAULT_BLOCK_SIZE;
+        long lastBlock = 0;
+        long sent = 0; // 0 while the request is unanswered
+        send(last);
+
+        while (true) {
+            TftpPacketView packet = receiveOrResend(last);
+            if (sent == 0 && packet.isOack() && !requested.isEmpty()) {
+                blockSize = TftpOptions.fromOack(requested, packet.toPacket().getOptions()).getBlockSize();
+            } else if (!packet.isAck() || rollover.fromWire(packet.getBlockNumber(), sent) != sent) {
+                // duplicate ACKs are not answered (Sorcerer's Apprentice)
+                continue;
+            } else if (sent > 0) {
+                transferred = Math.min(sent * blockSize, payload.length);
+                if (sent == lastBlock) return;
+            }
+            if (sent == 0) {
+                lastBlock = payload.length / blockSize + 1;
+            }
+            sent++;
+            int offset = (int) ((sent - 1) * blockSize);
+            int length = Math.min(blockSize, payload.length - offset);
+            TftpPacketView.beginData(dataBuffer, rollover.toWire(sent)).put(payload, offset, length).flip();
+            last = new DatagramPacket(dataBuffer.array(), dataBuffer.limit(), serverTid);
+            send(last);
+        }
+    }
+
+    // ---------------------- DATAGRAMS ----------------------
+
+    private void send(DatagramPacket datagram) throws IOException {
+        if (dropped()) {
+            drops++;
+            return;
+        }
+        socket.send(datagram);
+    }
+
+    /**
+     * Next packet from the server's TID; resends {@code last} on every timeout and throws
+     * SocketTimeoutException once the retries are used up. An ERROR packet ends the
+     * transfer with a TftpException carrying the server's code.
+     */
+    private TftpPacketView receiveOrResend(DatagramPacket last) throws IOException, TftpException {
+        for (int attempt = 0; ; attempt++) {
+            TftpPacketView packet = receive();
+            if (packet != null) {
+                if (packet.isError()) {
+                    serverError = packet.getErrorCode();
+                    throw new TftpException(packet.getErrorMessage(), packet.getErrorCode());
+                }
+                return packet;
+            }
+            if (attempt == maxRetries) {
+                throw new SocketTimeoutException("No answer after " + maxRetries + " retries");
+            }
+            retransmits++;
+            send(last);
+        }
+    }
+
+    // null when nothing survived the injected loss within one timeout
+    private TftpPacketView receive() throws IOException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (true) {
+            int left = (int) ((deadline - System.nanoTime()) / 1_000_000);
+            if (left <= 0) return null;
+            socket.setSoTimeout(left);
+            receiveDatagram.setLength(receiveBytes.length);
+            try {
+                socket.receive(receiveDatagram);
+            } catch (SocketTimeoutException e) {
+                return null;
+            }
+            if (dropped()) {
+                drops++;
+                continue;
+            }
+            // the first answer fixes the server's TID; another TID, e.g. a second handler
+            // started by a retransmitted request, is told to go away as RFC 1350 asks
+            if (serverTid == null && receiveDatagram.getAddress().equals(server)) {
+                serverTid = receiveDatagram.getSocketAddress();
+            } else if (!receiveDatagram.getSocketAddress().equals(serverTid)) {
+                byte[] error = TftpPacket.createERROR(TftpException.UNKNOWN_TRANSFER_ID, "Unknown transfer ID").toBytes();
+                send(new DatagramPacket(error, error.length, receiveDatagram.getSocketAddress()));
+                continue;
+            }
+            return view.wrap(ByteBuffer.wrap(receiveBytes, 0, receiveDatagram.getLength()));
+        }
+    }
+
+    private boolean dropped() {
+        return loss > 0 && ThreadLocalRandom.current().nextDouble() < loss;
+    }
+}
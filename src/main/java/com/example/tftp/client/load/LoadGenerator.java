@@ -0,0 +1,221 @@
+package com.example.tftp.client.load;
+
+import com.example.tftp.model.TftpOptions;
+import com.example.tftp.model.TftpRollover;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress tool for capacity planning: N simulated clients hammer one server with a weighted
+ * mix of RRQs and a share of WRQs, either all at once (a boot storm) or at a fixed arrival
+ * rate, optionally through injected packet loss. Prints latency percentiles, throughput,
+ * timeouts and ERROR packets once every transfer has ended.
+ * Exit code: 0 all transfers completed, 1 some failed, 2 bad arguments.
+ */
+public class LoadGenerator {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private String host = "127.0.0.1";
+    private int port = 69;
+    private int clients = 100;
+    private int transfers = -1; // default: one per client
+    private double rate; // arrivals per second, 0 = as fast as clients free up
+    private final List<String> files = new ArrayList<>();
+    private final List<Integer> weights = new ArrayList<>();
+    private int writePercent;
+    private int uploadSize = 65536;
+    private double loss;
+    private int blockSize = TftpOptions.DEFAULT_BLOCK_SIZE;
+    private int timeoutMillis = 1000;
+    private int retries = 5;
+    private TftpRollover rollover = TftpRollover.ZERO;
+
+    public LoadGenerator(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new LoadGenerator(System.out, System.err).run(args));
+    }
+
+    public int run(String[] args) {
+        InetAddress server;
+        try {
+            if (!parse(args)) {
+                printHelp();
+                return EXIT_OK;
+            }
+            server = InetAddress.getByName(host);
+        } catch (IllegalArgumentException | IOException e) {
+            err.println("tftp-load: " + e.getMessage());
+            err.println("Try -h for help");
+            return EXIT_USAGE;
+        }
+
+        LoadStats stats = new LoadStats();
+        long elapsed;
+        try {
+            elapsed = generate(server, stats);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        }
+        out.println(stats.report(elapsed));
+        out.flush();
+        return stats.getCompleted() == stats.getTransfers() ? EXIT_OK : EXIT_FAILED;
+    }
+
+    // false when help was asked for
+    boolean parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-h") || arg.equals("--help")) {
+                return false;
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "-s": host = value; break;
+                case "-p": port = Integer.parseInt(value); break;
+                case "-c": clients = Integer.parseInt(value); break;
+                case "-n": transfers = Integer.parseInt(value); break;
+                case "-a": rate = Double.parseDouble(value); break;
+                case "-f": parseMix(value); break;
+                case "-W": writePercent = Integer.parseInt(value); break;
+                case "-u": uploadSize = Integer.parseInt(value); break;
+                case "-L": loss = Double.parseDouble(value) / 100; break;
+                case "-b": blockSize = Integer.parseInt(value); break;
+                case "-t": timeoutMillis = Integer.parseInt(value); break;
+                case "-R": retries = Integer.parseInt(value); break;
+                case "-r": rollover = TftpRollover.fromValue(Integer.parseInt(value)); break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (transfers < 0) transfers = clients;
+        TftpOptions.request(blockSize, TftpOptions.DEFAULT_WINDOW_SIZE); // range check
+        if (clients < 1 || transfers < 1) throw new IllegalArgumentException("-c and -n must be at least 1");
+        if (writePercent < 0 || writePercent > 100) throw new IllegalArgumentException("-W must be 0-100: " + writePercent);
+        if (loss < 0 || loss >= 1) throw new IllegalArgumentException("-L must be 0 or more and below 100");
+        if (rate < 0 || uploadSize < 0 || timeoutMillis < 1 || retries < 0) {
+            throw new IllegalArgumentException("-a, -u, -t and -R must not be negative");
+        }
+        if (files.isEmpty() && writePercent < 100) throw new IllegalArgumentException("No files to read, use -f");
+        return true;
+    }
+
+    // "boot.img:8,initrd.img:2,pxelinux.0": weights default to 1
+    void parseMix(String mix) {
+        for (String entry : mix.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            int colon = entry.lastIndexOf(':');
+            int weight = 1;
+            if (colon > 0) {
+                weight = Integer.parseInt(entry.substring(colon + 1));
+                entry = entry.substring(0, colon);
+            }
+            if (weight < 1) throw new IllegalArgumentException("Weight must be at least 1: " + entry);
+            files.add(entry);
+            weights.add(weight);
+        }
+    }
+
+    /** File for the weighted draw {@code r} in [0, total weight). */
+    String pick(int r) {
+        for (int i = 0; i < files.size(); i++) {
+            r -= weights.get(i);
+            if (r < 0) return files.get(i);
+        }
+        throw new IllegalArgumentException("Draw out of range");
+    }
+
+    // returns the wall time of the run in nanos
+    private long generate(InetAddress server, LoadStats stats) throws InterruptedException {
+        byte[] payload = new byte[uploadSize];
+        new Random(42).nextBytes(payload);
+        int totalWeight = weights.stream().mapToInt(Integer::intValue).sum();
+        // uploads need names the server does not have yet: the server refuses to overwrite
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        ThreadLocal<LoadClient> client = ThreadLocal.withInitial(() ->
+                new LoadClient(server, port, blockSize, timeoutMillis, retries, loss, rollover, stats));
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+
+        err.println("tftp-load: " + transfers + " transfers, " + clients + " clients, " +
+                (rate > 0 ? rate + "/s" : "all at once") + ", " + writePercent + "% WRQ, " + loss * 100 + "% loss");
+        ExecutorService pool = Executors.newFixedThreadPool(clients, r -> {
+            Thread thread = new Thread(r, "tftp-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < transfers; i++) {
+            if (rate > 0) {
+                long due = startedAt + (long) (i * 1e9 / rate);
+                long wait = due - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            int seq = i;
+            pool.execute(() -> {
+                active.incrementAndGet();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                if (random.nextInt(100) < writePercent) {
+                    client.get().transfer("load-" + runId + "-" + seq + ".bin", payload);
+                } else {
+                    client.get().transfer(pick(random.nextInt(totalWeight)), null);
+                }
+                active.decrementAndGet();
+                done.incrementAndGet();
+            });
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+            err.println(String.format("tftp-load: %.0f s, %d/%d done, %d active, %d timeouts",
+                    (System.nanoTime() - startedAt) / 1e9, done.get(), transfers, active.get(), stats.getTimeouts()));
+        }
+        return System.nanoTime() - startedAt;
+    }
+
+    private void printHelp() {
+        out.println("TFTP load generator");
+        out.println("Usage: java LoadGenerator [options] -f FILE[:WEIGHT],...");
+        out.println();
+        out.println("Options:");
+        out.println("  -s HOST    Server address (default: 127.0.0.1)");
+        out.println("  -p PORT    Server port (default: 69)");
+        out.println("  -c N       Simulated clients, i.e. transfers in flight at most (default: 100)");
+        out.println("  -n N       Transfers in total (default: one per client)");
+        out.println("  -a RATE    New transfers per second, 0 starts them as clients free up (default: 0)");
+        out.println("  -f MIX     Files to read with relative weights, e.g. boot.img:8,initrd.img:2");
+        out.println("  -W PCT     Share of transfers that are WRQs, 0-100 (default: 0)");
+        out.println("  -u BYTES   Size of each upload (default: 65536); uploads are left on the server");
+        out.println("  -L PCT     Injected loss, per datagram in each direction (default: 0)");
+        out.println("  -b SIZE    Block size to request (default: " + TftpOptions.DEFAULT_BLOCK_SIZE + ")");
+        out.println("  -t MS      Client retransmission timeout (default: 1000)");
+        out.println("  -R N       Retransmissions before a transfer counts as timed out (default: 5)");
+        out.println("  -r 0|1     Block number after 65535, as configured on the server (default: 0)");
+        out.println("  -h, --help Show this help message");
+        out.println();
+        out.println("Exit code: 0 all transfers completed, 1 some failed, 2 bad arguments");
+        out.println();
+        out.println("Examples:");
+        out.println("  java LoadGenerator -p 6969 -c 2000 -f boot.img        2000 simultaneous RRQs");
+        out.println("  java LoadGenerator -p 6969 -c 200 -n 10000 -a 500 -f boot.img:9,initrd.img:1 -W 5 -L 1");
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.tftp.client.load;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of a load run, filled in by every simulated client as its transfer ends.
+ * Latencies are kept as raw samples, so percentiles are exact: a run of a few hundred
+ * thousand transfers costs a few megabytes.
+ */
+public class LoadStats {
+    private long[] latencies = new long[1024]; // nanos of completed transfers
+    private int completed;
+    private int reads;
+    private int writes;
+    private int timeouts;
+    private int failures; // IO and protocol errors on the client side
+    private final Map<Integer, Integer> errorPackets = new TreeMap<>(); // ERROR code -> count
+    private long bytes;
+    private long retransmits;
+    private long drops; // datagrams thrown away by the injected loss
+
+    public synchronized void completed(boolean write, long nanos, long transferred) {
+        count(write);
+        if (completed == latencies.length) {
+            latencies = Arrays.copyOf(latencies, completed * 2);
+        }
+        latencies[completed++] = nanos;
+        bytes += transferred;
+    }
+
+    /** The server stopped answering: the client ran out of retransmissions. */
+    public synchronized void timedOut(boolean write, long transferred) {
+        count(write);
+        timeouts++;
+        bytes += transferred;
+    }
+
+    /** The server ended the transfer with an ERROR packet. */
+    public synchronized void errorPacket(boolean write, int code, long transferred) {
+        count(write);
+        errorPackets.merge(code, 1, Integer::sum);
+        bytes += transferred;
+    }
+
+    public synchronized void failed(boolean write, long transferred) {
+        count(write);
+        failures++;
+        bytes += transferred;
+    }
+
+    public synchronized void addRetransmits(long count) {
+        retransmits += count;
+    }
+
+    public synchronized void addDrops(long count) {
+        drops += count;
+    }
+
+    private void count(boolean write) {
+        if (write) writes++; else reads++;
+    }
+
+    /** Latency of completed transfers at {@code percentile} (0-100, nearest rank), 0 if none completed. */
+    public synchronized long percentileNanos(double percentile) {
+        if (completed == 0) return 0;
+        long[] sorted = Arrays.copyOf(latencies, completed);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * completed);
+        return sorted[Math.max(0, Math.min(completed, rank) - 1)];
+    }
+
+    // ---------------------- GETTERS ----------------------
+    public synchronized int getTransfers() { return reads + writes; }
+    public synchronized int getReads() { return reads; }
+    public synchronized int getWrites() { return writes; }
+    public synchronized int getCompleted() { return completed; }
+    public synchronized int getTimeouts() { return timeouts; }
+    public synchronized int getFailures() { return failures; }
+    public synchronized int getErrorPackets() { return errorPackets.values().stream().mapToInt(Integer::intValue).sum(); }
+    public synchronized Map<Integer, Integer> getErrorPacketsByCode() { return new TreeMap<>(errorPackets); }
+    public synchronized long getBytes() { return bytes; }
+    public synchronized long getRetransmits() { return retransmits; }
+    public synchronized long getDrops() { return drops; }
+
+    /** Multi-line report; {@code elapsedNanos} is the wall time of the run, so throughput is the aggregate. */
+    public synchronized String report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "transfers    %d (%d rrq, %d wrq) in %.2f s%n",
+                getTransfers(), reads, writes, seconds));
+        sb.append(String.format(Locale.ROOT, "completed    %d%n", completed));
+        sb.append(String.format(Locale.ROOT, "timeouts     %d%n", timeouts));
+        sb.append(String.format(Locale.ROOT, "error pkts   %d%s%n", getErrorPackets(),
+                errorPackets.isEmpty() ? "" : " " + errorPackets));
+        sb.append(String.format(Locale.ROOT, "failures     %d%n", failures));
+        sb.append(String.format(Locale.ROOT, "throughput   %.2f MB/s, %.1f transfers/s (%d bytes)%n",
+                seconds > 0 ? bytes / seconds / (1024 * 1024) : 0, seconds > 0 ? completed / seconds : 0, bytes));
+        sb.append(String.format(Locale.ROOT, "latency ms   p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                millis(percentileNanos(50)), millis(percentileNanos(90)), millis(percentileNanos(99)),
+                millis(percentileNanos(99.9)), millis(percentileNanos(100))));
+        sb.append(String.format(Locale.ROOT, "retransmits  %d, injected drops %d", retransmits, drops));
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -1,20 +1,26 @@
 package com.example.tftp.client.view;
 
+import com.example.tftp.client.ProgressAggregator;
+import com.example.tftp.client.TransferQueue;
 import com.example.tftp.client.controller.ClientController;
+import com.example.tftp.model.TftpOptions;
+import com.example.tftp.server.TftpLogger.Level;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Locale;
+import java.util.StringJoiner;
 
 public class ClientGUI extends JFrame {
 
     // ----------------------------- FIELDS -----------------------------
     private JTextField addressField;
     private JTextField portField;
+    private JTextField blockSizeField;
+    private JTextField windowSizeField;
+    private JTextField parallelismField;
     private JTextField downloadField;
     private JTextField uploadField;
     private JButton getButton;
@@ -22,7 +28,8 @@ public class ClientGUI extends JFrame {
     private JButton browseButton;
     private JButton stopButton;
     private JButton quitButton;
-    private JTextArea logArea;
+    private final LogListModel logModel = new LogListModel(LogListModel.DEFAULT_CAPACITY);
+    private JList<LogListModel.Entry> logList;
     private JProgressBar progressBar;
 
     // Status components
@@ -31,7 +38,8 @@ public class ClientGUI extends JFrame {
     private JLabel fileInfoLabel;
     private JLabel transferredLabel;
     private JLabel blocksLabel;
-    private int currentBlockSize = 512;
+    private JLabel speedLabel;
+    private volatile int currentBlockSize = TftpOptions.DEFAULT_BLOCK_SIZE;
 
     private ClientController controller;
 
@@ -190,6 +198,16 @@ public class ClientGUI extends JFrame {
         blocksLabel = createStatusValueLabel("-");
         gridPanel.add(blocksLabel, gbc);
 
+        // Speed
+        gbc.gridx = 0; gbc.gridy = 5;
+        JLabel speedTextLabel = new JLabel("Speed:");
+        speedTextLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        gridPanel.add(speedTextLabel, gbc);
+
+        gbc.gridx = 1;
+        speedLabel = createStatusValueLabel("-");
+        gridPanel.add(speedLabel, gbc);
+
         panel.add(gridPanel, BorderLayout.CENTER);
 
         // Log area at the bottom
@@ -197,18 +215,54 @@ public class ClientGUI extends JFrame {
         logPanel.setBorder(new EmptyBorder(10, 5, 5, 5));
         logPanel.setBackground(new Color(250, 250, 255));
 
+        JPanel logHeader = new JPanel(new BorderLayout());
+        logHeader.setBackground(new Color(250, 250, 255));
         JLabel logTitle = new JLabel("Activity Log:");
         logTitle.setFont(new Font("Segoe UI", Font.BOLD, 12));
-        logPanel.add(logTitle, BorderLayout.NORTH);
-
-        logArea = new JTextArea(10, 30);
-        logArea.setEditable(false);
-        logArea.setFont(new Font("Consolas", Font.PLAIN, 11));
-        logArea.setBackground(new Color(240, 240, 245));
-        JScrollPane scrollPane = new JScrollPane(logArea);
+        logHeader.add(logTitle, BorderLayout.WEST);
+
+        // уровень фильтра: показываются записи этого уровня и выше
+        JComboBox<Level> levelBox = new JComboBox<>(Level.values());
+        levelBox.setSelectedItem(logModel.getMinLevel());
+        levelBox.setToolTipText("Show messages of this level and above");
+        levelBox.addActionListener(e -> logModel.setMinLevel((Level) levelBox.getSelectedItem()));
+        logHeader.add(levelBox, BorderLayout.EAST);
+        logPanel.add(logHeader, BorderLayout.NORTH);
+
+        // only the visible rows are rendered; the fixed height spares measuring every line
+        logList = new JList<>(logModel);
+        logList.setFont(new Font("Consolas", Font.PLAIN, 11));
+        logList.setBackground(new Color(240, 240, 245));
+        logList.setVisibleRowCount(10);
+        logList.setFixedCellHeight(logList.getFontMetrics(logList.getFont()).getHeight() + 2);
+        logList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (!isSelected) {
+                    Level level = ((LogListModel.Entry) value).level;
+                    setForeground(level == Level.ERROR ? new Color(200, 0, 0)
+                            : level == Level.WARN ? new Color(200, 110, 0)
+                            : level == Level.DEBUG ? Color.GRAY : Color.BLACK);
+                }
+                return this;
+            }
+        });
+        JScrollPane scrollPane = new JScrollPane(logList);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(200, 200, 200)));
         logPanel.add(scrollPane, BorderLayout.CENTER);
 
+        // keep following the newest line unless the user has scrolled up
+        logModel.setAfterFlush(() -> {
+            JScrollBar bar = scrollPane.getVerticalScrollBar();
+            boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 2 * logList.getFixedCellHeight();
+            if (atBottom) {
+                SwingUtilities.invokeLater(() -> logList.ensureIndexIsVisible(logModel.getSize() - 1));
+            }
+        });
+        logModel.start();
+
         panel.add(logPanel, BorderLayout.SOUTH);
 
         return panel;
@@ -232,7 +286,7 @@ public class ClientGUI extends JFrame {
     }
 
     private JPanel createServerPanel() {
-        JPanel panel = new JPanel(new GridLayout(3, 1, 5, 5));
+        JPanel panel = new JPanel(new GridLayout(6, 1, 5, 5));
         panel.setBorder(BorderFactory.createCompoundBorder(
                 BorderFactory.createLineBorder(new Color(200, 200, 200)),
                 new EmptyBorder(8, 8, 8, 8)
@@ -241,10 +295,22 @@ public class ClientGUI extends JFrame {
 
         addressField = new JTextField("127.0.0.1");
         portField = new JTextField("69");
+        blockSizeField = new JTextField(String.valueOf(TftpOptions.DEFAULT_BLOCK_SIZE));
+        blockSizeField.setToolTipText("Requested block size (" + TftpOptions.MIN_BLOCK_SIZE + "-" +
+                TftpOptions.MAX_BLOCK_SIZE + " bytes, RFC 2348)");
+        windowSizeField = new JTextField(String.valueOf(TftpOptions.DEFAULT_WINDOW_SIZE));
+        windowSizeField.setToolTipText("Blocks in flight per ACK (" + TftpOptions.MIN_WINDOW_SIZE + "-" +
+                TftpOptions.MAX_WINDOW_SIZE + ", RFC 7440)");
+        parallelismField = new JTextField(String.valueOf(TransferQueue.DEFAULT_PARALLELISM));
+        parallelismField.setToolTipText("Transfers running at the same time (1-" +
+                TransferQueue.MAX_PARALLELISM + "), the rest are queued");
         browseButton = createStyledButton("Browse...", new Color(80, 140, 220));
 
         panel.add(createLabeledField("Server Address:", addressField));
         panel.add(createLabeledField("Port:", portField));
+        panel.add(createLabeledField("Block Size:", blockSizeField));
+        panel.add(createLabeledField("Window Size:", windowSizeField));
+        panel.add(createLabeledField("Parallel:", parallelismField));
         panel.add(browseButton);
 
         return panel;
@@ -259,7 +325,7 @@ public class ClientGUI extends JFrame {
         panel.setBackground(new Color(245, 245, 250));
 
         downloadField = new JTextField();
-        downloadField.setToolTipText("Enter remote filename to download");
+        downloadField.setToolTipText("Remote filename(s) to download, separated by spaces or commas");
         panel.add(downloadField, BorderLayout.CENTER);
 
         getButton = createStyledButton("DOWNLOAD", new Color(60, 150, 60));
@@ -341,45 +407,65 @@ public class ClientGUI extends JFrame {
     // ==================== PUBLIC METHODS ====================
 
     public void setProgress(long bytesTransferred, long totalBytes, int blockSize) {
-        SwingUtilities.invokeLater(() -> {
-            String transferredStr = formatBytes(bytesTransferred);
-            String totalStr = (totalBytes > 0) ? formatBytes(totalBytes) : "??";
+        SwingUtilities.invokeLater(() -> applyProgress(bytesTransferred, totalBytes, blockSize));
+    }
 
+    /** One tick of the progress aggregator; already on the EDT. */
+    public void showProgress(ProgressAggregator.Snapshot snapshot) {
+        applyProgress(snapshot.getTransferred(), snapshot.getTotal(), currentBlockSize);
+        String speed = formatBytes((long) snapshot.getCurrentRate()) + "/s (avg " +
+                formatBytes((long) snapshot.getAverageRate()) + "/s)";
+        long eta = snapshot.getEtaMillis();
+        speedLabel.setText(eta >= 0 ? speed + ", ETA " + formatDuration(eta) : speed);
+    }
+
+    private void applyProgress(long bytesTransferred, long totalBytes, int blockSize) {
+        String transferredStr = formatBytes(bytesTransferred);
+        String totalStr = (totalBytes > 0) ? formatBytes(totalBytes) : "??";
+
+        if (totalBytes > 0) {
+            progressBar.setIndeterminate(false);
+            progressBar.setMaximum(100);
+            int percent = (int)((bytesTransferred * 100L) / Math.max(1L, totalBytes));
+            percent = Math.max(0, Math.min(100, percent));
+            progressBar.setValue(percent);
+            progressBar.setString(String.format("%s / %s (%d%%)", transferredStr, totalStr, percent));
+            transferredLabel.setText(String.format("%s / %s", transferredStr, totalStr));
+        } else {
+            progressBar.setIndeterminate(true);
+            progressBar.setString(transferredStr + " (transferring...)");
+            transferredLabel.setText(transferredStr + " / " + totalStr);
+        }
+
+        // Blocks info
+        if (blockSize > 0 && bytesTransferred > 0) {
+            long blocksDone = (bytesTransferred + blockSize - 1) / blockSize;
             if (totalBytes > 0) {
-                progressBar.setIndeterminate(false);
-                progressBar.setMaximum(100);
-                int percent = (int)((bytesTransferred * 100L) / Math.max(1L, totalBytes));
-                percent = Math.max(0, Math.min(100, percent));
-                progressBar.setValue(percent);
-                progressBar.setString(String.format("%s / %s (%d%%)", transferredStr, totalStr, percent));
-                transferredLabel.setText(String.format("%s / %s", transferredStr, totalStr));
+                long blocksTotal = (totalBytes + blockSize - 1) / blockSize;
+                blocksLabel.setText(blocksDone + " / " + blocksTotal);
             } else {
-                progressBar.setIndeterminate(true);
-                progressBar.setString(transferredStr + " (transferring...)");
-                transferredLabel.setText(transferredStr + " / " + totalStr);
+                blocksLabel.setText(blocksDone + " / ?");
             }
+        } else {
+            blocksLabel.setText("-");
+        }
+    }
 
-            // Blocks info
-            if (blockSize > 0 && bytesTransferred > 0) {
-                long blocksDone = (bytesTransferred + blockSize - 1) / blockSize;
-                if (totalBytes > 0) {
-                    long blocksTotal = (totalBytes + blockSize - 1) / blockSize;
-                    blocksLabel.setText(blocksDone + " / " + blocksTotal);
-                } else {
-                    blocksLabel.setText(blocksDone + " / ?");
-                }
-            } else {
-                blocksLabel.setText("-");
-            }
-        });
+    public String formatDuration(long millis) {
+        long seconds = (millis + 999) / 1000;
+        if (seconds < 3600) {
+            return String.format(Locale.US, "%d:%02d", seconds / 60, seconds % 60);
+        }
+        return String.format(Locale.US, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
     }
 
     public void log(String msg) {
-        SwingUtilities.invokeLater(() -> {
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-            logArea.append("[" + timestamp + "] " + msg + "\n");
-            logArea.setCaretPosition(logArea.getDocument().getLength());
-        });
+        log(Level.INFO, msg);
+    }
+
+    /** Thread-safe; lines reach the list in batches. */
+    public void log(Level level, String msg) {
+        logModel.append(level, msg);
     }
 
     public void updateStatus(String status, Color color) {
@@ -433,7 +519,7 @@ public class ClientGUI extends JFrame {
     }
 
     public void logError(String msg) {
-        log("ERROR: " + msg);
+        log(Level.ERROR, msg);
     }
 
     public void setFilePath(String path) {
@@ -451,10 +537,27 @@ public class ClientGUI extends JFrame {
 
     public String showFileChooser() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Select file to upload");
+        fileChooser.setDialogTitle("Select file(s) to upload");
         fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        fileChooser.setMultiSelectionEnabled(true);
 
         int result = fileChooser.showOpenDialog(this);
+        if (result != JFileChooser.APPROVE_OPTION) return null;
+
+        // several files are kept in the field separated by File.pathSeparator
+        StringJoiner paths = new StringJoiner(java.io.File.pathSeparator);
+        for (java.io.File file : fileChooser.getSelectedFiles()) {
+            paths.add(file.getAbsolutePath());
+        }
+        return paths.toString();
+    }
+
+    public String showDirectoryChooser() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save files to folder");
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+
+        int result = fileChooser.showSaveDialog(this);
         return (result == JFileChooser.APPROVE_OPTION) ?
                 fileChooser.getSelectedFile().getAbsolutePath() : null;
     }
@@ -494,6 +597,40 @@ public class ClientGUI extends JFrame {
         return currentBlockSize;
     }
 
+    public void setCurrentBlockSize(int blockSize) {
+        this.currentBlockSize = blockSize;
+    }
+
+    public int getRequestedBlockSize() {
+        try {
+            int blockSize = Integer.parseInt(blockSizeField.getText().trim());
+            if (blockSize >= TftpOptions.MIN_BLOCK_SIZE && blockSize <= TftpOptions.MAX_BLOCK_SIZE) {
+                return blockSize;
+            }
+        } catch (NumberFormatException ignored) {}
+        return TftpOptions.DEFAULT_BLOCK_SIZE;
+    }
+
+    public int getRequestedWindowSize() {
+        try {
+            int windowSize = Integer.parseInt(windowSizeField.getText().trim());
+            if (windowSize >= TftpOptions.MIN_WINDOW_SIZE && windowSize <= TftpOptions.MAX_WINDOW_SIZE) {
+                return windowSize;
+            }
+        } catch (NumberFormatException ignored) {}
+        return TftpOptions.DEFAULT_WINDOW_SIZE;
+    }
+
+    public int getRequestedParallelism() {
+        try {
+            int parallelism = Integer.parseInt(parallelismField.getText().trim());
+            if (parallelism >= 1 && parallelism <= TransferQueue.MAX_PARALLELISM) {
+                return parallelism;
+            }
+        } catch (NumberFormatException ignored) {}
+        return TransferQueue.DEFAULT_PARALLELISM;
+    }
+
     // ==================== MAIN ====================
 
     public static void main(String[] args) {
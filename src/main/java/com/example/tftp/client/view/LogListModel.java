@@ -0,0 +1,157 @@
+package com.example.tftp.client.view;
+
+import com.example.tftp.server.TftpLogger.Level;
+
+import javax.swing.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Activity log for a {@link JList}: the last {@code capacity} lines in a ring, the older ones
+ * are dropped. Any thread may {@link #append}; lines are moved into the ring in batches by a
+ * Swing timer, one list event per batch. The list shows the lines at or above the chosen level.
+ */
+class LogListModel extends AbstractListModel<LogListModel.Entry> {
+    static final int DEFAULT_CAPACITY = 10_000;
+    static final int FLUSH_INTERVAL_MILLIS = 100;
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    static final class Entry {
+        final long time;
+        final Level level;
+        final String message;
+
+        Entry(long time, Level level, String message) {
+            this.time = time;
+            this.level = level;
+            this.message = message;
+        }
+
+        // formatted only for the rows on screen (and for copy)
+        @Override
+        public String toString() {
+            String prefix = "[" + TIME.format(Instant.ofEpochMilli(time)) + "] ";
+            return level == Level.INFO || level == Level.DEBUG ? prefix + message : prefix + level + ": " + message;
+        }
+    }
+
+    private final int capacity;
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    // EDT only: every line kept, and the filtered view of it; both rings of the same capacity
+    private final Entry[] all;
+    private int allHead;
+    private int allSize;
+    private final Entry[] view;
+    private int viewHead;
+    private int viewSize;
+    private Level minLevel = Level.INFO; // engine chatter is DEBUG
+
+    private final Timer timer;
+    private Runnable afterFlush;
+
+    LogListModel(int capacity) {
+        this.capacity = capacity;
+        this.all = new Entry[capacity];
+        this.view = new Entry[capacity];
+        this.timer = new Timer(FLUSH_INTERVAL_MILLIS, e -> flush());
+        this.timer.setCoalesce(true);
+    }
+
+    void start() {
+        timer.start();
+    }
+
+    /** Called on the EDT after each batch that changed the list, e.g. to keep it scrolled down. */
+    void setAfterFlush(Runnable afterFlush) {
+        this.afterFlush = afterFlush;
+    }
+
+    /** Thread-safe; the line shows up with the next flush. */
+    void append(Level level, String message) {
+        pending.add(new Entry(System.currentTimeMillis(), level, message));
+        // the EDT is not keeping up: whatever does not fit in the ring would be dropped anyway
+        if (pendingCount.incrementAndGet() > capacity && pending.poll() != null) {
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    // ---------------------- EDT ----------------------
+
+    void flush() {
+        List<Entry> batch = new ArrayList<>();
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.add(entry);
+        }
+        if (batch.isEmpty()) return;
+        if (batch.size() > capacity) batch = batch.subList(batch.size() - capacity, batch.size());
+
+        int oldViewSize = viewSize;
+        int removed = 0;
+        int added = 0;
+        for (Entry e : batch) {
+            if (allSize == capacity) {
+                Entry evicted = all[allHead];
+                all[allHead] = null;
+                allHead = (allHead + 1) % capacity;
+                allSize--;
+                if (viewSize > 0 && view[viewHead] == evicted) {
+                    view[viewHead] = null;
+                    viewHead = (viewHead + 1) % capacity;
+                    viewSize--;
+                    removed++;
+                }
+            }
+            all[(allHead + allSize) % capacity] = e;
+            allSize++;
+            if (e.level.ordinal() >= minLevel.ordinal()) {
+                view[(viewHead + viewSize) % capacity] = e;
+                viewSize++;
+                added++;
+            }
+        }
+        // the batch is at most capacity long, so only lines from before it were evicted
+        if (removed > 0) fireIntervalRemoved(this, 0, removed - 1);
+        if (added > 0) fireIntervalAdded(this, oldViewSize - removed, oldViewSize - removed + added - 1);
+        if ((removed > 0 || added > 0) && afterFlush != null) afterFlush.run();
+    }
+
+    void setMinLevel(Level level) {
+        if (level == minLevel) return;
+        minLevel = level;
+        int oldSize = viewSize;
+        Arrays.fill(view, null);
+        viewHead = 0;
+        viewSize = 0;
+        for (int i = 0; i < allSize; i++) {
+            Entry e = all[(allHead + i) % capacity];
+            if (e.level.ordinal() >= level.ordinal()) view[viewSize++] = e;
+        }
+        if (oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+        if (viewSize > 0) fireIntervalAdded(this, 0, viewSize - 1);
+    }
+
+    Level getMinLevel() {
+        return minLevel;
+    }
+
+    @Override
+    public int getSize() {
+        return viewSize;
+    }
+
+    @Override
+    public Entry getElementAt(int index) {
+        return view[(viewHead + index) % capacity];
+    }
+}
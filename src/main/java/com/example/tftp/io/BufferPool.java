@@ -0,0 +1,107 @@
+package com.example.tftp.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recycles datagram buffers between transfers and requests. Buffers come in power-of-two
+ * size classes, so every negotiated block size maps to one class; {@link #acquire(int)}
+ * sets the limit to the size asked for.
+ *
+ * The heap pool backs {@code DatagramPacket} I/O (it needs the array): the listener and the
+ * timed receives, which go through the socket adaptor because a blocking channel read has no
+ * timeout. The direct pool backs channel I/O, which would otherwise copy heap buffers through
+ * a temporary direct one.
+ * A buffer must be released at most once and not used afterwards.
+ */
+public class BufferPool {
+    private static final int MIN_CLASS_SHIFT = 6; // 64 bytes
+    private static final int MAX_CLASS_SHIFT = 17; // 128 KiB, above the largest packet
+    public static final int DEFAULT_RETAINED_BYTES = 4 * 1024 * 1024; // idle memory kept per size class
+
+    private static final BufferPool HEAP = new BufferPool(false, DEFAULT_RETAINED_BYTES);
+    private static final BufferPool DIRECT = new BufferPool(true, DEFAULT_RETAINED_BYTES);
+
+    private final boolean direct;
+    private final Queue<ByteBuffer>[] free;
+    private final AtomicInteger[] freeCount;
+    private final int[] maxRetained;
+
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(boolean direct, int retainedBytesPerClass) {
+        this.direct = direct;
+        int classes = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+        this.free = new Queue[classes];
+        this.freeCount = new AtomicInteger[classes];
+        this.maxRetained = new int[classes];
+        for (int i = 0; i < classes; i++) {
+            free[i] = new ConcurrentLinkedQueue<>();
+            freeCount[i] = new AtomicInteger();
+            maxRetained[i] = Math.max(4, retainedBytesPerClass >> (i + MIN_CLASS_SHIFT));
+        }
+    }
+
+    /** Shared pool of array-backed buffers. */
+    public static BufferPool heap() {
+        return HEAP;
+    }
+
+    /** Shared pool of direct buffers. */
+    public static BufferPool direct() {
+        return DIRECT;
+    }
+
+    /** A cleared buffer of at least {@code size} bytes with its limit set to {@code size}. */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = classOf(size);
+        if (sizeClass < 0) {
+            allocated.increment();
+            return allocate(size); // larger than any class, not pooled
+        }
+
+        ByteBuffer buffer = free[sizeClass].poll();
+        if (buffer != null) {
+            freeCount[sizeClass].decrementAndGet();
+            reused.increment();
+        } else {
+            allocated.increment();
+            buffer = allocate(1 << (sizeClass + MIN_CLASS_SHIFT));
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    /** Returns a buffer obtained from {@link #acquire(int)}; null is ignored. */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() != direct) return;
+        int capacity = buffer.capacity();
+        int sizeClass = classOf(capacity);
+        if (sizeClass < 0 || capacity != 1 << (sizeClass + MIN_CLASS_SHIFT)) return;
+
+        if (freeCount[sizeClass].incrementAndGet() <= maxRetained[sizeClass]) {
+            free[sizeClass].offer(buffer);
+        } else {
+            freeCount[sizeClass].decrementAndGet(); // enough idle buffers of this size, let GC have it
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    // index of the smallest class that holds size, -1 if none does
+    private static int classOf(int size) {
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+        return shift > MAX_CLASS_SHIFT ? -1 : shift - MIN_CLASS_SHIFT;
+    }
+
+    // ---------------------- STATISTICS ----------------------
+    public long getAllocatedCount() { return allocated.sum(); }
+    public long getReusedCount() { return reused.sum(); }
+}
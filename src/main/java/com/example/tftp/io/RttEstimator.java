@@ -0,0 +1,81 @@
+package com.example.tftp.io;
+
+/**
+ * Per-session retransmission timeout in the style of RFC 6298: smoothed RTT and RTT variance
+ * from samples, exponential backoff on timeouts. Samples must only be taken for packets that
+ * were not retransmitted (Karn's algorithm) — callers are responsible for that.
+ *
+ * Instead of a retry count the session gives up after a total amount of silence, so a
+ * fast LAN session and a slow satellite one tolerate the same outage.
+ */
+public class RttEstimator {
+    public static final int DEFAULT_INITIAL_RTO = 1000;
+    public static final int MIN_RTO = 50;
+    public static final int MAX_RTO = 10000;
+    public static final int DEFAULT_GIVE_UP = 15000;
+
+    private final int giveUpMillis;
+
+    private double srtt = -1; // ms, -1 until the first sample
+    private double rttvar;
+    private int rto;
+    private int fixedRto; // RFC 2349 timeout option, 0 = adaptive
+    private int silentMillis; // waited since the last progress
+
+    public RttEstimator() {
+        this(DEFAULT_INITIAL_RTO, DEFAULT_GIVE_UP);
+    }
+
+    public RttEstimator(int initialRtoMillis, int giveUpMillis) {
+        this.rto = clamp(initialRtoMillis);
+        this.giveUpMillis = giveUpMillis;
+    }
+
+    /** Round trip of a packet that was sent exactly once. */
+    public synchronized void sample(long rttNanos) {
+        double rtt = rttNanos / 1_000_000.0;
+        if (srtt < 0) {
+            srtt = rtt;
+            rttvar = rtt / 2;
+        } else {
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+            srtt = 0.875 * srtt + 0.125 * rtt;
+        }
+        if (fixedRto == 0) {
+            rto = clamp((int) Math.ceil(srtt + Math.max(1, 4 * rttvar)));
+        }
+        silentMillis = 0;
+    }
+
+    /** The peer made progress but the round trip is ambiguous (retransmitted packet). */
+    public synchronized void acknowledge() {
+        silentMillis = 0;
+    }
+
+    /**
+     * A timeout expired: doubles the RTO. Returns false once the session has been silent
+     * for longer than the give-up limit and should be aborted.
+     */
+    public synchronized boolean backoff() {
+        silentMillis += rto;
+        if (fixedRto == 0) {
+            rto = clamp(rto * 2);
+        }
+        return silentMillis < giveUpMillis;
+    }
+
+    /** Uses the negotiated RFC 2349 timeout instead of the estimate. */
+    public synchronized void setFixedTimeout(int seconds) {
+        fixedRto = seconds * 1000;
+        rto = fixedRto;
+    }
+
+    private static int clamp(int millis) {
+        return Math.max(MIN_RTO, Math.min(MAX_RTO, millis));
+    }
+
+    // ---------------------- GETTERS ----------------------
+    public synchronized int getRtoMillis() { return rto; }
+    public synchronized double getSrttMillis() { return Math.max(srtt, 0); }
+    public synchronized double getRttVarMillis() { return rttvar; }
+}
@@ -1,29 +1,126 @@
 package com.example.tftp.io;
 
 import com.example.tftp.model.TftpException;
+import com.example.tftp.model.TftpMode;
+import com.example.tftp.model.TftpOptions;
 import com.example.tftp.model.TftpPacket;
+import com.example.tftp.model.TftpPacketView;
+import com.example.tftp.model.TftpRollover;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class TftpReader {
-    private static final int BUFFER_SIZE = 516; // 512 data + 4 header
-    private static final int MAX_RETRIES = 5;
 
     private volatile boolean cancelled;
     private ProgressCallback progressCallback;
-    private Integer serverDataPort; // порт сервера для DATA
+    private volatile long retransmits;
+
+    private int requestedBlockSize = TftpOptions.DEFAULT_BLOCK_SIZE;
+    private int requestedWindowSize = TftpOptions.DEFAULT_WINDOW_SIZE;
+    private int requestedTimeout; // seconds, 0 = adaptive
+    private boolean multicast;
+    private TftpRollover rollover = TftpRollover.ZERO;
+    private NetworkInterface multicastInterface; // null: first multicast-capable interface
+    private Map<String, String> requestedOptions;
+    private TftpOptions options = new TftpOptions();
+
+    private DatagramPacket requestPacket; // resent while the server has not answered
+    private int blocksSinceAck;
+    private boolean rollbackSent;
+
+    private volatile RttEstimator rtt = new RttEstimator();
+    private long ackSentAt; // 0 once a timeout made the next reply ambiguous
+    private long deadline; // System.nanoTime() by which the next block is due, see armTimer
+
+    // reused for every DATA/ACK of the transfer, see TftpPacketView
+    private int receiveCapacity;
+    private ByteBuffer receiveBuffer;
+    private DatagramPacket receiveDatagram;
+    private ByteBuffer ackBuffer; // direct: only ever written to a channel
+    private final TftpPacketView view = new TftpPacketView();
 
     public interface ProgressCallback {
         void onProgress(long transferred, long total); // total may be -1 if unknown
         void onLog(String message);
+        default void onOptionsNegotiated(TftpOptions options) {}
     }
 
     public TftpReader() {
         this.cancelled = false;
-        this.serverDataPort = null;
+    }
+
+    /** Block size to request with the RRQ (RFC 2348). The server may answer with a smaller one. */
+    public void setBlockSize(int blockSize) {
+        TftpOptions.request(blockSize, TftpOptions.DEFAULT_WINDOW_SIZE); // validates the range
+        this.requestedBlockSize = blockSize;
+    }
+
+    /** Number of blocks the server may send before waiting for an ACK (RFC 7440). */
+    public void setWindowSize(int windowSize) {
+        TftpOptions.request(TftpOptions.DEFAULT_BLOCK_SIZE, windowSize); // validates the range
+        this.requestedWindowSize = windowSize;
+    }
+
+    /** Fixed retransmission timeout to request (RFC 2349), 0 keeps the adaptive RTO. */
+    public void setTimeout(int seconds) {
+        TftpOptions.request(TftpOptions.DEFAULT_BLOCK_SIZE, TftpOptions.DEFAULT_WINDOW_SIZE, -1, seconds); // validates
+        this.requestedTimeout = seconds;
+    }
+
+    /**
+     * Asks for an RFC 2090 multicast transfer: the server sends the blocks to a group shared with
+     * other clients of the same file. A server without multicast support serves it as usual.
+     */
+    public void setMulticast(boolean multicast) {
+        this.multicast = multicast;
+    }
+
+    /** Interface to join the multicast group on. */
+    public void setMulticastInterface(NetworkInterface networkInterface) {
+        this.multicastInterface = networkInterface;
+    }
+
+    /** Block number the server sends after 65535; it has to match the server's setting. */
+    public void setRollover(TftpRollover rollover) {
+        this.rollover = rollover;
+    }
+
+    /** Stops the running download at the next block; may be called from any thread. */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /** Current retransmission timeout of the running (or last) transfer. */
+    public int getRtoMillis() {
+        return rtt.getRtoMillis();
+    }
+
+    /** RRQs and ACKs sent again in the running (or last) transfer, after a timeout or a gap. */
+    public long getRetransmits() {
+        return retransmits;
+    }
+
+    /** Window size in use for the current (or last) transfer. */
+    public int getWindowSize() {
+        return options.getWindowSize();
+    }
+
+    /** Block size in use for the current (or last) transfer. */
+    public int getBlockSize() {
+        return options.getBlockSize();
     }
 
     public void readFile(String remoteFilename, File localFile, InetAddress serverAddress, int serverPort,
@@ -31,138 +128,448 @@ public class TftpReader {
 
         this.progressCallback = callback;
         this.cancelled = false;
-        this.serverDataPort = null; // reset before new transfer
+        this.retransmits = 0;
+        this.requestedOptions = TftpOptions.request(requestedBlockSize, requestedWindowSize,
+                0, requestedTimeout); // tsize=0 asks for the length
+        this.options = new TftpOptions();
+        this.blocksSinceAck = 0;
+        this.rollbackSent = false;
+        this.rtt = new RttEstimator();
+        // sized for the requested block: the OACK may still lower it
+        this.receiveCapacity = Math.max(requestedBlockSize, TftpOptions.DEFAULT_BLOCK_SIZE) + TftpOptions.HEADER_SIZE;
+        this.ackBuffer = BufferPool.direct().acquire(TftpOptions.HEADER_SIZE);
+
+        if (multicast) {
+            // RFC 2090 transfers are lock-step, windowsize is not asked for
+            this.requestedOptions = TftpOptions.requestMulticast(TftpOptions.request(requestedBlockSize,
+                    TftpOptions.DEFAULT_WINDOW_SIZE, 0, requestedTimeout));
+            this.receiveBuffer = BufferPool.direct().acquire(receiveCapacity); // channel.receive
+            try {
+                readMulticast(remoteFilename, localFile, serverAddress, serverPort, callback);
+            } finally {
+                BufferPool.direct().release(receiveBuffer);
+                BufferPool.direct().release(ackBuffer);
+                receiveBuffer = null;
+                ackBuffer = null;
+            }
+            return;
+        }
 
-        try (DatagramSocket socket = new DatagramSocket()) {
-            socket.setSoTimeout(3000);
+        // heap: the timed receive goes through the socket adaptor, which fills a DatagramPacket
+        this.receiveBuffer = BufferPool.heap().acquire(receiveCapacity);
+        this.receiveDatagram = new DatagramPacket(receiveBuffer.array(), receiveCapacity);
+
+        // unconnected until the server's TID answers, then connected to it: see receiveDataPacket
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.bind(null);
+            DatagramSocket socket = channel.socket();
 
             // --- SEND RRQ ---
-            TftpPacket rrq = TftpPacket.createRRQ(remoteFilename);
-            DatagramPacket rrqPacket = new DatagramPacket(rrq.toBytes(), rrq.toBytes().length,
+            TftpPacket rrq = TftpPacket.createRRQ(remoteFilename, TftpMode.OCTET, requestedOptions);
+            byte[] rrqBytes = rrq.toBytes();
+            DatagramPacket rrqPacket = new DatagramPacket(rrqBytes, rrqBytes.length,
                     serverAddress, serverPort);
             socket.send(rrqPacket);
+            this.requestPacket = rrqPacket;
+            this.ackSentAt = System.nanoTime();
+            armTimer();
             if (callback != null) callback.onLog("RRQ sent for file: " + remoteFilename);
 
-            try (FileOutputStream fos = new FileOutputStream(localFile)) {
-                int expectedBlock = 1;
+            try (RandomAccessFile out = new RandomAccessFile(localFile, "rw")) {
+                out.setLength(0);
+                long expectedBlock = 1;
                 boolean lastPacket = false;
                 long bytesWritten = 0;
 
-                while (!lastPacket && !cancelled) {
-                    ReceivedData rd = receiveDataPacket(socket, expectedBlock, callback);
-                    if (rd == null || rd.packet == null) {
-                        throw new TftpException("Failed to receive data for block " + expectedBlock,
-                                TftpException.UNDEFINED);
-                    }
-
-                    byte[] data = rd.packet.getData();
-                    if (data != null && data.length > 0) {
-                        fos.write(data);
-                        bytesWritten += data.length;
+                try {
+                    while (!lastPacket && !cancelled) {
+                        TftpPacketView packet = receiveDataPacket(channel, expectedBlock, callback);
+                        if (packet == null) {
+                            throw new TftpException("Failed to receive data for block " + expectedBlock,
+                                    TftpException.UNDEFINED);
+                        }
+
+                        // tsize is known once the OACK is in: extend the file up front
+                        // so a large download does not grow it block by block
+                        if (expectedBlock == 1 && options.getTransferSize() > 0) {
+                            out.setLength(options.getTransferSize());
+                        }
+
+                        int length = packet.getDataLength();
+                        if (length > 0) {
+                            out.write(receiveBuffer.array(), packet.getDataOffset(), length);
+                            bytesWritten += length;
+                        }
+
+                        if (length < options.getBlockSize()) lastPacket = true;
+
+                        // send ACK back to the server's TID once per window and for the final block
+                        if (lastPacket || ++blocksSinceAck >= options.getWindowSize()) {
+                            sendAck(channel, expectedBlock, callback);
+                            blocksSinceAck = 0;
+                        }
+
+                        expectedBlock++;
+
+                        if (progressCallback != null) {
+                            progressCallback.onProgress(bytesWritten, options.getTransferSize()); // -1 if the server sent no tsize
+                        }
+
+                        if (cancelled) {
+                            if (progressCallback != null) progressCallback.onLog("Download cancelled by user");
+                            break;
+                        }
                     }
+                } finally {
+                    // drop the preallocated tail if the transfer ended early or tsize was wrong
+                    out.setLength(bytesWritten);
+                }
+            }
+        } finally {
+            BufferPool.heap().release(receiveBuffer);
+            BufferPool.direct().release(ackBuffer);
+            receiveBuffer = null;
+            ackBuffer = null;
+        }
+    }
 
-                    // send ACK back to the server's TID
-                    sendAck(socket, rd.addr, rd.port, expectedBlock, callback);
-
-                    expectedBlock++;
-                    if (data == null || data.length < 512) lastPacket = true;
+    // ---------------------- MULTICAST (RFC 2090) ----------------------
+
+    /**
+     * Blocks come from the group and, before the OACK or from a server without multicast,
+     * from the server's TID. They may arrive out of order (a late joiner sees the middle of
+     * the file first) and are written at their offsets. Only the master client ACKs, always
+     * the last block it has in order, so the server resends the first one it is missing.
+     * Once done, a member that is not master ACKs the last block as well to leave the group.
+     */
+    private void readMulticast(String remoteFilename, File localFile, InetAddress serverAddress, int serverPort,
+                               ProgressCallback callback) throws IOException, TftpException {
+        DatagramChannel group = null;
+        try (Selector selector = Selector.open();
+             DatagramChannel unicast = DatagramChannel.open();
+             FileChannel out = FileChannel.open(localFile.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            unicast.bind(null).configureBlocking(false);
+            unicast.register(selector, SelectionKey.OP_READ);
+
+            ByteBuffer rrq = ByteBuffer.wrap(TftpPacket.createRRQ(remoteFilename, TftpMode.OCTET, requestedOptions).toBytes());
+            InetSocketAddress server = new InetSocketAddress(serverAddress, serverPort);
+            unicast.send(rrq.duplicate(), server);
+            ackSentAt = System.nanoTime();
+            if (callback != null) callback.onLog("RRQ sent for file: " + remoteFilename + " (multicast)");
+
+            SocketAddress serverTid = null;
+            BitSet received = new BitSet();
+            int lastBlock = -1; // unknown until tsize or a short block
+            long bytesWritten = 0;
+            boolean master = false;
+
+            while (!cancelled) {
+                if (lastBlock > 0 && received.cardinality() == lastBlock) {
+                    if (serverTid != null) sendAck(unicast, serverTid, lastBlock);
+                    return;
+                }
 
-                    if (progressCallback != null) {
-                        progressCallback.onProgress(bytesWritten, -1); // total unknown for download
+                if (selector.select(rtt.getRtoMillis()) == 0) {
+                    if (!rtt.backoff()) {
+                        throw new TftpException("Failed to receive block " + (received.nextClearBit(1)) +
+                                ": server stopped responding", TftpException.UNDEFINED);
                     }
+                    if (serverTid == null) {
+                        unicast.send(rrq.duplicate(), server); // RRQ or OACK lost
+                        retransmits++;
+                    } else if (master) {
+                        sendAck(unicast, serverTid, received.nextClearBit(1) - 1);
+                        retransmits++;
+                    }
+                    ackSentAt = 0; // Karn: the reply may be to either copy
+                    continue;
+                }
 
-                    if (cancelled) {
-                        if (progressCallback != null) progressCallback.onLog("Download cancelled by user");
-                        break;
+                for (SelectionKey key : selector.selectedKeys()) {
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    SocketAddress sender;
+                    while ((sender = channel.receive(receiveBuffer.clear())) != null) {
+                        receiveBuffer.flip();
+                        TftpPacketView packet = view.wrap(receiveBuffer);
+
+                        if (channel == unicast) {
+                            if (serverTid == null) {
+                                serverTid = sender;
+                            } else if (!serverTid.equals(sender)) {
+                                continue;
+                            }
+                            if (packet.isError()) {
+                                throw new TftpException("Server error: " + packet.getErrorMessage(), packet.getErrorCode());
+                            }
+                            if (packet.isOack()) {
+                                TftpOptions oack = readOack(unicast, serverTid, packet.toPacket(), callback);
+                                if (options.isEmpty()) {
+                                    options = oack;
+                                    takeRttSample();
+                                    if (oack.getTimeout() > 0) rtt.setFixedTimeout(oack.getTimeout());
+                                    if (oack.getTransferSize() >= 0) {
+                                        lastBlock = (int) (oack.getTransferSize() / oack.getBlockSize()) + 1;
+                                    }
+                                    if (oack.getMulticastAddress() != null) {
+                                        group = joinGroup(selector, oack, callback);
+                                    }
+                                    if (callback != null) {
+                                        callback.onLog("OACK received: " + oack.getAcknowledged());
+                                        callback.onOptionsNegotiated(oack);
+                                    }
+                                }
+                                // without the multicast option the server runs a plain lock-step transfer
+                                master = options.getMulticastAddress() == null || oack.isMasterClient();
+                                if (master) {
+                                    if (callback != null) callback.onLog("Acting as master client");
+                                    sendAck(unicast, serverTid, received.nextClearBit(1) - 1);
+                                }
+                                continue;
+                            }
+                            if (packet.isData() && options.getMulticastAddress() == null) {
+                                master = true; // the server ignored our options
+                            }
+                        }
+
+                        if (!packet.isData()) continue;
+                        // the server multicasts only files below the rollover; a plain transfer may wrap
+                        int block = channel == unicast
+                                ? (int) rollover.fromWire(packet.getBlockNumber(), received.nextClearBit(1))
+                                : packet.getBlockNumber();
+                        if (block < 1 || received.get(block)) {
+                            continue; // duplicate, an ACK for it would make the server send twice
+                        }
+
+                        int length = packet.getDataLength();
+                        long offset = (long) (block - 1) * options.getBlockSize();
+                        receiveBuffer.limit(packet.getDataOffset() + length).position(packet.getDataOffset());
+                        while (receiveBuffer.hasRemaining()) {
+                            out.write(receiveBuffer, offset + length - receiveBuffer.remaining());
+                        }
+                        received.set(block);
+                        bytesWritten += length;
+                        if (length < options.getBlockSize()) lastBlock = block;
+
+                        int inOrder = received.nextClearBit(1) - 1;
+                        if (master && block == inOrder) {
+                            takeRttSample();
+                        } else {
+                            rtt.acknowledge();
+                        }
+                        if (master && inOrder != lastBlock) {
+                            sendAck(unicast, serverTid, inOrder);
+                        }
+                        if (progressCallback != null) {
+                            progressCallback.onProgress(bytesWritten, options.getTransferSize());
+                        }
                     }
                 }
+                selector.selectedKeys().clear();
+            }
+
+            if (serverTid != null) {
+                // leave the group so the server does not wait for us as master
+                byte[] error = TftpPacket.createERROR(TftpException.UNDEFINED, "Cancelled").toBytes();
+                unicast.send(ByteBuffer.wrap(error), serverTid);
             }
+            if (progressCallback != null) progressCallback.onLog("Download cancelled by user");
+        } finally {
+            if (group != null) group.close();
         }
     }
 
-    private static class ReceivedData {
-        TftpPacket packet;
-        InetAddress addr;
-        int port;
+    private TftpOptions readOack(DatagramChannel channel, SocketAddress serverTid, TftpPacket oack,
+                                 ProgressCallback callback) throws IOException, TftpException {
+        try {
+            return TftpOptions.fromOack(requestedOptions, oack.getOptions());
+        } catch (TftpException e) {
+            channel.send(ByteBuffer.wrap(e.toPacket().toBytes()), serverTid);
+            throw e;
+        }
     }
 
-    private ReceivedData receiveDataPacket(DatagramSocket socket, int expectedBlock,
-                                           ProgressCallback callback) throws IOException, TftpException {
+    private DatagramChannel joinGroup(Selector selector, TftpOptions oack, ProgressCallback callback) throws IOException {
+        InetAddress address = InetAddress.getByName(oack.getMulticastAddress());
+        NetworkInterface networkInterface = multicastInterface != null ? multicastInterface : findMulticastInterface();
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            // other clients on this host listen on the same port
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(oack.getMulticastPort()));
+            channel.join(address, networkInterface);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (callback != null) {
+            callback.onLog("Joined multicast group " + address.getHostAddress() + ":" + oack.getMulticastPort() +
+                    " on " + networkInterface.getName());
+        }
+        return channel;
+    }
 
-        int retries = 0;
-        while (retries < MAX_RETRIES && !cancelled) {
-            try {
-                byte[] buffer = new byte[BUFFER_SIZE];
-                DatagramPacket receivePacket = new DatagramPacket(buffer, buffer.length);
-                socket.receive(receivePacket);
+    private static NetworkInterface findMulticastInterface() throws IOException {
+        NetworkInterface loopback = null;
+        for (NetworkInterface candidate : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!candidate.isUp()) continue;
+            if (candidate.isLoopback()) {
+                loopback = candidate;
+            } else if (candidate.supportsMulticast()) {
+                return candidate;
+            }
+        }
+        if (loopback == null) throw new SocketException("No interface to join the multicast group on");
+        return loopback;
+    }
 
-                InetAddress addr = receivePacket.getAddress();
-                int port = receivePacket.getPort();
+    private void sendAck(DatagramChannel channel, SocketAddress serverTid, int block) throws IOException {
+        TftpPacketView.encodeAck(ackBuffer, rollover.toWire(block));
+        channel.send(ackBuffer, serverTid);
+        ackSentAt = System.nanoTime();
+    }
 
-                if (serverDataPort == null) {
-                    serverDataPort = port;
-                    if (callback != null) callback.onLog("Server data port set to " + serverDataPort);
-                }
+    /**
+     * The first reply fixes the server's TID: the channel is connected to it before it is
+     * answered, so from then on the kernel drops datagrams from any other port. Connecting
+     * discards what is already queued, which can only be a resent copy of that reply, since
+     * the server sends nothing new until it hears from us.
+     */
+    private TftpPacketView receiveDataPacket(DatagramChannel channel, long expectedBlock,
+                                           ProgressCallback callback) throws IOException, TftpException {
 
-                if (port != serverDataPort) {
-                    if (callback != null)
-                        callback.onLog("Ignored packet from wrong port: " + addr + ":" + port + " (expected " + serverDataPort + ")");
-                    continue;
+        // the adaptor's receive honours SO_TIMEOUT, a blocking channel read has no timeout
+        DatagramSocket socket = channel.socket();
+        while (!cancelled) {
+            try {
+                // packets that are ignored below do not move the deadline, so they cannot put off a re-ACK
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Retransmission deadline passed");
                 }
+                DatagramPacket receivePacket = receiveDatagram;
+                receivePacket.setLength(receiveCapacity);
+                socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining + 999_999)));
+                socket.receive(receivePacket);
 
-                byte[] receivedData = new byte[receivePacket.getLength()];
-                System.arraycopy(buffer, 0, receivedData, 0, receivePacket.getLength());
+                if (!channel.isConnected()) {
+                    channel.connect(receivePacket.getSocketAddress());
+                    if (callback != null) callback.onLog("Server data port set to " + receivePacket.getPort());
+                }
 
-                TftpPacket packet = TftpPacket.fromBytes(receivedData);
+                receiveBuffer.clear().limit(receivePacket.getLength());
+                TftpPacketView packet = view.wrap(receiveBuffer);
 
-                if (packet.getOpCode() == com.example.tftp.model.TftpOpCode.ERROR) {
+                if (packet.isError()) {
                     throw new TftpException("Server error: " + packet.getErrorMessage(),
                             packet.getErrorCode());
                 }
 
-                if (packet.getOpCode() != com.example.tftp.model.TftpOpCode.DATA) {
-                    if (callback != null) callback.onLog("Unexpected packet type: " + packet.getOpCode());
+                if (packet.isOack() && expectedBlock == 1) {
+                    // the server accepted our options: confirm with ACK(0), repeat it if the OACK is resent
+                    if (options.isEmpty()) {
+                        takeRttSample();
+                        applyOack(channel, packet.toPacket(), callback);
+                        armTimer();
+                    }
+                    sendAck(channel, 0, callback);
                     continue;
                 }
 
-                if (packet.getBlockNumber() != expectedBlock) {
-                    if (callback != null)
-                        callback.onLog("Received block " + packet.getBlockNumber() + ", expected " + expectedBlock);
+                if (!packet.isData()) {
+                    if (callback != null) callback.onLog("Unexpected packet type: " + packet.getOpCodeValue());
                     continue;
                 }
 
-                ReceivedData rd = new ReceivedData();
-                rd.packet = packet;
-                rd.addr = addr;
-                rd.port = port;
-                return rd;
+                if (rollover.fromWire(packet.getBlockNumber(), expectedBlock) != expectedBlock) {
+                    // lock-step: re-ACK every duplicate, the server resent because our ACK was lost;
+                    // duplicate or gap in a window: roll the server back to the last in-order block, once per gap
+                    if (options.getWindowSize() == 1 || !rollbackSent) {
+                        if (callback != null)
+                            callback.onLog("Received block " + packet.getBlockNumber() + ", expected " + expectedBlock);
+                        sendAck(channel, expectedBlock - 1, callback);
+                        retransmits++;
+                        rollbackSent = true;
+                        blocksSinceAck = 0;
+                    }
+                    continue;
+                }
+                rollbackSent = false;
+                takeRttSample();
+                armTimer();
+                return packet;
 
             } catch (SocketTimeoutException e) {
-                retries++;
-                if (callback != null && retries < MAX_RETRIES) {
+                if (!rtt.backoff()) {
+                    throw new TftpException("Failed to receive block " + expectedBlock + ": server stopped responding",
+                            TftpException.UNDEFINED);
+                }
+                if (callback != null) {
                     callback.onLog("Timeout waiting for block " + expectedBlock +
-                            ", retry " + retries + "/" + MAX_RETRIES);
+                            ", retrying (rto " + rtt.getRtoMillis() + " ms)");
                 }
+                // nothing heard yet: the RRQ was lost; otherwise re-ACK so the server resends from there
+                if (!channel.isConnected()) {
+                    socket.send(requestPacket);
+                } else {
+                    sendAck(channel, expectedBlock - 1, callback);
+                }
+                retransmits++;
+                blocksSinceAck = 0;
+                ackSentAt = 0; // Karn: the reply may be to either copy
+                armTimer();
             }
         }
 
-        if (cancelled) return null;
+        return null;
+    }
 
-        throw new TftpException("Failed to receive data after " + MAX_RETRIES + " retries",
-                TftpException.UNDEFINED);
+    // the next block is due one RTO from now; call after each (re)transmission and on progress only
+    private void armTimer() {
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rtt.getRtoMillis());
     }
 
-    private void sendAck(DatagramSocket socket, InetAddress address, int destPort,
-                         int blockNumber, ProgressCallback callback) throws IOException {
+    // the first packet after our RRQ/ACK is one round trip, unless that ACK was a retransmission
+    private void takeRttSample() {
+        if (ackSentAt != 0) {
+            rtt.sample(System.nanoTime() - ackSentAt);
+            ackSentAt = 0;
+        } else {
+            rtt.acknowledge();
+        }
+    }
+
+    private void applyOack(DatagramChannel channel, TftpPacket oack,
+                           ProgressCallback callback) throws IOException, TftpException {
+        try {
+            options = TftpOptions.fromOack(requestedOptions, oack.getOptions());
+        } catch (TftpException e) {
+            channel.write(ByteBuffer.wrap(e.toPacket().toBytes()));
+            throw e;
+        }
+        if (options.getTimeout() > 0) {
+            rtt.setFixedTimeout(options.getTimeout());
+        }
+        // a whole window arrives back to back: make room for it so the tail is not dropped
+        if (channel.getOption(StandardSocketOptions.SO_RCVBUF) < options.getWindowBytes()) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, options.getWindowBytes());
+        }
+        if (callback != null) {
+            callback.onLog("OACK received: " + options.getAcknowledged());
+            callback.onOptionsNegotiated(options);
+        }
+    }
 
-        int actualDest = (serverDataPort != null) ? serverDataPort : destPort;
-        TftpPacket ack = TftpPacket.createACK(blockNumber);
-        DatagramPacket ackPacket = new DatagramPacket(ack.toBytes(), ack.toBytes().length,
-                address, actualDest);
-        socket.send(ackPacket);
+    // the channel is connected to the server's TID by now
+    private void sendAck(DatagramChannel channel, long blockNumber, ProgressCallback callback) throws IOException {
+        TftpPacketView.encodeAck(ackBuffer, rollover.toWire(blockNumber));
+        channel.write(ackBuffer);
+        ackSentAt = System.nanoTime();
 
         if (callback != null && blockNumber % 20 == 0) {
-            callback.onLog("ACK sent for block " + blockNumber + " to port " + actualDest);
+            callback.onLog("ACK sent for block " + blockNumber + " to " + channel.getRemoteAddress());
         }
     }
 }
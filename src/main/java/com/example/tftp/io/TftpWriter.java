@@ -1,12 +1,22 @@
 package com.example.tftp.io;
 
 import com.example.tftp.model.TftpException;
+import com.example.tftp.model.TftpMode;
+import com.example.tftp.model.TftpOptions;
 import com.example.tftp.model.TftpPacket;
+import com.example.tftp.model.TftpPacketView;
+import com.example.tftp.model.TftpRollover;
 
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class TftpWriter {
     private static final int BUFFER_SIZE = 516; // 512 data + 4 header
@@ -14,20 +24,80 @@ public class TftpWriter {
 
     private volatile boolean cancelled;
     private ProgressCallback progressCallback;
-    private Integer serverDataPort;
+    private volatile long retransmits;
 
-    private DatagramSocket socket;
-    private InetAddress serverAddress;
-    private int serverPort;
+    private DatagramChannel channel; // connected to the server's TID once it answers, see receivePacket
+
+    private int requestedBlockSize = TftpOptions.DEFAULT_BLOCK_SIZE;
+    private int requestedWindowSize = TftpOptions.DEFAULT_WINDOW_SIZE;
+    private int requestedTimeout; // seconds, 0 = adaptive
+    private TftpRollover rollover = TftpRollover.ZERO;
+    private TftpOptions options = new TftpOptions();
+    private volatile RttEstimator rtt = new RttEstimator();
+    private long deadline; // System.nanoTime() by which the awaited ACK is due, see armTimer
+
+    // reused for every DATA/ACK of the transfer, see TftpPacketView
+    private ByteBuffer sendBuffer;
+    private ByteBuffer receiveBuffer;
+    private DatagramPacket receiveDatagram;
+    private final TftpPacketView view = new TftpPacketView();
 
     public interface ProgressCallback {
         void onProgress(long transferred, long total);
         void onLog(String message);
+        default void onOptionsNegotiated(TftpOptions options) {}
     }
 
     public TftpWriter() {
         this.cancelled = false;
-        this.serverDataPort = null;
+    }
+
+    /** Block size to request with the WRQ (RFC 2348). The server may answer with a smaller one. */
+    public void setBlockSize(int blockSize) {
+        TftpOptions.request(blockSize, TftpOptions.DEFAULT_WINDOW_SIZE); // validates the range
+        this.requestedBlockSize = blockSize;
+    }
+
+    /** Number of blocks to send before waiting for an ACK (RFC 7440). */
+    public void setWindowSize(int windowSize) {
+        TftpOptions.request(TftpOptions.DEFAULT_BLOCK_SIZE, windowSize); // validates the range
+        this.requestedWindowSize = windowSize;
+    }
+
+    /** Window size in use for the current (or last) transfer. */
+    public int getWindowSize() {
+        return options.getWindowSize();
+    }
+
+    /** Fixed retransmission timeout to request (RFC 2349), 0 keeps the adaptive RTO. */
+    public void setTimeout(int seconds) {
+        TftpOptions.request(TftpOptions.DEFAULT_BLOCK_SIZE, TftpOptions.DEFAULT_WINDOW_SIZE, -1, seconds); // validates
+        this.requestedTimeout = seconds;
+    }
+
+    /** Block number to send after 65535; it has to match the server's setting. */
+    public void setRollover(TftpRollover rollover) {
+        this.rollover = rollover;
+    }
+
+    /** Stops the running upload at the next block; may be called from any thread. */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /** Current retransmission timeout of the running (or last) transfer. */
+    public int getRtoMillis() {
+        return rtt.getRtoMillis();
+    }
+
+    /** WRQs and DATA blocks sent again in the running (or last) transfer. */
+    public long getRetransmits() {
+        return retransmits;
+    }
+
+    /** Block size in use for the current (or last) transfer. */
+    public int getBlockSize() {
+        return options.getBlockSize();
     }
 
     public void writeFile(String filename, File localFile, InetAddress serverAddress, int serverPort,
@@ -35,116 +105,224 @@ public class TftpWriter {
 
         this.progressCallback = callback;
         this.cancelled = false;
-        this.serverDataPort = null;
-        this.serverAddress = serverAddress;
-        this.serverPort = serverPort;
+        this.retransmits = 0;
+        this.options = new TftpOptions();
+        this.rtt = new RttEstimator();
+        Map<String, String> requestedOptions = TftpOptions.request(requestedBlockSize, requestedWindowSize,
+                localFile.length(), requestedTimeout); // tsize lets the server refuse an upload that will not fit
 
-        try (DatagramSocket socket = new DatagramSocket()) {
-            this.socket = socket;
-            socket.setSoTimeout(3000);
+        // heap: the timed receive goes through the socket adaptor, which fills a DatagramPacket
+        this.receiveBuffer = BufferPool.heap().acquire(BUFFER_SIZE);
+        this.receiveDatagram = new DatagramPacket(receiveBuffer.array(), BUFFER_SIZE);
+
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.bind(null);
+            this.channel = channel;
+            DatagramSocket socket = channel.socket();
 
             // --- SEND WRQ ---
-            TftpPacket wrq = TftpPacket.createWRQ(filename);
-            DatagramPacket wrqPacket = new DatagramPacket(wrq.toBytes(), wrq.toBytes().length,
+            TftpPacket wrq = TftpPacket.createWRQ(filename, TftpMode.OCTET, requestedOptions);
+            byte[] wrqBytes = wrq.toBytes();
+            DatagramPacket wrqPacket = new DatagramPacket(wrqBytes, wrqBytes.length,
                     serverAddress, serverPort);
             socket.send(wrqPacket);
+            armTimer();
             if (callback != null) callback.onLog("WRQ sent for file: " + filename);
 
-            try (FileInputStream fis = new FileInputStream(localFile)) {
-                int blockNumber = 0;
-                long bytesTransferred = 0;
-                long totalSize = localFile.length();
-                boolean lastPacket = false;
-
-                while (!lastPacket && !cancelled) {
-                    // --- wait for ACK for previous block ---
-                    TftpPacket ackPacket = receivePacket(blockNumber);
-                    if (ackPacket == null) {
-                        throw new TftpException("Did not receive ACK for block " + blockNumber,
-                                TftpException.UNDEFINED);
+            // --- wait for ACK(0) or OACK, resending the WRQ on timeout ---
+            TftpPacketView response = null;
+            long requestSentAt = System.nanoTime();
+            while (response == null && !cancelled) {
+                response = receivePacket();
+                if (response == null) {
+                    if (!rtt.backoff()) {
+                        throw new TftpException("Did not receive ACK for block 0", TftpException.UNDEFINED);
                     }
+                    // once the server's TID has answered, resending is up to it
+                    if (!channel.isConnected()) {
+                        socket.send(wrqPacket);
+                        retransmits++;
+                    }
+                    armTimer();
+                    requestSentAt = 0; // Karn: the answer may be to either copy
+                } else if (!response.isOack() && (!response.isAck() || response.getBlockNumber() != 0)) {
+                    response = null; // stray packet, keep waiting
+                } else {
+                    if (requestSentAt != 0) rtt.sample(System.nanoTime() - requestSentAt);
+                    if (response.isOack()) applyOack(requestedOptions, response.toPacket());
+                }
+            }
 
-                    blockNumber++;
-                    byte[] buffer = new byte[512];
-                    int bytesRead = fis.read(buffer);
-                    if (bytesRead < 512) lastPacket = true;
-                    if (bytesRead == -1) bytesRead = 0;
+            try (RandomAccessFile raf = new RandomAccessFile(localFile, "r")) {
+                int blockSize = options.getBlockSize();
+                int windowSize = options.getWindowSize();
+                FileChannel file = raf.getChannel();
+                long totalSize = raf.length();
+                // the final block is always shorter than blockSize, possibly empty
+                long lastBlock = totalSize / blockSize + 1;
+                sendBuffer = BufferPool.direct().acquire(options.getPacketSize()); // file -> channel, no array
+                long base = 1; // oldest unacknowledged block
+                long highestSent = 0;
+                long windowSentAt = 0;
+                long firstNewBlock = 1; // blocks from here on went out once, in this window (Karn)
+                boolean resend = true;
 
-                    byte[] dataToSend = new byte[bytesRead];
-                    System.arraycopy(buffer, 0, dataToSend, 0, bytesRead);
+                while (base <= lastBlock && !cancelled) {
+                    long windowEnd = Math.min(base + windowSize - 1, lastBlock);
 
-                    TftpPacket dataPacket = TftpPacket.createDATA(blockNumber, dataToSend);
-                    sendPacketWithRetry(dataPacket, MAX_RETRIES, "DATA block " + blockNumber);
+                    if (resend) {
+                        // an ACK of a block sent for the first time answers its only copy and times
+                        // this window; blocks resent at its start do not make it ambiguous
+                        windowSentAt = System.nanoTime();
+                        firstNewBlock = highestSent + 1;
+                        retransmits += Math.max(0, Math.min(highestSent, windowEnd) - base + 1);
+                        highestSent = Math.max(highestSent, windowEnd);
+                        for (long block = base; block <= windowEnd && !cancelled; block++) {
+                            long offset = (block - 1) * blockSize;
+                            int length = (int) Math.min(blockSize, totalSize - offset);
+                            TftpPacketView.beginData(sendBuffer, rollover.toWire(block));
+                            sendBuffer.limit(TftpOptions.HEADER_SIZE + length);
+                            while (sendBuffer.hasRemaining()) {
+                                long position = offset + sendBuffer.position() - TftpOptions.HEADER_SIZE;
+                                if (file.read(sendBuffer, position) < 0) throw new EOFException(localFile.getPath());
+                            }
+                            sendBuffer.flip();
+                            sendWithRetry(sendBuffer, MAX_RETRIES, null, block);
+                        }
+                        armTimer();
+                    }
 
-                    bytesTransferred += bytesRead;
+                    TftpPacketView ackPacket = receivePacket();
+                    if (ackPacket == null) {
+                        if (!rtt.backoff()) {
+                            throw new TftpException("Did not receive ACK for block " + windowEnd,
+                                    TftpException.UNDEFINED);
+                        }
+                        if (progressCallback != null)
+                            progressCallback.onLog("Timeout waiting for ACK " + windowEnd + ", resending from block " + base +
+                                    " (rto " + rtt.getRtoMillis() + " ms)");
+                        resend = true;
+                        continue;
+                    }
 
-                    // --- обновляем прогресс после каждого блока ---
-                    if (progressCallback != null) {
-                        progressCallback.onProgress(bytesTransferred, totalSize);
+                    // ACK(base - 1) inside a window means "gap, resend from base" (RFC 7440);
+                    // in lock-step mode it is just a duplicate and must not trigger a resend.
+                    // Ignored packets keep the window's deadline, so they cannot put off a resend
+                    if (!ackPacket.isAck()) {
+                        resend = false;
+                        continue;
+                    }
+                    long lowest = windowSize > 1 ? base - 1 : base;
+                    long acked = rollover.fromWire(ackPacket.getBlockNumber(), windowEnd);
+                    if (acked < lowest || acked > windowEnd) {
+                        resend = false;
+                        continue;
                     }
 
-                    // проверка отмены
-                    if (cancelled) {
-                        if (progressCallback != null) progressCallback.onLog("Upload cancelled by user");
-                        break;
+                    if (acked >= firstNewBlock) {
+                        rtt.sample(System.nanoTime() - windowSentAt);
+                    } else {
+                        rtt.acknowledge();
                     }
+                    resend = true;
+                    base = acked + 1;
+
+                    // --- обновляем прогресс после каждого подтверждения ---
+                    if (progressCallback != null) {
+                        progressCallback.onProgress(Math.min(acked * blockSize, totalSize), totalSize);
+                    }
+                }
+
+                // проверка отмены
+                if (cancelled && progressCallback != null) {
+                    progressCallback.onLog("Upload cancelled by user");
                 }
             }
+        } finally {
+            BufferPool.heap().release(receiveBuffer);
+            BufferPool.direct().release(sendBuffer);
+            receiveBuffer = null;
+            sendBuffer = null;
         }
     }
 
-    private TftpPacket receivePacket(int expectedBlock) throws TftpException, IOException {
-        byte[] buffer = new byte[BUFFER_SIZE];
-        DatagramPacket receivePacket = new DatagramPacket(buffer, buffer.length);
+    // the awaited ACK is due one RTO from now; call after each (re)transmission only
+    private void armTimer() {
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rtt.getRtoMillis());
+    }
+
+    /**
+     * Next packet from the server's TID, or null once the deadline passes. The first reply fixes
+     * the TID: the channel is connected to it before it is answered, so the kernel drops datagrams
+     * from any other port. Connecting discards what is already queued, which can only be a resent
+     * copy of that reply, since the server sends nothing new until it hears from us.
+     */
+    private TftpPacketView receivePacket() throws TftpException, IOException {
+        DatagramPacket receivePacket = receiveDatagram;
+        DatagramSocket socket = channel.socket(); // its receive honours SO_TIMEOUT, a blocking read has no timeout
 
         try {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return null;
+            receivePacket.setLength(BUFFER_SIZE);
+            socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining + 999_999)));
             socket.receive(receivePacket);
-            InetAddress addr = receivePacket.getAddress();
-            int port = receivePacket.getPort();
-
-            // remember server port (TID) from first response
-            if (serverDataPort == null) {
-                serverDataPort = port;
-                if (progressCallback != null) progressCallback.onLog("Detected server data port: " + serverDataPort);
-            }
 
-            if (port != serverDataPort) {
-                if (progressCallback != null) {
-                    progressCallback.onLog("Received packet from wrong source: " +
-                            addr + ":" + port + " (expected " + serverDataPort + ")");
-                }
-                return null;
+            if (!channel.isConnected()) {
+                channel.connect(receivePacket.getSocketAddress());
+                if (progressCallback != null) progressCallback.onLog("Detected server data port: " + receivePacket.getPort());
             }
 
-            byte[] receivedData = new byte[receivePacket.getLength()];
-            System.arraycopy(buffer, 0, receivedData, 0, receivePacket.getLength());
+            receiveBuffer.clear().limit(receivePacket.getLength());
+            TftpPacketView packet = view.wrap(receiveBuffer);
 
-            TftpPacket packet = TftpPacket.fromBytes(receivedData);
-
-            if (packet.getOpCode() == com.example.tftp.model.TftpOpCode.ERROR) {
+            if (packet.isError()) {
                 throw new TftpException("Server error: " + packet.getErrorMessage(), packet.getErrorCode());
             }
 
             return packet;
-
         } catch (SocketTimeoutException e) {
             return null;
         }
     }
 
+    private void applyOack(Map<String, String> requestedOptions, TftpPacket oack) throws IOException, TftpException {
+        try {
+            options = TftpOptions.fromOack(requestedOptions, oack.getOptions());
+        } catch (TftpException e) {
+            sendPacketWithRetry(e.toPacket(), 1, "ERROR");
+            throw e;
+        }
+        if (options.getTimeout() > 0) {
+            rtt.setFixedTimeout(options.getTimeout());
+        }
+        if (channel.getOption(StandardSocketOptions.SO_SNDBUF) < options.getWindowBytes()) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, options.getWindowBytes());
+        }
+        if (progressCallback != null) {
+            progressCallback.onLog("OACK received: " + options.getAcknowledged());
+            progressCallback.onOptionsNegotiated(options);
+        }
+    }
+
     private void sendPacketWithRetry(TftpPacket packet, int maxRetries, String packetName) throws IOException {
+        sendWithRetry(ByteBuffer.wrap(packet.toBytes()), maxRetries, packetName, 0);
+    }
+
+    // to the connected TID; packetName null means DATA: the label is only built if a retry is logged
+    private void sendWithRetry(ByteBuffer data, int maxRetries, String packetName,
+                               long block) throws IOException {
+        int start = data.position();
         for (int i = 0; i < maxRetries; i++) {
             if (cancelled) return; // немедленно прекращаем отправку
             try {
-                byte[] data = packet.toBytes();
-                int destPort = (serverDataPort != null) ? serverDataPort : serverPort;
-                DatagramPacket udpPacket = new DatagramPacket(data, data.length, serverAddress, destPort);
-                socket.send(udpPacket);
+                channel.write(data.position(start));
                 return;
             } catch (IOException e) {
                 if (i == maxRetries - 1) throw e;
                 if (progressCallback != null)
-                    progressCallback.onLog("Retry " + (i + 1) + "/" + maxRetries + " for " + packetName);
+                    progressCallback.onLog("Retry " + (i + 1) + "/" + maxRetries + " for " +
+                            (packetName != null ? packetName : "DATA block " + block));
                 try {
                     Thread.sleep(1000);
                 } catch (InterruptedException ie) {
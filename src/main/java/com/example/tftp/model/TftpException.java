@@ -11,6 +11,7 @@ public class TftpException extends Exception {
     public static final int UNKNOWN_TRANSFER_ID = 5;
     public static final int FILE_EXISTS = 6;
     public static final int NO_SUCH_USER = 7;
+    public static final int OPTION_NEGOTIATION = 8;
 
     public TftpException(String message, int errorCode) {
         super(message);
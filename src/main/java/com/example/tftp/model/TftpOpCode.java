@@ -5,7 +5,15 @@ public enum TftpOpCode {
     WRQ(2),    // Write request
     DATA(3),   // Data packet
     ACK(4),    // Acknowledgment
-    ERROR(5);  // Error packet
+    ERROR(5),  // Error packet
+    OACK(6);   // Option acknowledgment (RFC 2347)
+
+    private static final TftpOpCode[] BY_VALUE = new TftpOpCode[7];
+    static {
+        for (TftpOpCode opCode : values()) {
+            BY_VALUE[opCode.value] = opCode;
+        }
+    }
 
     private final int value;
 
@@ -18,10 +26,9 @@ public enum TftpOpCode {
     }
 
     public static TftpOpCode fromValue(int value) {
-        for (TftpOpCode opCode : values()) {
-            if (opCode.getValue() == value) {
-                return opCode;
-            }
+        // values() clones the array on every call, this is on the per-packet path
+        if (value >= 0 && value < BY_VALUE.length && BY_VALUE[value] != null) {
+            return BY_VALUE[value];
         }
         throw new IllegalArgumentException("Invalid TFTP opcode: " + value);
     }
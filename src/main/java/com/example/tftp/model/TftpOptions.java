@@ -0,0 +1,243 @@
+package com.example.tftp.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transfer parameters agreed through RFC 2347 option negotiation.
+ * Without an OACK every value stays at its RFC 1350 default.
+ */
+public class TftpOptions {
+    public static final String BLKSIZE = "blksize";
+    public static final String WINDOWSIZE = "windowsize";
+    public static final String TSIZE = "tsize";
+    public static final String TIMEOUT = "timeout";
+    public static final String MULTICAST = "multicast";
+
+    public static final int DEFAULT_BLOCK_SIZE = 512;
+    public static final int MIN_BLOCK_SIZE = 8;
+    public static final int MAX_BLOCK_SIZE = 65464;
+
+    public static final int DEFAULT_WINDOW_SIZE = 1; // RFC 1350 lock-step
+    public static final int MIN_WINDOW_SIZE = 1;
+    public static final int MAX_WINDOW_SIZE = 65535;
+
+    public static final int MIN_TIMEOUT = 1; // seconds
+    public static final int MAX_TIMEOUT = 255;
+
+    public static final int HEADER_SIZE = 4; // opcode + block number
+
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private long transferSize = -1; // unknown
+    private boolean transferSizeRequested;
+    private int timeout; // seconds, 0 = not negotiated (adaptive)
+    private boolean multicastRequested;
+    private String multicastAddress; // null = unicast
+    private int multicastPort;
+    private boolean masterClient;
+    private final Map<String, String> acknowledged = new LinkedHashMap<>();
+
+    // ---------------------- CLIENT SIDE ----------------------
+
+    /** Options to put into RRQ/WRQ. Values equal to the defaults are not requested. */
+    public static Map<String, String> request(int blockSize, int windowSize) {
+        return request(blockSize, windowSize, -1);
+    }
+
+    /**
+     * Same, plus RFC 2349 tsize: 0 in an RRQ asks the server for the file length,
+     * the local file length in a WRQ announces it. A negative size leaves tsize out.
+     */
+    public static Map<String, String> request(int blockSize, int windowSize, long transferSize) {
+        return request(blockSize, windowSize, transferSize, 0);
+    }
+
+    /** Same, plus RFC 2349 timeout in seconds. 0 leaves it out and keeps the adaptive RTO. */
+    public static Map<String, String> request(int blockSize, int windowSize, long transferSize, int timeout) {
+        Map<String, String> options = new LinkedHashMap<>();
+        if (blockSize != DEFAULT_BLOCK_SIZE) {
+            options.put(BLKSIZE, String.valueOf(checkRange("Block size", blockSize, MIN_BLOCK_SIZE, MAX_BLOCK_SIZE)));
+        }
+        if (windowSize != DEFAULT_WINDOW_SIZE) {
+            options.put(WINDOWSIZE, String.valueOf(checkRange("Window size", windowSize, MIN_WINDOW_SIZE, MAX_WINDOW_SIZE)));
+        }
+        if (transferSize >= 0) {
+            options.put(TSIZE, String.valueOf(transferSize));
+        }
+        if (timeout != 0) {
+            options.put(TIMEOUT, String.valueOf(checkRange("Timeout", timeout, MIN_TIMEOUT, MAX_TIMEOUT)));
+        }
+        return options;
+    }
+
+    /** Adds the RFC 2090 multicast option (empty value) to a read request. */
+    public static Map<String, String> requestMulticast(Map<String, String> options) {
+        options.put(MULTICAST, "");
+        return options;
+    }
+
+    /** Validates the server OACK against what was requested. */
+    public static TftpOptions fromOack(Map<String, String> requested, Map<String, String> oack) throws TftpException {
+        TftpOptions options = new TftpOptions();
+        for (Map.Entry<String, String> option : oack.entrySet()) {
+            String name = option.getKey();
+            if (!requested.containsKey(name)) {
+                throw new TftpException("Server acknowledged unrequested option '" + name + "'",
+                        TftpException.OPTION_NEGOTIATION);
+            }
+
+            if (BLKSIZE.equals(name)) {
+                int size = parseInt(option.getValue());
+                if (size < MIN_BLOCK_SIZE || size > Integer.parseInt(requested.get(BLKSIZE))) {
+                    throw new TftpException("Invalid blksize in OACK: " + option.getValue(),
+                            TftpException.OPTION_NEGOTIATION);
+                }
+                options.blockSize = size;
+            } else if (WINDOWSIZE.equals(name)) {
+                int size = parseInt(option.getValue());
+                if (size < MIN_WINDOW_SIZE || size > Integer.parseInt(requested.get(WINDOWSIZE))) {
+                    throw new TftpException("Invalid windowsize in OACK: " + option.getValue(),
+                            TftpException.OPTION_NEGOTIATION);
+                }
+                options.windowSize = size;
+            } else if (TSIZE.equals(name)) {
+                long size = parseLong(option.getValue());
+                if (size < 0) {
+                    throw new TftpException("Invalid tsize in OACK: " + option.getValue(),
+                            TftpException.OPTION_NEGOTIATION);
+                }
+                options.transferSize = size;
+            } else if (TIMEOUT.equals(name)) {
+                // RFC 2349: the server must echo the requested value
+                if (!option.getValue().trim().equals(requested.get(TIMEOUT))) {
+                    throw new TftpException("Invalid timeout in OACK: " + option.getValue(),
+                            TftpException.OPTION_NEGOTIATION);
+                }
+                options.timeout = parseInt(option.getValue());
+            } else if (MULTICAST.equals(name)) {
+                parseMulticast(options, option.getValue());
+            }
+            options.acknowledged.put(name, option.getValue());
+        }
+        return options;
+    }
+
+    // ---------------------- SERVER SIDE ----------------------
+
+    /** Picks the values the server is willing to use. Unknown or malformed options are ignored. */
+    public static TftpOptions negotiate(Map<String, String> requested, int maxBlockSize, int maxWindowSize) {
+        TftpOptions options = new TftpOptions();
+        String blksize = requested.get(BLKSIZE);
+        if (blksize != null) {
+            int size = parseInt(blksize);
+            if (size >= MIN_BLOCK_SIZE) {
+                options.blockSize = Math.min(size, Math.min(maxBlockSize, MAX_BLOCK_SIZE));
+                options.acknowledged.put(BLKSIZE, String.valueOf(options.blockSize));
+            }
+        }
+        String windowsize = requested.get(WINDOWSIZE);
+        if (windowsize != null && maxWindowSize > DEFAULT_WINDOW_SIZE) {
+            int size = parseInt(windowsize);
+            if (size >= MIN_WINDOW_SIZE) {
+                options.windowSize = Math.min(size, Math.min(maxWindowSize, MAX_WINDOW_SIZE));
+                options.acknowledged.put(WINDOWSIZE, String.valueOf(options.windowSize));
+            }
+        }
+        String timeout = requested.get(TIMEOUT);
+        if (timeout != null) {
+            int seconds = parseInt(timeout);
+            if (seconds >= MIN_TIMEOUT && seconds <= MAX_TIMEOUT) {
+                options.timeout = seconds;
+                options.acknowledged.put(TIMEOUT, String.valueOf(seconds));
+            }
+        }
+        String tsize = requested.get(TSIZE);
+        if (tsize != null && parseLong(tsize) >= 0) {
+            // acknowledged by the handler once it knows (RRQ) or has accepted (WRQ) the size
+            options.transferSize = parseLong(tsize);
+            options.transferSizeRequested = true;
+        }
+        // acknowledged by the handler if it can put the client into a group
+        options.multicastRequested = requested.containsKey(MULTICAST);
+        return options;
+    }
+
+    /** Adds tsize to the OACK: the file length for an RRQ, the announced length for an accepted WRQ. */
+    public void acknowledgeTransferSize(long size) {
+        transferSize = size;
+        acknowledged.put(TSIZE, String.valueOf(size));
+    }
+
+    /**
+     * Adds multicast "addr,port,mc" to the OACK, mc = 1 for the master client. RFC 2090
+     * transfers are lock-step, so a negotiated windowsize is withdrawn.
+     */
+    public void acknowledgeMulticast(String address, int port, boolean master) {
+        multicastAddress = address;
+        multicastPort = port;
+        masterClient = master;
+        windowSize = DEFAULT_WINDOW_SIZE;
+        acknowledged.remove(WINDOWSIZE);
+        acknowledged.put(MULTICAST, address + "," + port + "," + (master ? 1 : 0));
+    }
+
+    // ---------------------- HELPERS ----------------------
+
+    // addr and port may be left empty in a later OACK that only hands over the master role
+    private static void parseMulticast(TftpOptions options, String value) throws TftpException {
+        String[] parts = value.split(",", -1);
+        if (parts.length != 3 || !(parts[2].trim().equals("0") || parts[2].trim().equals("1"))) {
+            throw new TftpException("Invalid multicast in OACK: " + value, TftpException.OPTION_NEGOTIATION);
+        }
+        if (!parts[0].trim().isEmpty()) {
+            int port = parseInt(parts[1]);
+            if (port < 1 || port > 65535) {
+                throw new TftpException("Invalid multicast port in OACK: " + value, TftpException.OPTION_NEGOTIATION);
+            }
+            options.multicastAddress = parts[0].trim();
+            options.multicastPort = port;
+        }
+        options.masterClient = parts[2].trim().equals("1");
+    }
+
+    private static int checkRange(String name, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max + ": " + value);
+        }
+        return value;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // ---------------------- GETTERS ----------------------
+    public int getBlockSize() { return blockSize; }
+    public int getPacketSize() { return blockSize + HEADER_SIZE; }
+    public int getWindowSize() { return windowSize; }
+    // socket buffer for one window, doubled for the per-datagram overhead the kernel charges
+    public int getWindowBytes() { return windowSize * getPacketSize() * 2; }
+    public long getTransferSize() { return transferSize; }
+    public boolean isTransferSizeRequested() { return transferSizeRequested; }
+    public int getTimeout() { return timeout; }
+    public boolean isMulticastRequested() { return multicastRequested; }
+    public String getMulticastAddress() { return multicastAddress; }
+    public int getMulticastPort() { return multicastPort; }
+    public boolean isMasterClient() { return masterClient; }
+    public boolean isEmpty() { return acknowledged.isEmpty(); }
+    public Map<String, String> getAcknowledged() { return Collections.unmodifiableMap(acknowledged); }
+}
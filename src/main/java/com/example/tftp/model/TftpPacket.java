@@ -1,10 +1,13 @@
 package com.example.tftp.model;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 public class TftpPacket {
     private TftpOpCode opCode;
@@ -14,6 +17,7 @@ public class TftpPacket {
     private int blockNumber;
     private int errorCode;
     private String errorMessage;
+    private Map<String, String> options = Collections.emptyMap();
 
     // ---------------------- FACTORY METHODS ----------------------
     public static TftpPacket createRRQ(String filename) {
@@ -21,10 +25,15 @@ public class TftpPacket {
     }
 
     public static TftpPacket createRRQ(String filename, TftpMode mode) {
+        return createRRQ(filename, mode, Collections.emptyMap());
+    }
+
+    public static TftpPacket createRRQ(String filename, TftpMode mode, Map<String, String> options) {
         TftpPacket packet = new TftpPacket();
         packet.opCode = TftpOpCode.RRQ;
         packet.filename = filename;
         packet.mode = mode;
+        packet.options = new LinkedHashMap<>(options);
         return packet;
     }
 
@@ -33,10 +42,15 @@ public class TftpPacket {
     }
 
     public static TftpPacket createWRQ(String filename, TftpMode mode) {
+        return createWRQ(filename, mode, Collections.emptyMap());
+    }
+
+    public static TftpPacket createWRQ(String filename, TftpMode mode, Map<String, String> options) {
         TftpPacket packet = new TftpPacket();
         packet.opCode = TftpOpCode.WRQ;
         packet.filename = filename;
         packet.mode = mode;
+        packet.options = new LinkedHashMap<>(options);
         return packet;
     }
 
@@ -63,39 +77,92 @@ public class TftpPacket {
         return packet;
     }
 
+    public static TftpPacket createOACK(Map<String, String> options) {
+        TftpPacket packet = new TftpPacket();
+        packet.opCode = TftpOpCode.OACK;
+        packet.options = new LinkedHashMap<>(options);
+        return packet;
+    }
+
     // ---------------------- SERIALIZATION ----------------------
     public byte[] toBytes() throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        output.write(ByteBuffer.allocate(2).putShort((short) opCode.getValue()).array());
+        byte[] bytes = new byte[encodedLength()];
+        encodeTo(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /** Writes the packet at the buffer's position. The buffer must have {@link #encodedLength()} bytes left. */
+    public void encodeTo(ByteBuffer buffer) {
+        buffer.putShort((short) opCode.getValue());
 
         switch (opCode) {
             case RRQ:
             case WRQ:
-                output.write(filename.getBytes(StandardCharsets.UTF_8));
-                output.write(0);
-                output.write(mode.getValue().getBytes(StandardCharsets.UTF_8));
-                output.write(0);
+                putString(buffer, filename);
+                putString(buffer, mode.getValue());
+                writeOptions(buffer, options);
+                break;
+
+            case OACK:
+                writeOptions(buffer, options);
                 break;
 
             case DATA:
-                output.write(ByteBuffer.allocate(2).putShort((short) blockNumber).array());
+                buffer.putShort((short) blockNumber);
                 if (data != null) {
-                    output.write(data);
+                    buffer.put(data);
                 }
                 break;
 
             case ACK:
-                output.write(ByteBuffer.allocate(2).putShort((short) blockNumber).array());
+                buffer.putShort((short) blockNumber);
                 break;
 
             case ERROR:
-                output.write(ByteBuffer.allocate(2).putShort((short) errorCode).array());
-                output.write(errorMessage.getBytes(StandardCharsets.UTF_8));
-                output.write(0);
+                buffer.putShort((short) errorCode);
+                putString(buffer, errorMessage);
                 break;
         }
+    }
+
+    public int encodedLength() {
+        switch (opCode) {
+            case RRQ:
+            case WRQ:
+                return 2 + stringLength(filename) + stringLength(mode.getValue()) + optionsLength(options);
+            case OACK:
+                return 2 + optionsLength(options);
+            case DATA:
+                return TftpOptions.HEADER_SIZE + getDataLength();
+            case ERROR:
+                return TftpOptions.HEADER_SIZE + stringLength(errorMessage);
+            default:
+                return TftpOptions.HEADER_SIZE;
+        }
+    }
+
+    private static void writeOptions(ByteBuffer buffer, Map<String, String> options) {
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            putString(buffer, option.getKey());
+            putString(buffer, option.getValue());
+        }
+    }
+
+    private static int optionsLength(Map<String, String> options) {
+        int length = 0;
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            length += stringLength(option.getKey()) + stringLength(option.getValue());
+        }
+        return length;
+    }
+
+    // NUL-terminated string
+    private static void putString(ByteBuffer buffer, String value) {
+        buffer.put(value.getBytes(StandardCharsets.UTF_8)).put((byte) 0);
+    }
 
-        return output.toByteArray();
+    private static int stringLength(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length + 1;
     }
 
     // ---------------------- DESERIALIZATION ----------------------
@@ -123,6 +190,8 @@ public class TftpPacket {
                     return parseAckPacket(buffer);
                 case ERROR:
                     return parseErrorPacket(buffer);
+                case OACK:
+                    return parseOackPacket(buffer);
                 default:
                     throw new IOException("Unknown opcode: " + opCodeValue);
             }
@@ -144,9 +213,33 @@ public class TftpPacket {
         packet.opCode = opCode;
         packet.filename = filenameBuilder.toString();
         packet.mode = TftpMode.fromString(modeBuilder.toString());
+        packet.options = parseOptions(buffer);
         return packet;
     }
 
+    private static TftpPacket parseOackPacket(ByteBuffer buffer) {
+        TftpPacket packet = new TftpPacket();
+        packet.opCode = TftpOpCode.OACK;
+        packet.options = parseOptions(buffer);
+        return packet;
+    }
+
+    // RFC 2347: pairs of NUL-terminated name/value strings until the end of the packet
+    private static Map<String, String> parseOptions(ByteBuffer buffer) {
+        Map<String, String> options = new LinkedHashMap<>();
+        while (buffer.hasRemaining()) {
+            StringBuilder nameBuilder = new StringBuilder();
+            char ch;
+            while ((ch = (char) buffer.get()) != 0) nameBuilder.append(ch);
+
+            StringBuilder valueBuilder = new StringBuilder();
+            while ((ch = (char) buffer.get()) != 0) valueBuilder.append(ch);
+
+            options.put(nameBuilder.toString().toLowerCase(Locale.ROOT), valueBuilder.toString());
+        }
+        return options;
+    }
+
     private static TftpPacket parseDataPacket(ByteBuffer buffer) {
         int blockNumber = buffer.getShort() & 0xFFFF;
         byte[] data = new byte[buffer.remaining()];
@@ -190,4 +283,5 @@ public class TftpPacket {
     public int getErrorCode() { return errorCode; }
     public String getErrorMessage() { return errorMessage; }
     public int getDataLength() { return data != null ? data.length : 0; }
+    public Map<String, String> getOptions() { return Collections.unmodifiableMap(options); }
 }
@@ -0,0 +1,121 @@
+package com.example.tftp.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Flyweight over one datagram held in a caller-owned buffer. DATA, ACK and ERROR headers are
+ * read in place and DATA/ACK are encoded in place, so the per-block path of a transfer
+ * allocates nothing; requests and OACKs go through {@link #toPacket()}.
+ *
+ * A view is only valid until its buffer receives the next datagram.
+ */
+public final class TftpPacketView {
+    private ByteBuffer buffer;
+    private int start;
+    private int length;
+
+    /** Points the view at the datagram between the buffer's position and limit. */
+    public TftpPacketView wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.start = buffer.position();
+        this.length = buffer.remaining();
+        return this;
+    }
+
+    // ---------------------- DECODING ----------------------
+
+    /** Raw opcode, -1 if the datagram is too short to carry one. */
+    public int getOpCodeValue() {
+        return length < 2 ? -1 : buffer.getShort(start) & 0xFFFF;
+    }
+
+    public boolean isData() {
+        return is(TftpOpCode.DATA);
+    }
+
+    public boolean isAck() {
+        return is(TftpOpCode.ACK);
+    }
+
+    public boolean isError() {
+        return is(TftpOpCode.ERROR);
+    }
+
+    public boolean isOack() {
+        return getOpCodeValue() == TftpOpCode.OACK.getValue();
+    }
+
+    // DATA, ACK and ERROR all carry a 16-bit field after the opcode
+    private boolean is(TftpOpCode opCode) {
+        return length >= TftpOptions.HEADER_SIZE && getOpCodeValue() == opCode.getValue();
+    }
+
+    public int getBlockNumber() {
+        return buffer.getShort(start + 2) & 0xFFFF;
+    }
+
+    public int getErrorCode() {
+        return buffer.getShort(start + 2) & 0xFFFF;
+    }
+
+    public String getErrorMessage() {
+        int from = start + TftpOptions.HEADER_SIZE;
+        int end = from;
+        while (end < start + length && buffer.get(end) != 0) end++;
+        byte[] message = new byte[end - from];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = buffer.get(from + i);
+        }
+        return new String(message, StandardCharsets.UTF_8);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getDataLength() {
+        return length - TftpOptions.HEADER_SIZE;
+    }
+
+    /** Index of the DATA payload in the underlying buffer (and its array, for heap buffers). */
+    public int getDataOffset() {
+        return start + TftpOptions.HEADER_SIZE;
+    }
+
+    /** Moves the buffer's position and limit onto the DATA payload, e.g. for a channel write. */
+    public ByteBuffer data() {
+        buffer.limit(start + length).position(getDataOffset());
+        return buffer;
+    }
+
+    /** Full decode, for the packets that are not worth a flyweight. */
+    public TftpPacket toPacket() throws IOException {
+        ByteBuffer copy = buffer.duplicate();
+        copy.limit(start + length).position(start);
+        byte[] bytes = new byte[length];
+        copy.get(bytes);
+        return TftpPacket.fromBytes(bytes);
+    }
+
+    // ---------------------- ENCODING ----------------------
+
+    /** Writes ACK(block) at the start of the buffer and flips it, ready to send. */
+    public static ByteBuffer encodeAck(ByteBuffer buffer, int blockNumber) {
+        buffer.clear();
+        buffer.putShort((short) TftpOpCode.ACK.getValue()).putShort((short) blockNumber);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes a DATA header at the start of the buffer and leaves it positioned for the
+     * payload; flip the buffer once the payload is in.
+     */
+    public static ByteBuffer beginData(ByteBuffer buffer, int blockNumber) {
+        buffer.clear();
+        buffer.putShort((short) TftpOpCode.DATA.getValue()).putShort((short) blockNumber);
+        return buffer;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.tftp.model;
+
+/**
+ * What follows block 65535 on the wire. The block field is 16 bits, so a transfer of more than
+ * 65535 blocks wraps it; implementations differ in whether the next block is 0 or 1, and both
+ * ends have to use the same. The engines count blocks as 64-bit values and convert only at the wire.
+ */
+public enum TftpRollover {
+    ZERO(0),
+    ONE(1);
+
+    public static final int MAX_BLOCK_NUMBER = 65535;
+
+    private final int value;
+
+    TftpRollover(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public static TftpRollover fromValue(int value) {
+        for (TftpRollover r : values()) {
+            if (r.value == value) {
+                return r;
+            }
+        }
+        throw new IllegalArgumentException("Invalid rollover: " + value + " (expected 0 or 1)");
+    }
+
+    // numbers a block can carry once the counter has wrapped: 0..65535 or 1..65535
+    private int period() {
+        return MAX_BLOCK_NUMBER + 1 - value;
+    }
+
+    /** The 16-bit block number of block {@code block} (1-based; 0 acknowledges a request or OACK). */
+    public int toWire(long block) {
+        if (block <= MAX_BLOCK_NUMBER) {
+            return (int) block;
+        }
+        return (int) ((block - value) % period()) + value;
+    }
+
+    /** The block carrying {@code wire} that lies closest to {@code reference}, e.g. the next expected one. */
+    public long fromWire(int wire, long reference) {
+        int period = period();
+        long diff = (wire - toWire(reference)) % period;
+        if (diff > period / 2) {
+            diff -= period;
+        } else if (diff < -period / 2) {
+            diff += period;
+        }
+        return reference + diff;
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.tftp.server;
+
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Paces the DATA a server sends. Token buckets cap the rate at three scopes: all transfers
+ * together, all transfers of one client IP, and all transfers of files matching a glob rule.
+ * When the global bucket is the bottleneck, sessions take turns in start-time fair queuing
+ * order, so a transfer gets a share in proportion to its weight (1 unless a rule says
+ * otherwise) however fast its client ACKs: one large image no longer starves small ones.
+ *
+ * A bucket may go into debt by one packet, so blocks larger than the burst still pass;
+ * the next sender waits until the debt is paid off. Handlers call {@link Session#acquire}
+ * from their own thread and block there.
+ */
+public class BandwidthShaper implements BandwidthShaperMXBean {
+    private static final long MIN_BURST = 64 * 1024;
+
+    private final TokenBucket global; // null: unlimited
+    private final long perClientRate; // bytes/s, 0: unlimited
+    private final List<Rule> rules = new ArrayList<>();
+    private final Map<InetAddress, ClientBucket> clients = new ConcurrentHashMap<>();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    // sessions waiting for the global bucket, in start-tag order
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Session> waiting = new PriorityQueue<>(Comparator.comparingDouble(s -> s.startTag));
+    private double virtualTime; // start tag of the last packet let through
+
+    private ObjectName objectName;
+
+    /** Rates in bytes per second, 0 for no limit. */
+    public BandwidthShaper(long globalRate, long perClientRate) {
+        this.global = globalRate > 0 ? new TokenBucket(globalRate) : null;
+        this.perClientRate = perClientRate;
+    }
+
+    /**
+     * Caps all transfers of files matching {@code glob} (relative to the server directory)
+     * at {@code rate} together, 0 for no cap, and gives each of them {@code weight} in the fair
+     * queue. The first matching rule wins.
+     */
+    public void addRule(String glob, long rate, double weight) {
+        if (weight <= 0) throw new IllegalArgumentException("Weight must be positive: " + weight);
+        rules.add(new Rule(glob, rate, weight));
+    }
+
+    /** Starts shaping a transfer of {@code filename} to {@code client}; close the session when it ends. */
+    public Session open(InetSocketAddress client, String filename) {
+        Rule rule = null;
+        for (Rule r : rules) {
+            if (r.matches(filename)) {
+                rule = r;
+                break;
+            }
+        }
+        ClientBucket clientBucket = null;
+        if (perClientRate > 0) {
+            clientBucket = clients.compute(client.getAddress(), (address, existing) -> {
+                ClientBucket b = existing != null ? existing : new ClientBucket(perClientRate);
+                b.sessions++;
+                return b;
+            });
+        }
+        Session session = new Session(client, filename, rule, clientBucket);
+        sessions.add(session);
+        return session;
+    }
+
+    // ---------------------- JMX ----------------------
+
+    public synchronized void register(int port) {
+        try {
+            ObjectName name = new ObjectName("com.example.tftp:type=BandwidthShaper,port=" + port);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (JMException e) {
+            System.err.println("Failed to register bandwidth shaper MBean: " + e.getMessage());
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ignored) {}
+        objectName = null;
+    }
+
+    @Override public long getGlobalLimit() { return global != null ? global.rate : 0; }
+    @Override public long getPerClientLimit() { return perClientRate; }
+    @Override public int getSessionCount() { return sessions.size(); }
+
+    @Override
+    public long getCurrentRate() {
+        long total = 0;
+        for (Session session : sessions) {
+            total += session.getCurrentRate();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, String> getSessions() {
+        Map<String, String> view = new TreeMap<>();
+        for (Session session : sessions) {
+            view.put(session.client.getAddress().getHostAddress() + ":" + session.client.getPort() + " " + session.filename,
+                    session.getCurrentRate() + " B/s of " + (session.getLimit() > 0 ? session.getLimit() + " B/s" : "unlimited") +
+                            ", weight " + session.weight);
+        }
+        return view;
+    }
+
+    @Override
+    public String toString() {
+        return "Bandwidth shaper: global " + format(getGlobalLimit()) + ", per client " + format(perClientRate) +
+                ", " + rules.size() + " file rule(s), " + sessions.size() + " session(s)";
+    }
+
+    private static String format(long rate) {
+        return rate > 0 ? String.format(Locale.ROOT, "%.1f MB/s", rate / (1024.0 * 1024)) : "unlimited";
+    }
+
+    /** "500K", "10M", "1G" or plain bytes per second; 0 means no limit. */
+    public static long parseRate(String value) {
+        String v = value.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (v.endsWith("K")) unit = 1024;
+        else if (v.endsWith("M")) unit = 1024 * 1024;
+        else if (v.endsWith("G")) unit = 1024L * 1024 * 1024;
+        if (unit > 1) v = v.substring(0, v.length() - 1);
+        double rate = Double.parseDouble(v) * unit;
+        if (rate < 0) throw new IllegalArgumentException("Rate must not be negative: " + value);
+        return (long) rate;
+    }
+
+    // ---------------------- SESSIONS ----------------------
+
+    /** One shaped transfer; {@link #acquire} is only called from the transfer's own thread. */
+    public final class Session {
+        private final InetSocketAddress client;
+        private final String filename;
+        private final double weight;
+        private final TokenBucket ruleBucket; // shared by every transfer the rule matches
+        private final ClientBucket clientBucket;
+        private final Condition turn = lock.newCondition();
+        private double startTag;
+        private double finishTag;
+
+        // rate over the last full second, for monitoring
+        private long meterStart = System.nanoTime();
+        private long meterBytes;
+        private volatile long currentRate;
+
+        private Session(InetSocketAddress client, String filename, Rule rule, ClientBucket clientBucket) {
+            this.client = client;
+            this.filename = filename;
+            this.weight = rule != null ? rule.weight : 1;
+            this.ruleBucket = rule != null ? rule.bucket : null;
+            this.clientBucket = clientBucket;
+        }
+
+        /** Blocks until {@code bytes} of DATA may be sent. */
+        public void acquire(int bytes) throws InterruptedIOException {
+            try {
+                long now = System.nanoTime();
+                long wait = 0;
+                if (clientBucket != null) wait = clientBucket.reserve(bytes, now);
+                if (ruleBucket != null) wait = Math.max(wait, ruleBucket.reserve(bytes, now));
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                if (global != null) awaitTurn(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while shaping");
+            }
+            meter(bytes);
+        }
+
+        private void awaitTurn(int bytes) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                startTag = Math.max(virtualTime, finishTag);
+                finishTag = startTag + bytes / weight;
+                waiting.add(this);
+                try {
+                    while (true) {
+                        if (waiting.peek() == this) {
+                            long wait = global.debtNanos(System.nanoTime());
+                            if (wait <= 0) break;
+                            turn.awaitNanos(wait);
+                        } else {
+                            turn.await();
+                        }
+                    }
+                    global.take(bytes);
+                    virtualTime = startTag;
+                } finally {
+                    waiting.remove(this);
+                    Session next = waiting.peek();
+                    if (next != null) next.turn.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void meter(int bytes) {
+            meterBytes += bytes;
+            long elapsed = System.nanoTime() - meterStart;
+            if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+                currentRate = meterBytes * TimeUnit.SECONDS.toNanos(1) / elapsed;
+                meterStart += elapsed;
+                meterBytes = 0;
+            }
+        }
+
+        public void close() {
+            if (!sessions.remove(this)) return;
+            if (clientBucket != null) {
+                clients.computeIfPresent(client.getAddress(), (address, b) -> --b.sessions == 0 ? null : b);
+            }
+        }
+
+        public long getCurrentRate() {
+            return currentRate;
+        }
+
+        /** Tightest configured cap on this transfer in bytes/s, 0 if none applies. */
+        public long getLimit() {
+            long limit = 0;
+            for (TokenBucket bucket : new TokenBucket[]{global, ruleBucket, clientBucket}) {
+                if (bucket != null && (limit == 0 || bucket.rate < limit)) limit = bucket.rate;
+            }
+            return limit;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+    }
+
+    // ---------------------- BUCKETS ----------------------
+
+    static class TokenBucket {
+        final long rate; // bytes per second
+        private final long burst;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(long rate) {
+            this.rate = rate;
+            this.burst = Math.max(rate / 10, MIN_BURST);
+            this.tokens = burst;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1e9);
+            refilledAt = now;
+        }
+
+        /** Takes {@code bytes} now and returns how long to wait before sending them. */
+        synchronized long reserve(int bytes, long now) {
+            refill(now);
+            long wait = tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0;
+            tokens -= bytes;
+            return wait;
+        }
+
+        /** Nanos until the bucket is out of debt. */
+        synchronized long debtNanos(long now) {
+            refill(now);
+            return tokens < 0 ? (long) Math.ceil(-tokens * 1e9 / rate) : 0;
+        }
+
+        synchronized void take(int bytes) {
+            tokens -= bytes;
+        }
+    }
+
+    private static final class ClientBucket extends TokenBucket {
+        int sessions; // guarded by the clients map
+
+        ClientBucket(long rate) {
+            super(rate);
+        }
+    }
+
+    private static final class Rule {
+        private final PathMatcher matcher;
+        private final TokenBucket bucket; // null: weight only
+        private final double weight;
+
+        Rule(String glob, long rate, double weight) {
+            this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            this.bucket = rate > 0 ? new TokenBucket(rate) : null;
+            this.weight = weight;
+        }
+
+        boolean matches(String filename) {
+            try {
+                return matcher.matches(Paths.get(filename));
+            } catch (IllegalArgumentException e) {
+                return false; // not a valid path on this platform
+            }
+        }
+    }
+}
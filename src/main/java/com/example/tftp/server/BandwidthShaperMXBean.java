@@ -0,0 +1,16 @@
+package com.example.tftp.server;
+
+import java.util.Map;
+
+/** JMX view of {@link BandwidthShaper}, registered as {@code com.example.tftp:type=BandwidthShaper,port=N}. */
+public interface BandwidthShaperMXBean {
+    /** Bytes/s, 0 = unlimited. */
+    long getGlobalLimit();
+    long getPerClientLimit();
+
+    int getSessionCount();
+    /** Sum of the sessions' current rates, bytes/s. */
+    long getCurrentRate();
+    /** "client:port file" -> current rate, limit and weight of each shaped transfer. */
+    Map<String, String> getSessions();
+}
@@ -0,0 +1,179 @@
+package com.example.tftp.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Where an RRQ takes its DATA blocks from: a {@link FileCache} slice, a shared
+ * {@link MappedFiles} mapping, or the file itself.
+ */
+interface BlockSource extends Closeable {
+
+    long length();
+
+    /** Copies {@code length} bytes at {@code offset} into {@code dst} at its position. */
+    void read(ByteBuffer dst, long offset, int length) throws IOException;
+
+    /** Most buffers {@link #gather} fills: the header and a block straddling two regions. */
+    int MAX_GATHER = 3;
+
+    /**
+     * Lays out a packet for a gathering channel write: {@code packet[0]} holds the header up to
+     * its position and is flipped here. The block follows as views of the source's own memory
+     * in the next elements, or copied into {@code packet[0]} when there is none. Returns how
+     * many elements to write; the views are valid until the next call.
+     */
+    default int gather(ByteBuffer[] packet, long offset, int length) throws IOException {
+        read(packet[0], offset, length);
+        packet[0].flip();
+        return 1;
+    }
+
+    static BlockSource open(File file, FileCache cache, MappedFiles mappedFiles) throws IOException {
+        if (cache != null) {
+            ByteBuffer content = null;
+            try {
+                content = cache.get(file);
+            } catch (IOException e) {
+                // not cacheable right now, read the file directly
+            }
+            if (content != null) {
+                return new Cached(content);
+            }
+        }
+        if (mappedFiles != null) {
+            MappedFiles.Mapping mapping = mappedFiles.acquire(file);
+            if (mapping != null) {
+                return new Mapped(mappedFiles, mapping);
+            }
+        }
+        return new Channel(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    final class Channel implements BlockSource {
+        private final FileChannel channel;
+        private final long length;
+
+        Channel(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.length = channel.size();
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public void read(ByteBuffer dst, long offset, int length) throws IOException {
+            int end = dst.position() + length;
+            int limit = dst.limit();
+            dst.limit(end);
+            try {
+                while (dst.hasRemaining()) {
+                    if (channel.read(dst, offset + length - dst.remaining()) < 0) {
+                        throw new IOException("Unexpected end of file at offset " + offset);
+                    }
+                }
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    final class Cached implements BlockSource {
+        private final ByteBuffer content; // private duplicate, position/limit are ours
+
+        Cached(ByteBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public long length() {
+            return content.capacity();
+        }
+
+        @Override
+        public void read(ByteBuffer dst, long offset, int length) {
+            content.limit((int) offset + length).position((int) offset);
+            dst.put(content);
+        }
+
+        @Override
+        public int gather(ByteBuffer[] packet, long offset, int length) {
+            content.limit((int) offset + length).position((int) offset);
+            packet[0].flip();
+            packet[1] = content;
+            return 2;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    final class Mapped implements BlockSource {
+        private final MappedFiles owner;
+        private final MappedFiles.Mapping mapping;
+        private final ByteBuffer[] views;
+        private boolean closed;
+
+        Mapped(MappedFiles owner, MappedFiles.Mapping mapping) {
+            this.owner = owner;
+            this.mapping = mapping;
+            this.views = mapping.views();
+        }
+
+        @Override
+        public long length() {
+            return mapping.size;
+        }
+
+        @Override
+        public void read(ByteBuffer dst, long offset, int length) {
+            int region = (int) (offset >>> MappedFiles.REGION_SHIFT);
+            int position = (int) (offset & (MappedFiles.REGION_SIZE - 1));
+            while (length > 0) { // a block may straddle two regions
+                ByteBuffer view = views[region++];
+                int chunk = Math.min(length, view.capacity() - position);
+                view.limit(position + chunk).position(position);
+                dst.put(view);
+                length -= chunk;
+                position = 0;
+            }
+        }
+
+        @Override
+        public int gather(ByteBuffer[] packet, long offset, int length) {
+            int region = (int) (offset >>> MappedFiles.REGION_SHIFT);
+            int position = (int) (offset & (MappedFiles.REGION_SIZE - 1));
+            int count = 1;
+            while (length > 0) {
+                ByteBuffer view = views[region++];
+                int chunk = Math.min(length, view.capacity() - position);
+                view.limit(position + chunk).position(position);
+                packet[count++] = view;
+                length -= chunk;
+                position = 0;
+            }
+            packet[0].flip();
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            owner.release(mapping);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.tftp.server;
 
+import com.example.tftp.io.RttEstimator;
 import com.example.tftp.model.TftpException;
+import com.example.tftp.model.TftpOptions;
 import com.example.tftp.model.TftpPacket;
+import com.example.tftp.model.TftpRollover;
 import java.io.*;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
@@ -9,23 +12,36 @@ import java.net.InetAddress;
 import java.net.SocketTimeoutException;
 
 public class ClientHandler extends Thread {
-    private static final int DEFAULT_BLOCK_SIZE = 512;
-    private static final int TIMEOUT = 5000;
-    private static final int MAX_RETRIES = 5;
+    private static final int GIVE_UP = 25000; // ms of silence before the transfer is dropped
 
     private DatagramSocket socket;
     private InetAddress clientAddress;
     private int clientPort;
     private TftpPacket requestPacket;
     private String baseDirectory;
+    private TftpOptions options;
+    private final TftpRollover rollover;
+    private final RttEstimator rtt = new RttEstimator(RttEstimator.DEFAULT_INITIAL_RTO, GIVE_UP);
+    private DatagramPacket lastSent; // retransmitted when the reply times out
+    private long lastSentAt; // 0 after a retransmission (Karn)
 
     public ClientHandler(DatagramSocket socket, InetAddress clientAddress,
                          int clientPort, TftpPacket requestPacket, String baseDirectory) {
+        this(socket, clientAddress, clientPort, requestPacket, baseDirectory, TftpRollover.ZERO);
+    }
+
+    public ClientHandler(DatagramSocket socket, InetAddress clientAddress, int clientPort,
+                         TftpPacket requestPacket, String baseDirectory, TftpRollover rollover) {
+        this.rollover = rollover;
         this.socket = socket;
         this.clientAddress = clientAddress;
         this.clientPort = clientPort;
         this.requestPacket = requestPacket;
         this.baseDirectory = baseDirectory;
+        this.options = TftpOptions.negotiate(requestPacket.getOptions(), TftpOptions.MAX_BLOCK_SIZE, 1);
+        if (options.getTimeout() > 0) {
+            rtt.setFixedTimeout(options.getTimeout());
+        }
     }
 
     @Override
@@ -57,12 +73,17 @@ public class ClientHandler extends Thread {
             return;
         }
 
+        if (!options.isEmpty()) {
+            sendPacket(TftpPacket.createOACK(options.getAcknowledged()));
+            receiveAck(0);
+        }
+
         try (FileInputStream fileInput = new FileInputStream(file)) {
-            int blockNumber = 1;
+            long blockNumber = 1; // 64-bit: only the wire number wraps, see TftpRollover
             boolean lastPacket = false;
 
             while (!lastPacket) {
-                byte[] buffer = new byte[DEFAULT_BLOCK_SIZE];
+                byte[] buffer = new byte[options.getBlockSize()];
                 int bytesRead = fileInput.read(buffer);
 
                 if (bytesRead == -1) {
@@ -72,17 +93,12 @@ public class ClientHandler extends Thread {
                 byte[] dataToSend = new byte[bytesRead];
                 System.arraycopy(buffer, 0, dataToSend, 0, bytesRead);
 
-                TftpPacket dataPacket = TftpPacket.createDATA(blockNumber, dataToSend);
+                TftpPacket dataPacket = TftpPacket.createDATA(rollover.toWire(blockNumber), dataToSend);
                 sendPacket(dataPacket);
 
-                TftpPacket ackPacket = receiveAck(blockNumber);
+                receiveAck(blockNumber);
 
-                if (ackPacket.getOpCode() != com.example.tftp.model.TftpOpCode.ACK ||
-                        ackPacket.getBlockNumber() != blockNumber) {
-                    throw new TftpException("Invalid ACK received", 0);
-                }
-
-                lastPacket = bytesRead < DEFAULT_BLOCK_SIZE;
+                lastPacket = bytesRead < options.getBlockSize();
                 blockNumber++;
             }
 
@@ -100,11 +116,14 @@ public class ClientHandler extends Thread {
             return;
         }
 
-        TftpPacket ack0 = TftpPacket.createACK(0);
-        sendPacket(ack0);
+        if (options.isEmpty()) {
+            sendPacket(TftpPacket.createACK(0));
+        } else {
+            sendPacket(TftpPacket.createOACK(options.getAcknowledged()));
+        }
 
         try (FileOutputStream fileOutput = new FileOutputStream(file)) {
-            int blockNumber = 1;
+            long blockNumber = 1;
             boolean lastPacket = false;
 
             while (!lastPacket) {
@@ -113,10 +132,10 @@ public class ClientHandler extends Thread {
                 byte[] data = dataPacket.getData();
                 fileOutput.write(data);
 
-                TftpPacket ack = TftpPacket.createACK(blockNumber);
+                TftpPacket ack = TftpPacket.createACK(rollover.toWire(blockNumber));
                 sendPacket(ack);
 
-                lastPacket = data.length < DEFAULT_BLOCK_SIZE;
+                lastPacket = data.length < options.getBlockSize();
                 blockNumber++;
             }
 
@@ -130,31 +149,43 @@ public class ClientHandler extends Thread {
         DatagramPacket udpPacket = new DatagramPacket(data, data.length,
                 clientAddress, clientPort);
         socket.send(udpPacket);
+        lastSent = udpPacket;
+        lastSentAt = System.nanoTime();
     }
 
     private TftpPacket receivePacket() throws IOException, TftpException {
-        for (int i = 0; i < MAX_RETRIES; i++) {
+        while (true) {
             try {
-                byte[] buffer = new byte[516];
+                byte[] buffer = new byte[options.getPacketSize()];
                 DatagramPacket udpPacket = new DatagramPacket(buffer, buffer.length);
-                socket.setSoTimeout(TIMEOUT);
+                socket.setSoTimeout(rtt.getRtoMillis());
                 socket.receive(udpPacket);
 
+                if (lastSentAt != 0) {
+                    rtt.sample(System.nanoTime() - lastSentAt);
+                    lastSentAt = 0;
+                } else {
+                    rtt.acknowledge();
+                }
+
                 byte[] receivedData = new byte[udpPacket.getLength()];
                 System.arraycopy(buffer, 0, receivedData, 0, udpPacket.getLength());
 
                 return TftpPacket.fromBytes(receivedData);
 
             } catch (SocketTimeoutException e) {
-                if (i == MAX_RETRIES - 1) {
+                if (!rtt.backoff()) {
                     throw new TftpException("Timeout receiving packet", 0, e);
                 }
+                if (lastSent != null) {
+                    socket.send(lastSent);
+                    lastSentAt = 0;
+                }
             }
         }
-        throw new TftpException("Failed to receive packet after retries", 0);
     }
 
-    private TftpPacket receiveAck(int expectedBlockNumber)
+    private TftpPacket receiveAck(long expectedBlockNumber)
             throws IOException, TftpException {
 
         TftpPacket packet = receivePacket();
@@ -164,7 +195,7 @@ public class ClientHandler extends Thread {
                     packet.getOpCode(), 0);
         }
 
-        if (packet.getBlockNumber() != expectedBlockNumber) {
+        if (rollover.fromWire(packet.getBlockNumber(), expectedBlockNumber) != expectedBlockNumber) {
             throw new TftpException("Expected ACK for block " +
                     expectedBlockNumber + ", got: " +
                     packet.getBlockNumber(), 0);
@@ -173,7 +204,7 @@ public class ClientHandler extends Thread {
         return packet;
     }
 
-    private TftpPacket receiveData(int expectedBlockNumber)
+    private TftpPacket receiveData(long expectedBlockNumber)
             throws IOException, TftpException {
 
         TftpPacket packet = receivePacket();
@@ -183,7 +214,7 @@ public class ClientHandler extends Thread {
                     packet.getOpCode(), 0);
         }
 
-        if (packet.getBlockNumber() != expectedBlockNumber) {
+        if (rollover.fromWire(packet.getBlockNumber(), expectedBlockNumber) != expectedBlockNumber) {
             throw new TftpException("Expected DATA for block " +
                     expectedBlockNumber + ", got: " +
                     packet.getBlockNumber(), 0);
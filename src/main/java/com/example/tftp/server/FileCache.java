@@ -0,0 +1,148 @@
+package com.example.tftp.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Content of frequently read files kept off-heap, so a boot storm of identical RRQs reads
+ * the image from disk once. Entries are keyed by canonical path and are only valid while
+ * the file's mtime and size are unchanged; the least recently used ones are dropped when
+ * the byte budget is exceeded. Concurrent misses on the same file wait for one load.
+ */
+public class FileCache {
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    private final long budgetBytes;
+    private final long maxFileBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // access order = LRU
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public FileCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        // one file may take half of the budget, and a ByteBuffer cannot hold more than 2 GiB
+        this.maxFileBytes = Math.min(budgetBytes / 2, Integer.MAX_VALUE);
+    }
+
+    private static final class Entry {
+        final String path;
+        final long lastModified;
+        final long size;
+        final CountDownLatch loaded = new CountDownLatch(1);
+        volatile ByteBuffer content; // read-only, null if loading failed
+
+        Entry(String path, long lastModified, long size) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Read-only view of the whole file, or null if it is too large to cache or could not be
+     * read. The view is private to the caller; evicting the entry does not invalidate it.
+     */
+    public ByteBuffer get(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        long size = file.length();
+
+        Entry entry;
+        boolean loader = false;
+        synchronized (this) {
+            entry = entries.get(path);
+            if (entry != null && (entry.lastModified != lastModified || entry.size != size)) {
+                remove(entry); // the file changed on disk
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                if (size > maxFileBytes) return null;
+                entry = new Entry(path, lastModified, size);
+                entries.put(path, entry);
+                usedBytes += size;
+                evict(entry);
+                loader = true;
+            } else {
+                hits.increment();
+            }
+        }
+
+        if (loader) {
+            try {
+                entry.content = load(file, size).asReadOnlyBuffer();
+            } finally {
+                if (entry.content == null) {
+                    synchronized (this) {
+                        if (entries.get(path) == entry) remove(entry);
+                    }
+                }
+                entry.loaded.countDown();
+            }
+        } else {
+            try {
+                entry.loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        ByteBuffer content = entry.content;
+        return content != null ? content.duplicate() : null;
+    }
+
+    private static ByteBuffer load(File file, long size) throws IOException {
+        ByteBuffer content = ByteBuffer.allocateDirect((int) size);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (content.hasRemaining()) {
+                if (channel.read(content) < 0) {
+                    throw new IOException("File shrank while caching: " + file);
+                }
+            }
+        }
+        content.flip();
+        return content;
+    }
+
+    // drops least recently used entries until the budget fits, never the one being added
+    private void evict(Entry keep) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest == keep) continue;
+            it.remove();
+            usedBytes -= eldest.size;
+            evictions.increment();
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.path);
+        usedBytes -= entry.size;
+    }
+
+    // ---------------------- STATISTICS ----------------------
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public synchronized long getUsedBytes() { return usedBytes; }
+    public long getBudgetBytes() { return budgetBytes; }
+
+    @Override
+    public String toString() {
+        return "FileCache{hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() +
+                ", used=" + getUsedBytes() + "/" + budgetBytes + " bytes}";
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.tftp.server;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of durations for metrics: every power of two is split into 8 buckets,
+ * so a reported percentile is at most 12.5% above the true value. Each bucket is a
+ * {@link LongAdder}, so recording from many transfer threads neither contends nor allocates.
+ * Values are recorded in microseconds.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[indexOf(micros)].increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exp - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    // largest value that falls into the bucket
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exp = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    /** Microseconds at {@code percentile} (0-100), capped at the maximum seen; 0 when empty. */
+    public long percentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public long getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : sum.sum() / count;
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.tftp.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-only mappings of large files, shared by every RRQ of the same file. A mapping is
+ * reference-counted and unmapped as soon as its last reader is done, instead of whenever
+ * the GC finds the buffer. A file that changed on disk gets a fresh mapping; readers of
+ * the old one keep it until they finish.
+ */
+public class MappedFiles {
+    public static final long DEFAULT_MIN_SIZE = 16L * 1024 * 1024;
+    static final int REGION_SHIFT = 30; // a MappedByteBuffer holds at most 2 GiB, map 1 GiB regions
+    static final int REGION_SIZE = 1 << REGION_SHIFT;
+
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // no explicit unmap on this JVM: mappings are released by the GC
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    private final long minSize;
+    private final Map<String, Mapping> mappings = new HashMap<>();
+
+    private final LongAdder mapped = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    /** Files shorter than {@code minSize} bytes are not worth a mapping. */
+    public MappedFiles(long minSize) {
+        this.minSize = minSize;
+    }
+
+    static final class Mapping {
+        final String path;
+        final long lastModified;
+        final long size;
+        final MappedByteBuffer[] regions;
+        int readers;
+
+        Mapping(String path, long lastModified, long size, MappedByteBuffer[] regions) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.regions = regions;
+        }
+
+        /** Per-reader views: positions and limits of the shared regions must not be touched. */
+        ByteBuffer[] views() {
+            ByteBuffer[] views = new ByteBuffer[regions.length];
+            for (int i = 0; i < regions.length; i++) {
+                views[i] = regions[i].duplicate();
+            }
+            return views;
+        }
+    }
+
+    /** The file's mapping with one more reader, or null if the file is too small to map. */
+    synchronized Mapping acquire(File file) throws IOException {
+        long size = file.length();
+        if (size < minSize) return null;
+        String path = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+
+        Mapping mapping = mappings.get(path);
+        if (mapping != null && mapping.lastModified == lastModified && mapping.size == size) {
+            mapping.readers++;
+            shared.increment();
+            return mapping;
+        }
+        if (mapping != null) {
+            mappings.remove(path); // stale: current readers keep it, release() unmaps it
+        }
+
+        mapping = new Mapping(path, lastModified, size, map(file, size));
+        mapping.readers = 1;
+        mappings.put(path, mapping);
+        mapped.increment();
+        return mapping;
+    }
+
+    synchronized void release(Mapping mapping) {
+        if (--mapping.readers > 0) return;
+        if (mappings.get(mapping.path) == mapping) {
+            mappings.remove(mapping.path);
+        }
+        for (MappedByteBuffer region : mapping.regions) {
+            unmap(region);
+        }
+    }
+
+    private static MappedByteBuffer[] map(File file, long size) throws IOException {
+        MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) >>> REGION_SHIFT)];
+        // the mapping outlives the channel
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < regions.length; i++) {
+                long position = (long) i << REGION_SHIFT;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, size - position));
+            }
+        }
+        return regions;
+    }
+
+    private static void unmap(MappedByteBuffer region) {
+        if (INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, region);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the GC
+        }
+    }
+
+    // ---------------------- STATISTICS ----------------------
+    public long getMappedCount() { return mapped.sum(); }
+    public long getSharedCount() { return shared.sum(); }
+    public synchronized int getActiveCount() { return mappings.size(); }
+
+    @Override
+    public String toString() {
+        return "MappedFiles{mapped=" + getMappedCount() + ", shared=" + getSharedCount() +
+                ", active=" + getActiveCount() + "}";
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.tftp.server;
+
+import com.example.tftp.model.TftpOptions;
+import java.io.File;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RFC 2090 multicast reads. Clients asking for the same file with the same block size share
+ * one group transfer: the handler of the first RRQ runs it, later RRQs only join it and are
+ * served by that handler. Each running transfer gets its own group address from a range
+ * starting at {@code firstAddress}; all of them use the same port.
+ */
+public class MulticastGroups {
+    public static final String DEFAULT_ADDRESS = "239.255.69.1"; // organization-local scope
+    public static final int DEFAULT_PORT = 1758;
+    public static final int MAX_GROUPS = 256;
+    private static final int TTL = 1; // stay on the local segment
+
+    private final int firstAddress;
+    private final int port;
+    private final NetworkInterface networkInterface; // null: the routing table decides
+    private final Map<String, Transfer> transfers = new HashMap<>();
+    private final BitSet addressesInUse = new BitSet(MAX_GROUPS);
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+
+    public MulticastGroups(InetAddress firstAddress, int port) {
+        this(firstAddress, port, null);
+    }
+
+    public MulticastGroups(InetAddress firstAddress, int port, NetworkInterface networkInterface) {
+        if (!(firstAddress instanceof Inet4Address) || !firstAddress.isMulticastAddress()) {
+            throw new IllegalArgumentException("Not an IPv4 multicast address: " + firstAddress.getHostAddress());
+        }
+        byte[] bytes = firstAddress.getAddress();
+        this.firstAddress = (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | bytes[3] & 0xFF;
+        this.port = port;
+        this.networkInterface = networkInterface;
+    }
+
+    /** A client of a group transfer, with the options negotiated for its own RRQ. */
+    static final class Member {
+        final SocketAddress address;
+        final TftpOptions options;
+
+        Member(SocketAddress address, TftpOptions options) {
+            this.address = address;
+            this.options = options;
+        }
+    }
+
+    final class Transfer {
+        final String key;
+        final InetSocketAddress group;
+        private final int slot;
+        private final Member owner;
+        private final List<Member> pending = new ArrayList<>(); // guarded by MulticastGroups.this
+
+        private Transfer(String key, int slot, Member owner) throws UnknownHostException {
+            this.key = key;
+            this.slot = slot;
+            this.owner = owner;
+            int address = firstAddress + slot;
+            this.group = new InetSocketAddress(InetAddress.getByAddress(new byte[] {
+                    (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address}), port);
+        }
+
+        /** True for the member whose RRQ started the transfer: its handler has to run it. */
+        boolean isRunBy(Member member) {
+            return owner == member;
+        }
+
+        /** Members that joined since the last call. */
+        List<Member> takeJoined() {
+            synchronized (MulticastGroups.this) {
+                if (pending.isEmpty()) return Collections.emptyList();
+                List<Member> members = new ArrayList<>(pending);
+                pending.clear();
+                return members;
+            }
+        }
+
+        /** Ends the transfer unless someone joined meanwhile; afterwards RRQs start a new one. */
+        boolean close() {
+            synchronized (MulticastGroups.this) {
+                if (!pending.isEmpty()) return false;
+                abort();
+                return true;
+            }
+        }
+
+        /** Drops the transfer in any state; members that joined last retry their RRQ. */
+        void abort() {
+            synchronized (MulticastGroups.this) {
+                if (transfers.get(key) == this) {
+                    transfers.remove(key);
+                    addressesInUse.clear(slot);
+                }
+            }
+        }
+
+        /** Socket the DATA blocks are sent to the group from. */
+        MulticastSocket openSocket() throws IOException {
+            MulticastSocket socket = new MulticastSocket();
+            socket.setTimeToLive(TTL);
+            if (networkInterface != null) {
+                socket.setNetworkInterface(networkInterface);
+            }
+            return socket;
+        }
+    }
+
+    /**
+     * Adds the client to the running transfer of this file and block size, or starts a new one
+     * that the caller must run (see {@link Transfer#isRunBy}). Null if every group address is taken.
+     */
+    synchronized Transfer join(File file, Member member) throws IOException {
+        String key = file.getCanonicalPath() + '#' + file.lastModified() + '#' + file.length()
+                + '#' + member.options.getBlockSize();
+        Transfer transfer = transfers.get(key);
+        if (transfer != null) {
+            transfer.pending.add(member);
+            joined.increment();
+            return transfer;
+        }
+        int slot = addressesInUse.nextClearBit(0);
+        if (slot >= MAX_GROUPS) {
+            return null;
+        }
+        transfer = new Transfer(key, slot, member);
+        addressesInUse.set(slot);
+        transfers.put(key, transfer);
+        started.increment();
+        return transfer;
+    }
+
+    // ---------------------- STATS ----------------------
+    public long getStartedCount() { return started.sum(); }
+    public long getJoinedCount() { return joined.sum(); }
+
+    public synchronized int getActiveCount() {
+        return transfers.size();
+    }
+
+    @Override
+    public String toString() {
+        return "MulticastGroups{started=" + getStartedCount() + ", joined=" + getJoinedCount() +
+                ", active=" + getActiveCount() + "}";
+    }
+}
@@ -0,0 +1,456 @@
+package com.example.tftp.server;
+
+import com.example.tftp.io.BufferPool;
+import com.example.tftp.io.RttEstimator;
+import com.example.tftp.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One transfer driven by an {@link NioTftpServer} event loop. Instead of blocking in receive
+ * the session reacts to packets and to its retransmission deadline, which the loop's
+ * {@link TimerWheel} fires; all calls come from the loop thread that owns the session's channel.
+ * The channel is connected to the client, so every datagram handed in is the client's.
+ */
+abstract class NioSession {
+    private static final int SESSION_GIVE_UP = 25000; // ms of silence before a transfer is dropped
+
+    protected final DatagramChannel channel;
+    protected final InetSocketAddress client;
+    protected final File file;
+    protected final TftpOptions options;
+    protected final TftpRollover rollover;
+    protected final ServerMetrics metrics;
+    protected final RttEstimator rtt = new RttEstimator(RttEstimator.DEFAULT_INITIAL_RTO, SESSION_GIVE_UP);
+    protected final String tag;
+    private final TftpPacketView view = new TftpPacketView();
+    protected final ByteBuffer sendBuffer; // pooled direct buffer for DATA/ACK, one packet big
+
+    private long deadline; // System.nanoTime() at which the current wait expires
+    private TimerWheel timers;
+    private TimerWheel.Timeout timer; // null: nothing scheduled
+    private long timerAt; // deadline the scheduled timeout was set for
+    private final Runnable deadlineTask = this::onDeadline;
+    private Runnable onClose;
+    private boolean closed;
+    private final long startedAt = System.nanoTime();
+
+    NioSession(DatagramChannel channel, InetSocketAddress client, File file, TftpOptions options,
+               TftpRollover rollover, ServerMetrics metrics) {
+        this.channel = channel;
+        this.client = client;
+        this.file = file;
+        this.options = options;
+        this.rollover = rollover;
+        this.metrics = metrics;
+        this.tag = "[" + client.getAddress() + ":" + client.getPort() + "]";
+        if (options.getTimeout() > 0) {
+            rtt.setFixedTimeout(options.getTimeout());
+        }
+        this.sendBuffer = BufferPool.direct().acquire(options.getPacketSize());
+    }
+
+    abstract void start() throws IOException, TftpException;
+
+    /** The view is only valid during the call. */
+    abstract void onPacket(TftpPacketView packet) throws IOException, TftpException;
+
+    abstract void onTimeout() throws IOException, TftpException;
+
+    /** Releases the file; {@code completed} is false when the transfer was aborted. */
+    abstract void release(boolean completed);
+
+    // ---------------------- EVENT LOOP ENTRY POINTS ----------------------
+
+    final void handleDatagram(ByteBuffer datagram) {
+        try {
+            TftpPacketView packet = view.wrap(datagram);
+            if (packet.isError()) {
+                System.err.println(tag + " Received ERROR: " + packet.getErrorMessage());
+                close(false);
+                return;
+            }
+            onPacket(packet);
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /** Starts the transfer; {@code onClose} runs once it ends, however it ends. */
+    final void begin(TimerWheel timers, Runnable onClose) {
+        this.timers = timers;
+        this.onClose = onClose;
+        try {
+            start();
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /** Server shutdown or the client's port is gone: drops the transfer without notifying the client. */
+    final void abort() {
+        close(false);
+    }
+
+    final boolean isClosed() {
+        return closed;
+    }
+
+    // ---------------------- HELPERS ----------------------
+
+    protected void send(TftpPacket packet) throws IOException {
+        channel.write(ByteBuffer.wrap(packet.toBytes()));
+    }
+
+    protected void sendAck(long block) throws IOException {
+        channel.write(TftpPacketView.encodeAck(sendBuffer, rollover.toWire(block)));
+    }
+
+    protected void sample(long rttNanos) {
+        rtt.sample(rttNanos);
+        metrics.roundTrip(rttNanos);
+    }
+
+    /** Starts waiting for the peer: the deadline is one RTO from now. */
+    protected void armTimer() {
+        long rto = rtt.getRtoMillis() * 1_000_000L;
+        deadline = System.nanoTime() + rto;
+        // a later deadline is picked up when the scheduled timeout fires, so most ACKs
+        // only move the deadline; an earlier one (RTO went down) needs a new timeout
+        if (timer == null || deadline - timerAt < 0) {
+            if (timer != null) timer.cancel();
+            timerAt = deadline;
+            timer = timers.schedule(deadlineTask, rto, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void onDeadline() {
+        timer = null;
+        if (closed) return;
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            timerAt = deadline;
+            timer = timers.schedule(deadlineTask, remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+        try {
+            onTimeout();
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    protected void close(boolean completed) {
+        if (closed) return;
+        closed = true;
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        release(completed);
+        metrics.sessionEnded(completed, System.nanoTime() - startedAt);
+        BufferPool.direct().release(sendBuffer);
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        if (onClose != null) onClose.run();
+    }
+
+    private void fail(Exception e) {
+        if (closed) return;
+        TftpException te = e instanceof TftpException
+                ? (TftpException) e
+                : new TftpException("Unexpected server error", TftpException.UNDEFINED, e);
+        try {
+            send(te.toPacket());
+            metrics.errorSent(te.getErrorCode());
+            System.err.println(tag + " Error sent: " + te.getErrorCode() + " - " + te.getMessage());
+        } catch (IOException ignored) {}
+        close(false);
+    }
+
+    // ======================= RRQ =======================
+
+    static final class ReadSession extends NioSession {
+        private final FileCache fileCache;
+        private final MappedFiles mappedFiles;
+        private BlockSource source;
+        // header from sendBuffer, the block straight from a cache or mapping when there is one
+        private final ByteBuffer[] packet = new ByteBuffer[BlockSource.MAX_GATHER];
+        private long fileLength;
+        private long lastBlock;
+
+        private boolean awaitingOackAck;
+        private long oackSentAt; // 0 after a retransmission (Karn)
+        private long base = 1; // oldest unacknowledged block
+        private long highestSent;
+        private long windowSentAt;
+        private long firstNewBlock = 1; // blocks from here on went out once, in this window (Karn)
+
+        ReadSession(DatagramChannel channel, InetSocketAddress client, File file, TftpOptions options,
+                    TftpRollover rollover, FileCache fileCache, MappedFiles mappedFiles, ServerMetrics metrics) {
+            super(channel, client, file, options, rollover, metrics);
+            this.fileCache = fileCache;
+            this.mappedFiles = mappedFiles;
+            this.packet[0] = sendBuffer;
+        }
+
+        @Override
+        void start() throws IOException, TftpException {
+            try {
+                source = BlockSource.open(file, fileCache, mappedFiles);
+            } catch (IOException ioe) {
+                throw new TftpException("Cannot read file '" + file.getName() + "'", TftpException.ACCESS_VIOLATION, ioe);
+            }
+            fileLength = source.length();
+            // the final block is always shorter than blockSize, possibly empty
+            lastBlock = fileLength / options.getBlockSize() + 1;
+
+            if (options.isTransferSizeRequested()) {
+                options.acknowledgeTransferSize(fileLength);
+            }
+            if (channel.socket().getSendBufferSize() < options.getWindowBytes()) {
+                channel.socket().setSendBufferSize(options.getWindowBytes());
+            }
+
+            System.out.println(tag + " Sending file: " + file.getName() + " (" + fileLength + " bytes)");
+
+            if (options.isEmpty()) {
+                sendWindow();
+            } else {
+                awaitingOackAck = true;
+                send(TftpPacket.createOACK(options.getAcknowledged()));
+                oackSentAt = System.nanoTime();
+                armTimer();
+            }
+        }
+
+        @Override
+        void onPacket(TftpPacketView packet) throws IOException {
+            if (!packet.isAck()) return;
+
+            if (awaitingOackAck) {
+                if (packet.getBlockNumber() != 0) return;
+                awaitingOackAck = false;
+                if (oackSentAt != 0) sample(System.nanoTime() - oackSentAt); else rtt.acknowledge();
+                sendWindow();
+                return;
+            }
+
+            // ACK(base - 1) inside a window means "gap, resend from base" (RFC 7440);
+            // in lock-step mode it is just a duplicate and must not trigger a resend
+            long windowEnd = windowEnd();
+            long lowest = options.getWindowSize() > 1 ? base - 1 : base;
+            long acked = rollover.fromWire(packet.getBlockNumber(), windowEnd);
+            if (acked < lowest || acked > windowEnd) return;
+
+            if (acked >= firstNewBlock) {
+                sample(System.nanoTime() - windowSentAt);
+            } else {
+                rtt.acknowledge();
+            }
+            base = acked + 1;
+
+            if (base > lastBlock) {
+                System.out.println(tag + " File sent successfully: " + file.getName() +
+                        " (srtt " + String.format("%.2f", rtt.getSrttMillis()) + " ms, rto " + rtt.getRtoMillis() + " ms)");
+                close(true);
+                return;
+            }
+            sendWindow();
+        }
+
+        @Override
+        void onTimeout() throws IOException {
+            if (!rtt.backoff()) {
+                System.out.println(tag + " Timeout waiting for ACK " + (awaitingOackAck ? 0 : windowEnd()) + ", aborting");
+                close(false);
+                return;
+            }
+            metrics.retransmitted();
+            if (awaitingOackAck) {
+                send(TftpPacket.createOACK(options.getAcknowledged()));
+                oackSentAt = 0;
+                armTimer();
+            } else {
+                sendWindow();
+            }
+        }
+
+        private long windowEnd() {
+            return Math.min(base + options.getWindowSize() - 1, lastBlock);
+        }
+
+        private void sendWindow() throws IOException {
+            long windowEnd = windowEnd();
+            long previouslySent = highestSent;
+            // an ACK of a block sent for the first time answers its only copy and times
+            // this window; blocks resent at its start do not make it ambiguous
+            windowSentAt = System.nanoTime();
+            firstNewBlock = highestSent + 1;
+            highestSent = Math.max(highestSent, windowEnd);
+
+            int blockSize = options.getBlockSize();
+            for (long block = base; block <= windowEnd; block++) {
+                long offset = (block - 1) * blockSize;
+                int length = (int) Math.min(blockSize, fileLength - offset);
+                TftpPacketView.beginData(sendBuffer, rollover.toWire(block));
+                channel.write(packet, 0, source.gather(packet, offset, length));
+                metrics.blockSent(length);
+                if (block <= previouslySent) metrics.retransmitted();
+            }
+            armTimer();
+        }
+
+        @Override
+        void release(boolean completed) {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    // ======================= WRQ =======================
+
+    static final class WriteSession extends NioSession {
+        private FileChannel fileChannel;
+        private TftpPacket firstResponse;
+
+        private long expectedBlock = 1;
+        private int blocksSinceAck;
+        private boolean rollbackSent;
+        private long ackSentAt; // 0 after a timeout: a re-sent ACK gives no RTT sample
+
+        WriteSession(DatagramChannel channel, InetSocketAddress client, File file, TftpOptions options,
+                     TftpRollover rollover, ServerMetrics metrics) {
+            super(channel, client, file, options, rollover, metrics);
+        }
+
+        @Override
+        void start() throws IOException, TftpException {
+            File parentDir = file.getParentFile();
+            if (parentDir != null && !parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+
+            // RFC 2349: refuse an announced upload that cannot fit before any data is sent
+            if (options.isTransferSizeRequested()) {
+                long usable = parentDir != null ? parentDir.getUsableSpace() : 0;
+                if (usable > 0 && options.getTransferSize() > usable) {
+                    throw new TftpException("Not enough space for " + options.getTransferSize() + " bytes",
+                            TftpException.DISK_FULL);
+                }
+                options.acknowledgeTransferSize(options.getTransferSize());
+            }
+
+            try {
+                fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (IOException ioe) {
+                throw new TftpException("File already exists", TftpException.FILE_EXISTS, ioe);
+            }
+            if (channel.socket().getReceiveBufferSize() < options.getWindowBytes()) {
+                channel.socket().setReceiveBufferSize(options.getWindowBytes());
+            }
+
+            System.out.println(tag + " Receiving file: " + file.getName());
+
+            // Initial ACK(0), or OACK when options were accepted
+            firstResponse = options.isEmpty()
+                    ? TftpPacket.createACK(0)
+                    : TftpPacket.createOACK(options.getAcknowledged());
+            send(firstResponse);
+            ackSentAt = System.nanoTime();
+            armTimer();
+        }
+
+        @Override
+        void onPacket(TftpPacketView packet) throws IOException {
+            if (!packet.isData()) return;
+
+            if (rollover.fromWire(packet.getBlockNumber(), expectedBlock) != expectedBlock) {
+                // lock-step: re-ACK every duplicate, the client resent because our ACK was lost (RFC 1350);
+                // duplicate or gap in a window: roll the client back once per gap.
+                // Neither is progress, so the deadline stays where it is
+                if (options.getWindowSize() == 1 || !rollbackSent) {
+                    resendLastAck();
+                    metrics.retransmitted();
+                    rollbackSent = true;
+                    blocksSinceAck = 0;
+                }
+                return;
+            }
+            rollbackSent = false;
+
+            // ACK -> first block of the next window is one round trip
+            if (ackSentAt != 0) {
+                sample(System.nanoTime() - ackSentAt);
+                ackSentAt = 0;
+            } else {
+                rtt.acknowledge();
+            }
+
+            boolean lastPacket = packet.getDataLength() < options.getBlockSize();
+            metrics.blockReceived(packet.getDataLength());
+            ByteBuffer data = packet.data();
+            while (data.hasRemaining()) {
+                fileChannel.write(data);
+            }
+
+            if (lastPacket || ++blocksSinceAck >= options.getWindowSize()) {
+                sendAck(expectedBlock);
+                blocksSinceAck = 0;
+                ackSentAt = System.nanoTime();
+            }
+            expectedBlock++;
+
+            if (lastPacket) {
+                System.out.println(tag + " File received: " + file.getName() +
+                        " (srtt " + String.format("%.2f", rtt.getSrttMillis()) + " ms, rto " + rtt.getRtoMillis() + " ms)");
+                close(true);
+                return;
+            }
+            armTimer();
+        }
+
+        @Override
+        void onTimeout() throws IOException, TftpException {
+            if (!rtt.backoff()) {
+                throw new TftpException("Timeout waiting for block " + expectedBlock, TftpException.UNDEFINED);
+            }
+            // re-acknowledge the last in-order block so the client resumes from there
+            resendLastAck();
+            metrics.retransmitted();
+            blocksSinceAck = 0;
+            ackSentAt = 0;
+            armTimer();
+        }
+
+        // the OACK / ACK(0) until the first block is in, then ACK of the last in-order block
+        private void resendLastAck() throws IOException {
+            if (expectedBlock == 1) {
+                send(firstResponse);
+            } else {
+                sendAck(expectedBlock - 1);
+            }
+        }
+
+        @Override
+        void release(boolean completed) {
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                } catch (IOException ignored) {}
+                if (!completed) file.delete();
+            }
+        }
+    }
+}
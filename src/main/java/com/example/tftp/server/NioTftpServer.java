@@ -0,0 +1,344 @@
+package com.example.tftp.server;
+
+import com.example.tftp.io.BufferPool;
+import com.example.tftp.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event-loop variant of {@link TftpServer}: a few selector threads drive every transfer
+ * as a {@link NioSession} state machine instead of parking one pool thread per client.
+ * The first loop also owns the well-known port; new transfers are spread round-robin.
+ */
+public class NioTftpServer {
+    public static final int DEFAULT_EVENT_LOOPS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final int MAX_REQUEST_SIZE = 516;
+    private static final int MAX_WINDOW_SIZE = 64;
+    private static final long TICK_MILLIS = 10; // timer wheel tick: retransmissions fire up to this late
+    private static final Object STRAY = new Object(); // key attachment of a transfer port's twin
+
+    private final int port;
+    private final String baseDir;
+    private final EventLoop[] loops;
+    private volatile boolean running;
+    private FileCache fileCache; // null: every RRQ reads the file
+    private MappedFiles mappedFiles; // null: large files are read, not mapped
+    private volatile TftpRollover rollover = TftpRollover.ZERO;
+    private volatile boolean answerStrays; // off: the kernel answers other TIDs with ICMP
+    private final ServerMetrics metrics = new ServerMetrics("nio");
+    private int nextLoop; // only touched by the listener loop
+
+    public NioTftpServer(int port, String baseDir, int eventLoops) throws IOException {
+        this.port = port;
+        this.baseDir = baseDir;
+        this.running = true;
+        this.loops = new EventLoop[Math.max(1, eventLoops)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+        }
+    }
+
+    /** Runs until {@link #stop()}; the calling thread becomes the first event loop. */
+    public void start() {
+        File dir = new File(baseDir);
+        if (!dir.exists()) {
+            if (!dir.mkdirs()) {
+                System.err.println("Failed to create directory: " + dir.getAbsolutePath());
+                return;
+            }
+        }
+
+        System.out.println("TFTP Server (nio, " + loops.length + " event loops) starting on port " + port);
+        System.out.println("Base directory: " + dir.getAbsolutePath());
+        System.out.println("Press Ctrl+C to stop the server");
+
+        try (DatagramChannel listener = DatagramChannel.open()) {
+            listener.bind(new InetSocketAddress(port));
+            listener.configureBlocking(false);
+            listener.register(loops[0].selector, SelectionKey.OP_READ);
+            metrics.start(port);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 1; i < loops.length; i++) {
+                Thread thread = new Thread(loops[i], "tftp-loop-" + i);
+                thread.start();
+                threads.add(thread);
+            }
+            loops[0].run();
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to start server on port " + port + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            for (EventLoop loop : loops) {
+                loop.wakeup();
+            }
+            metrics.stop();
+            System.out.println(metrics);
+            if (fileCache != null) {
+                System.out.println(fileCache);
+            }
+            if (mappedFiles != null) {
+                System.out.println(mappedFiles);
+            }
+            System.out.println("TFTP Server stopped");
+        }
+    }
+
+    /** Serves RRQs of small, hot files from memory; null disables the cache. */
+    public void setFileCache(FileCache fileCache) {
+        this.fileCache = fileCache;
+    }
+
+    /** Serves RRQs of large files from shared mappings; null disables mapping. */
+    public void setMappedFiles(MappedFiles mappedFiles) {
+        this.mappedFiles = mappedFiles;
+    }
+
+    /** Block number that follows 65535 in transfers of more than 65535 blocks. */
+    public void setRollover(TftpRollover rollover) {
+        this.rollover = rollover;
+    }
+
+    /** Answers datagrams from other TIDs with ERROR 5, see {@link TftpServer#setAnswerStrays}. */
+    public void setAnswerStrays(boolean answerStrays) {
+        this.answerStrays = answerStrays;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void stop() {
+        running = false;
+        for (EventLoop loop : loops) {
+            loop.wakeup();
+        }
+    }
+
+    /** Called on the listener loop for every datagram that reaches the well-known port. */
+    private void onRequest(byte[] request, InetSocketAddress client) {
+        EventLoop loop = loops[nextLoop];
+        nextLoop = (nextLoop + 1) % loops.length;
+        metrics.sessionQueued();
+        loop.execute(() -> loop.open(request, client));
+    }
+
+    private NioSession createSession(DatagramChannel channel, byte[] request, InetSocketAddress client)
+            throws TftpException {
+        TftpPacket packet;
+        try {
+            packet = TftpPacket.fromBytes(request);
+        } catch (IOException e) {
+            throw new TftpException("Malformed request", TftpException.ILLEGAL_OPERATION, e);
+        }
+        if (packet.getOpCode() != TftpOpCode.RRQ && packet.getOpCode() != TftpOpCode.WRQ) {
+            throw new TftpException("Expected RRQ or WRQ", TftpException.ILLEGAL_OPERATION);
+        }
+
+        String filename = packet.getFilename();
+        File file = new File(baseDir, filename);
+        try {
+            if (!file.getCanonicalPath().startsWith(new File(baseDir).getCanonicalPath())) {
+                throw new TftpException("Access violation for file '" + filename + "'", TftpException.ACCESS_VIOLATION);
+            }
+        } catch (IOException ioe) {
+            throw new TftpException("Access violation", TftpException.ACCESS_VIOLATION, ioe);
+        }
+
+        TftpOptions options = TftpOptions.negotiate(packet.getOptions(), TftpOptions.MAX_BLOCK_SIZE, MAX_WINDOW_SIZE);
+
+        if (packet.getOpCode() == TftpOpCode.WRQ) {
+            if (file.exists()) {
+                throw new TftpException("File already exists", TftpException.FILE_EXISTS);
+            }
+            return new NioSession.WriteSession(channel, client, file, options, rollover, metrics);
+        }
+
+        if (!file.exists() || !file.isFile()) {
+            throw new TftpException("File '" + filename + "' not found", TftpException.FILE_NOT_FOUND);
+        }
+        if (!file.canRead()) {
+            throw new TftpException("Cannot read file '" + filename + "'", TftpException.ACCESS_VIOLATION);
+        }
+        return new NioSession.ReadSession(channel, client, file, options, rollover, fileCache, mappedFiles, metrics);
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Set<NioSession> sessions = Collections.newSetFromMap(new IdentityHashMap<>());
+        // retransmission deadlines of all its sessions, advanced by the loop itself
+        private final TimerWheel timers = new TimerWheel(TICK_MILLIS, TimeUnit.MILLISECONDS, TimerWheel.DEFAULT_TICKS_PER_WHEEL);
+        private final ByteBuffer receiveBuffer = BufferPool.direct().acquire(TftpOptions.MAX_BLOCK_SIZE + TftpOptions.HEADER_SIZE);
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void wakeup() {
+            selector.wakeup();
+        }
+
+        /**
+         * Opens the transfer's own channel (its TID), connected to the client so that the kernel
+         * filters other senders out (onto a {@link StrayResponder} twin if strays are answered),
+         * and starts the session on this loop.
+         */
+        void open(byte[] request, InetSocketAddress client) {
+            DatagramChannel channel = null;
+            metrics.sessionStarted();
+            try {
+                channel = StrayResponder.openTransferChannel(answerStrays);
+                channel.configureBlocking(false);
+                channel.connect(client);
+
+                NioSession session = createSession(channel, request, client);
+                channel.register(selector, SelectionKey.OP_READ, session);
+                DatagramChannel twin = answerStrays ? StrayResponder.openTwin(channel) : null;
+                if (twin != null) {
+                    twin.register(selector, SelectionKey.OP_READ, STRAY);
+                }
+                sessions.add(session);
+                session.begin(timers, () -> {
+                    sessions.remove(session);
+                    closeQuietly(twin);
+                });
+            } catch (TftpException te) {
+                try {
+                    channel.send(ByteBuffer.wrap(te.toPacket().toBytes()), client);
+                    metrics.errorSent(te.getErrorCode());
+                } catch (IOException ignored) {}
+                closeQuietly(channel);
+                metrics.sessionEnded(false, 0);
+            } catch (IOException e) {
+                System.err.println("Failed to open transfer for " + client + ": " + e.getMessage());
+                closeQuietly(channel);
+                metrics.sessionEnded(false, 0);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(TICK_MILLIS);
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            drain(key);
+                        }
+                    }
+
+                    timers.expire(System.nanoTime());
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    System.err.println("Event loop failed: " + e.getMessage());
+                }
+            } finally {
+                for (NioSession session : new ArrayList<>(sessions)) {
+                    session.abort();
+                }
+                BufferPool.direct().release(receiveBuffer);
+                try {
+                    selector.close();
+                } catch (IOException ignored) {}
+            }
+        }
+
+        private void drain(SelectionKey key) throws IOException {
+            DatagramChannel channel = (DatagramChannel) key.channel();
+            Object attachment = key.attachment();
+
+            if (attachment == STRAY) {
+                try {
+                    StrayResponder.answer(channel, receiveBuffer, metrics);
+                } catch (IOException e) {
+                    key.cancel(); // the transfer ended and closed its twin
+                }
+            } else if (attachment == null) {
+                drainListener(channel);
+            } else {
+                drainSession(key, channel, (NioSession) attachment);
+            }
+        }
+
+        private void drainListener(DatagramChannel listener) throws IOException {
+            while (true) {
+                receiveBuffer.clear();
+                SocketAddress from = listener.receive(receiveBuffer);
+                if (from == null) return;
+                receiveBuffer.flip();
+
+                if (receiveBuffer.remaining() > MAX_REQUEST_SIZE) continue;
+                byte[] request = new byte[receiveBuffer.remaining()];
+                receiveBuffer.get(request);
+                onRequest(request, (InetSocketAddress) from);
+            }
+        }
+
+        /** The channel is connected: whatever it reads came from the session's client. */
+        private void drainSession(SelectionKey key, DatagramChannel channel, NioSession session) {
+            while (key.isValid()) {
+                receiveBuffer.clear();
+                try {
+                    if (channel.read(receiveBuffer) <= 0) return;
+                } catch (PortUnreachableException e) {
+                    session.abort(); // the client's port is gone, no point retransmitting into it
+                    return;
+                } catch (IOException e) {
+                    return; // the session closed its channel
+                }
+                receiveBuffer.flip();
+
+                session.handleDatagram(receiveBuffer);
+                if (session.isClosed()) return;
+            }
+        }
+
+        private void closeQuietly(DatagramChannel channel) {
+            if (channel == null) return;
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
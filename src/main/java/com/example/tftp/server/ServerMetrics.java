@@ -0,0 +1,256 @@
+package com.example.tftp.server;
+
+import com.example.tftp.model.TftpException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms shared by all transfers of one server. The hot paths only
+ * touch {@link LongAdder}s, so recording costs no lock and no allocation; reading sums them.
+ * While the server runs the metrics are registered as an MXBean and, if a snapshot file is
+ * set, written to it every interval as text or, for a {@code .json} file, as JSON.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    public static final int DEFAULT_INTERVAL_SECONDS = 10;
+    private static final int MAX_ERROR_CODE = TftpException.OPTION_NEGOTIATION;
+
+    private final String engine;
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder blocksSent = new LongAdder();
+    private final LongAdder retransmits = new LongAdder();
+    private final LongAdder[] errors = new LongAdder[MAX_ERROR_CODE + 2]; // last slot: codes outside the RFCs
+    private final LatencyHistogram blockRtt = new LatencyHistogram();
+    private final LatencyHistogram transferTime = new LatencyHistogram();
+
+    private File snapshotFile; // null: JMX only
+    private int intervalSeconds = DEFAULT_INTERVAL_SECONDS;
+    private ScheduledExecutorService reporter;
+    private ObjectName objectName;
+    private long startedAt = System.nanoTime();
+
+    // updated by the reporter thread
+    private volatile long bytesPerSecond;
+    private long lastBytes;
+    private long lastTickAt;
+
+    public ServerMetrics(String engine) {
+        this.engine = engine;
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = new LongAdder();
+        }
+    }
+
+    /** Writes a snapshot to {@code file} every {@code seconds}; null keeps the metrics in JMX only. */
+    public void setSnapshotFile(File file, int seconds) {
+        this.snapshotFile = file;
+        this.intervalSeconds = Math.max(1, seconds);
+    }
+
+    // ---------------------- LIFECYCLE ----------------------
+
+    /** Registers the MXBean and starts the reporter; called by the server once it is bound. */
+    public synchronized void start(int port) {
+        startedAt = System.nanoTime();
+        lastTickAt = startedAt;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.example.tftp:type=Server,port=" + port);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (JMException e) {
+            System.err.println("Failed to register metrics MBean: " + e.getMessage());
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tftp-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::tick, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /** Unregisters the MXBean and writes a last snapshot. */
+    public synchronized void stop() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+            tick();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ignored) {}
+            objectName = null;
+        }
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        long bytes = bytesSent.sum() + bytesReceived.sum();
+        long elapsed = now - lastTickAt;
+        if (elapsed > 0) {
+            bytesPerSecond = (bytes - lastBytes) * 1_000_000_000L / elapsed;
+        }
+        lastBytes = bytes;
+        lastTickAt = now;
+        if (snapshotFile != null) {
+            writeSnapshot(snapshotFile);
+        }
+    }
+
+    // written next to the target and moved over it, so readers never see half a snapshot
+    private void writeSnapshot(File file) {
+        String text = file.getName().endsWith(".json") ? toJson() : toString();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), (text + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Failed to write metrics snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    // ---------------------- RECORDING ----------------------
+
+    /** A request was accepted and waits for a thread or a transfer slot. */
+    public void sessionQueued() {
+        queued.increment();
+    }
+
+    /** A queued request started running. */
+    public void sessionStarted() {
+        queued.decrement();
+        active.increment();
+    }
+
+    /** A request that could not be queued, e.g. during shutdown. */
+    public void sessionDropped() {
+        queued.decrement();
+    }
+
+    /** A retransmitted request that was absorbed by the transfer already serving it. */
+    public void requestDuplicated() {
+        duplicates.increment();
+    }
+
+    public void sessionEnded(boolean success, long durationNanos) {
+        active.decrement();
+        if (success) {
+            completed.increment();
+            transferTime.recordNanos(durationNanos);
+        } else {
+            failed.increment();
+        }
+    }
+
+    public void blockSent(int bytes) {
+        blocksSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    public void blockReceived(int bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    public void retransmitted() {
+        retransmits.increment();
+    }
+
+    public void roundTrip(long nanos) {
+        blockRtt.recordNanos(nanos);
+    }
+
+    public void errorSent(int code) {
+        errors[code >= 0 && code <= MAX_ERROR_CODE ? code : MAX_ERROR_CODE + 1].increment();
+    }
+
+    // ---------------------- MXBEAN ----------------------
+
+    @Override public String getEngine() { return engine; }
+    @Override public long getUptimeSeconds() { return (System.nanoTime() - startedAt) / 1_000_000_000L; }
+    @Override public long getQueuedSessions() { return queued.sum(); }
+    @Override public long getActiveSessions() { return active.sum(); }
+    @Override public long getCompletedSessions() { return completed.sum(); }
+    @Override public long getFailedSessions() { return failed.sum(); }
+    @Override public long getDuplicateRequests() { return duplicates.sum(); }
+    @Override public long getBytesSent() { return bytesSent.sum(); }
+    @Override public long getBytesReceived() { return bytesReceived.sum(); }
+    @Override public long getBytesPerSecond() { return bytesPerSecond; }
+    @Override public long getBlocksSent() { return blocksSent.sum(); }
+    @Override public long getRetransmits() { return retransmits.sum(); }
+    @Override public long getBlockRttMicrosP50() { return blockRtt.percentileMicros(50); }
+    @Override public long getBlockRttMicrosP99() { return blockRtt.percentileMicros(99); }
+    @Override public long getBlockRttMicrosMax() { return blockRtt.getMaxMicros(); }
+    @Override public long getTransferMillisP50() { return transferTime.percentileMicros(50) / 1000; }
+    @Override public long getTransferMillisP99() { return transferTime.percentileMicros(99) / 1000; }
+    @Override public long getTransferMillisMax() { return transferTime.getMaxMicros() / 1000; }
+
+    @Override
+    public Map<String, Long> getErrorsByCode() {
+        Map<String, Long> byCode = new TreeMap<>();
+        for (int code = 0; code < errors.length; code++) {
+            long count = errors[code].sum();
+            if (count > 0) {
+                byCode.put(code <= MAX_ERROR_CODE ? String.valueOf(code) : "other", count);
+            }
+        }
+        return byCode;
+    }
+
+    // ---------------------- SNAPSHOTS ----------------------
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "TFTP metrics (%s, up %d s): sessions queued %d, active %d, completed %d, failed %d, " +
+                        "duplicate requests %d; " +
+                        "sent %d B in %d blocks, received %d B, %d B/s, %d retransmits; errors %s; " +
+                        "block rtt us p50 %d p99 %d max %d; transfer ms p50 %d p99 %d max %d",
+                engine, getUptimeSeconds(), getQueuedSessions(), getActiveSessions(), getCompletedSessions(),
+                getFailedSessions(), getDuplicateRequests(), getBytesSent(), getBlocksSent(), getBytesReceived(), getBytesPerSecond(),
+                getRetransmits(), getErrorsByCode(), getBlockRttMicrosP50(), getBlockRttMicrosP99(),
+                getBlockRttMicrosMax(), getTransferMillisP50(), getTransferMillisP99(), getTransferMillisMax());
+    }
+
+    public String toJson() {
+        StringBuilder errorsJson = new StringBuilder("{");
+        for (Map.Entry<String, Long> e : getErrorsByCode().entrySet()) {
+            if (errorsJson.length() > 1) errorsJson.append(',');
+            errorsJson.append('"').append(e.getKey()).append("\":").append(e.getValue());
+        }
+        errorsJson.append('}');
+        return "{\"engine\":\"" + engine + "\",\"uptime_s\":" + getUptimeSeconds() +
+                ",\"sessions\":{\"queued\":" + getQueuedSessions() + ",\"active\":" + getActiveSessions() +
+                ",\"completed\":" + getCompletedSessions() + ",\"failed\":" + getFailedSessions() +
+                ",\"duplicates\":" + getDuplicateRequests() + "}" +
+                ",\"bytes_sent\":" + getBytesSent() + ",\"bytes_received\":" + getBytesReceived() +
+                ",\"bytes_per_sec\":" + getBytesPerSecond() + ",\"blocks_sent\":" + getBlocksSent() +
+                ",\"retransmits\":" + getRetransmits() + ",\"errors\":" + errorsJson +
+                ",\"block_rtt_us\":{\"p50\":" + getBlockRttMicrosP50() + ",\"p99\":" + getBlockRttMicrosP99() +
+                ",\"max\":" + getBlockRttMicrosMax() + "}" +
+                ",\"transfer_ms\":{\"p50\":" + getTransferMillisP50() + ",\"p99\":" + getTransferMillisP99() +
+                ",\"max\":" + getTransferMillisMax() + "}}";
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.tftp.server;
+
+import java.util.Map;
+
+/** JMX view of {@link ServerMetrics}, registered as {@code com.example.tftp:type=Server,port=N}. */
+public interface ServerMetricsMXBean {
+    String getEngine();
+    long getUptimeSeconds();
+
+    long getQueuedSessions();
+    long getActiveSessions();
+    long getCompletedSessions();
+    long getFailedSessions();
+    /** Retransmitted RRQs/WRQs absorbed by the transfer already serving them. */
+    long getDuplicateRequests();
+
+    long getBytesSent();
+    long getBytesReceived();
+    /** Sent plus received, averaged over the last reporting interval. */
+    long getBytesPerSecond();
+    long getBlocksSent();
+    long getRetransmits();
+
+    /** ERROR packets sent, by TFTP error code. */
+    Map<String, Long> getErrorsByCode();
+
+    long getBlockRttMicrosP50();
+    long getBlockRttMicrosP99();
+    long getBlockRttMicrosMax();
+    long getTransferMillisP50();
+    long getTransferMillisP99();
+    long getTransferMillisMax();
+}
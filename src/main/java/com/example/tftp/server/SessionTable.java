@@ -0,0 +1,139 @@
+package com.example.tftp.server;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transfers in progress, keyed by the client's address and port and the request it sent. A
+ * client that retransmits its RRQ or WRQ before the first reply arrives would otherwise get a
+ * second handler, socket and thread for the same transfer (and, for a WRQ, an ERROR from the
+ * copy that finds the file already created); the listener drops such duplicates instead.
+ *
+ * An entry leaves the table as soon as its transfer ends: clients open a new port for each
+ * transfer and the kernel soon hands the same port out again, so a request that matches a
+ * finished transfer is far more likely a new download than a late copy. A {@link TimerWheel}
+ * only evicts entries whose handler neither closed nor {@link Entry#touch touched} them for a
+ * whole stale period, i.e. handlers that died or hung; a running transfer is checked again later.
+ */
+public class SessionTable {
+    public static final long DEFAULT_STALE_MILLIS = 60000;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final TimerWheel timers;
+    private final long staleMillis;
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public SessionTable(TimerWheel timers) {
+        this(timers, DEFAULT_STALE_MILLIS);
+    }
+
+    public SessionTable(TimerWheel timers, long staleMillis) {
+        this.timers = timers;
+        this.staleMillis = staleMillis;
+    }
+
+    /**
+     * Registers the request in {@code data[0..length)} from {@code client}; returns null if the
+     * same request from the same client is already in the table.
+     */
+    public Entry open(InetSocketAddress client, byte[] data, int length) {
+        Key key = new Key(client, Arrays.copyOf(data, length));
+        Entry entry = new Entry(key);
+        if (entries.putIfAbsent(key, entry) != null) {
+            duplicates.increment();
+            return null;
+        }
+        entry.timeout = timers.schedule(() -> expire(entry), staleMillis, TimeUnit.MILLISECONDS);
+        return entry;
+    }
+
+    private void expire(Entry entry) {
+        if (entry.touched && entries.get(entry.key) == entry) {
+            // still running: look again after another period
+            entry.touched = false;
+            entry.timeout = timers.schedule(() -> expire(entry), staleMillis, TimeUnit.MILLISECONDS);
+            if (entries.get(entry.key) != entry) {
+                entry.timeout.cancel(); // closed meanwhile
+            }
+            return;
+        }
+        if (entries.remove(entry.key, entry)) {
+            evicted.increment();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Requests dropped because the same transfer was already in the table. */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /** Transfers evicted after a stale period without activity or close. */
+    public long getEvicted() {
+        return evicted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Session table: " + entries.size() + " entries, " + duplicates.sum() + " duplicate requests dropped, "
+                + evicted.sum() + " stale entries evicted";
+    }
+
+    /** One transfer; closed by its handler when the transfer ends, however it ends. */
+    public final class Entry {
+        private final Key key;
+        private volatile TimerWheel.Timeout timeout;
+        private volatile boolean touched; // since the last stale check
+
+        private Entry(Key key) {
+            this.key = key;
+        }
+
+        public InetSocketAddress getClient() {
+            return key.client;
+        }
+
+        /** The transfer made progress: keeps the entry from being evicted as stale. */
+        public void touch() {
+            if (!touched) touched = true; // read first: no store on every packet
+        }
+
+        /** Leaves the table; also for a request that was never served. */
+        public void close() {
+            timeout.cancel();
+            entries.remove(key, this);
+        }
+    }
+
+    private static final class Key {
+        private final InetSocketAddress client;
+        private final byte[] request;
+        private final int hash;
+
+        Key(InetSocketAddress client, byte[] request) {
+            this.client = client;
+            this.request = request;
+            this.hash = 31 * client.hashCode() + Arrays.hashCode(request);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && client.equals(other.client) && Arrays.equals(request, other.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.tftp.server;
+
+import com.example.tftp.model.TftpException;
+import com.example.tftp.model.TftpOpCode;
+import com.example.tftp.model.TftpPacket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Answers datagrams that reach a transfer's port from anyone but its client. A transfer channel
+ * is connected to its client, so the kernel hands it the client's datagrams only and the
+ * transfer loop does no TID check. Without a responder the kernel answers the rest with ICMP
+ * port unreachable. With one, they land on an unconnected twin bound to the same port
+ * (SO_REUSEADDR on both), which is answered with ERROR 5 from that port as RFC 1350 asks.
+ * That costs a second socket per transfer, and any local process can then bind the same port
+ * with SO_REUSEADDR as well and take the stray traffic in the twin's place, so servers only
+ * do it when asked to.
+ *
+ * Blocking handlers {@link #watch} their twins on this responder's thread; an event loop
+ * registers them on its own selector and calls {@link #answer} when one is readable.
+ */
+public class StrayResponder implements Runnable {
+    private static final int MAX_DATAGRAM = 516; // larger strays are truncated, only the opcode matters
+
+    private final ServerMetrics metrics;
+    private final Selector selector;
+    private final Queue<DatagramChannel> added = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+    private volatile boolean running = true;
+
+    public StrayResponder(ServerMetrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Opens a transfer channel on a port of its own, to be {@code shared} with a twin or not.
+     * SO_REUSEADDR is set after binding so that the ephemeral port is never one another socket
+     * already holds; it only lets the twin in.
+     */
+    public static DatagramChannel openTransferChannel(boolean shared) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.bind(null);
+            if (shared) {
+                channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            }
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Binds the non-blocking twin of {@code transfer}; null if the platform will not share the port. */
+    public static DatagramChannel openTwin(DatagramChannel transfer) {
+        DatagramChannel twin = null;
+        try {
+            int port = ((InetSocketAddress) transfer.getLocalAddress()).getPort();
+            twin = DatagramChannel.open();
+            twin.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            twin.bind(new InetSocketAddress(port));
+            twin.configureBlocking(false);
+            return twin;
+        } catch (IOException | UnsupportedOperationException e) {
+            closeQuietly(twin);
+            return null; // strays get ICMP port unreachable from the kernel instead
+        }
+    }
+
+    /** Answers every datagram waiting on {@code twin}, except ERRORs, which must not be answered. */
+    public static void answer(DatagramChannel twin, ByteBuffer buffer, ServerMetrics metrics) throws IOException {
+        while (true) {
+            buffer.clear();
+            SocketAddress from = twin.receive(buffer);
+            if (from == null) return;
+            if (buffer.position() >= 2 && buffer.get(0) == 0 && buffer.get(1) == TftpOpCode.ERROR.getValue()) {
+                continue;
+            }
+            byte[] error = TftpPacket.createERROR(TftpException.UNKNOWN_TRANSFER_ID, "Unknown transfer ID").toBytes();
+            twin.send(ByteBuffer.wrap(error), from);
+            metrics.errorSent(TftpException.UNKNOWN_TRANSFER_ID);
+        }
+    }
+
+    /** Answers strays for {@code transfer} on this responder's thread until the handle is closed. */
+    public Closeable watch(DatagramChannel transfer) {
+        DatagramChannel twin = openTwin(transfer);
+        if (twin == null) return () -> {};
+        added.add(twin);
+        selector.wakeup();
+        return twin;
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "tftp-strays");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                // the timeout lets twins closed by their handlers leave the selector
+                selector.select(1000);
+
+                DatagramChannel twin;
+                while ((twin = added.poll()) != null) {
+                    try {
+                        twin.register(selector, SelectionKey.OP_READ);
+                    } catch (IOException e) {
+                        closeQuietly(twin); // the transfer ended before it was registered
+                    }
+                }
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    try {
+                        answer((DatagramChannel) key.channel(), buffer, metrics);
+                    } catch (IOException e) {
+                        key.cancel(); // closed by its handler meanwhile
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("Stray responder failed: " + e.getMessage());
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly((DatagramChannel) key.channel());
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    static void closeQuietly(DatagramChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -1,34 +1,299 @@
 package com.example.tftp.server;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.io.File;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Asynchronous file log. Callers only put the message into a bounded lock-free ring; one
+ * daemon thread keeps the file open, writes whatever has accumulated and flushes once per
+ * batch. When the ring is full the message is dropped and counted rather than blocking
+ * a transfer. The file is rotated to {@code .1 .. .N} when it grows past the size limit.
+ */
 public class TftpLogger {
 
-    private static String logFilePath = "tftp_log.txt";
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final String FILE_NAME = "tftp_log.txt";
+    private static final int RING_CAPACITY = 8192; // power of two
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    public static final long DEFAULT_MAX_FILE_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_MAX_BACKUPS = 3;
+
+    private static final Ring RING = new Ring(RING_CAPACITY);
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private static volatile File logFile = new File(FILE_NAME);
+    private static volatile Level minLevel = Level.INFO;
+    private static volatile long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+    private static volatile int maxBackups = DEFAULT_MAX_BACKUPS;
+    private static volatile Thread writerThread;
+    private static volatile boolean shuttingDown;
 
     public static void init(String directory) {
-        File logFile = new File(directory, "tftp_log.txt");
+        File dir = new File(directory);
+        if (!dir.exists() && !dir.mkdirs()) {
+            System.err.println("Failed to initialize logger: cannot create " + dir.getAbsolutePath());
+            return;
+        }
+        logFile = new File(dir, FILE_NAME); // the writer reopens on change
+        ensureStarted();
+        System.out.println("Logger initialized: " + logFile.getAbsolutePath());
+    }
 
-        try {
-            if (!logFile.exists()) {
-                logFile.createNewFile();
+    public static void setLevel(Level level) {
+        minLevel = level;
+    }
+
+    /** Rotate once the file exceeds {@code bytes}, keeping {@code backups} old files. */
+    public static void setRotation(long bytes, int backups) {
+        maxFileBytes = bytes;
+        maxBackups = backups;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(minLevel) >= 0;
+    }
+
+    public static void log(String msg) {
+        log(Level.INFO, msg);
+    }
+
+    public static void debug(String msg) { log(Level.DEBUG, msg); }
+    public static void info(String msg) { log(Level.INFO, msg); }
+    public static void warn(String msg) { log(Level.WARN, msg); }
+    public static void error(String msg) { log(Level.ERROR, msg); }
+
+    public static void log(Level level, String msg) {
+        if (!isEnabled(level)) return;
+        if (writerThread == null) ensureStarted();
+        if (!RING.offer(new Entry(System.currentTimeMillis(), level, msg))) {
+            DROPPED.increment();
+        }
+    }
+
+    /** Messages lost because the writer could not keep up. */
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    /** Waits (up to the timeout) until everything logged so far is on disk. */
+    public static boolean flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long target = RING.producedCount();
+        Thread writer = writerThread;
+        while (RING.writtenCount() < target) {
+            if (writer == null || System.nanoTime() > deadline) return false;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    private static synchronized void ensureStarted() {
+        if (writerThread != null) return;
+        Thread thread = new Thread(TftpLogger::writeLoop, "tftp-logger");
+        thread.setDaemon(true);
+        writerThread = thread;
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            shuttingDown = true;
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException ignored) {}
+        }));
+    }
+
+    // ---------------------- WRITER THREAD ----------------------
+
+    private static void writeLoop() {
+        File current = null;
+        Writer out = null;
+        long fileBytes = 0;
+        long reportedDrops = 0;
+        StringBuilder line = new StringBuilder(256);
+
+        while (true) {
+            try {
+                if (current != logFile) {
+                    closeQuietly(out);
+                    current = logFile;
+                    out = open(current);
+                    fileBytes = current.length();
+                }
+
+                int written = 0;
+                Entry entry;
+                while ((entry = RING.poll()) != null) {
+                    line.setLength(0);
+                    line.append('[')
+                            .append(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.timestamp), ZoneId.systemDefault()))
+                            .append("] ").append(entry.level).append(' ').append(entry.message)
+                            .append(System.lineSeparator());
+                    out.write(line.toString());
+                    fileBytes += line.length();
+                    written++;
+
+                    if (fileBytes > maxFileBytes) {
+                        out.close();
+                        rotate(current);
+                        out = open(current);
+                        fileBytes = 0;
+                    }
+                }
+
+                long drops = DROPPED.sum();
+                if (drops != reportedDrops) {
+                    line.setLength(0);
+                    line.append('[').append(LocalDateTime.now()).append("] WARN ")
+                            .append(drops - reportedDrops).append(" log messages dropped (logger queue full)")
+                            .append(System.lineSeparator());
+                    out.write(line.toString());
+                    fileBytes += line.length();
+                    reportedDrops = drops;
+                    written++;
+                }
+
+                if (written > 0) {
+                    out.flush(); // one flush per batch
+                    RING.markWritten();
+                } else if (shuttingDown) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to write to log: " + e.getMessage());
+                closeQuietly(out);
+                out = null;
+                current = null; // reopen on the next round
+                RING.discardPending();
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
             }
-            logFilePath = logFile.getAbsolutePath();
-            System.out.println("Logger initialized: " + logFilePath);
-        } catch (IOException e) {
-            System.err.println("Failed to initialize logger: " + e.getMessage());
+        }
+        closeQuietly(out);
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    // tftp_log.txt -> .1 -> .2 ... the oldest one is deleted
+    private static void rotate(File file) {
+        int backups = maxBackups;
+        File oldest = new File(file.getPath() + "." + backups);
+        if (oldest.exists()) oldest.delete();
+        for (int i = backups - 1; i >= 1; i--) {
+            File from = new File(file.getPath() + "." + i);
+            if (from.exists()) from.renameTo(new File(file.getPath() + "." + (i + 1)));
+        }
+        if (backups > 0) {
+            file.renameTo(new File(file.getPath() + ".1"));
+        } else {
+            file.delete();
+        }
+    }
+
+    private static void closeQuietly(Writer out) {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+    }
+
+    // ---------------------- RING ----------------------
+
+    private static final class Entry {
+        final long timestamp;
+        final Level level;
+        final String message;
+
+        Entry(long timestamp, Level level, String message) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.message = message;
         }
     }
 
-    public static synchronized void log(String msg) {
-        try (PrintWriter out = new PrintWriter(new FileWriter(logFilePath, true))) {
-            out.println("[" + LocalDateTime.now() + "] " + msg);
-        } catch (IOException e) {
-            System.err.println("Failed to write to log: " + e.getMessage());
+    /**
+     * Bounded multi-producer / single-consumer ring (D. Vyukov's scheme): every slot carries a
+     * sequence number that tells producers whether it is free and the consumer whether it is filled.
+     */
+    private static final class Ring {
+        private final Entry[] slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong(); // next slot to claim
+        private volatile long head; // next slot to read, written by the consumer only
+        private volatile long written; // entries known to be flushed
+
+        Ring(int capacity) {
+            slots = new Entry[capacity];
+            sequences = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(Entry entry) {
+            long position;
+            while (true) {
+                position = tail.get();
+                long delta = sequences.get((int) position & mask) - position;
+                if (delta == 0) {
+                    if (tail.compareAndSet(position, position + 1)) break;
+                } else if (delta < 0) {
+                    return false; // full
+                }
+            }
+            int index = (int) position & mask;
+            slots[index] = entry;
+            sequences.lazySet(index, position + 1); // publishes the slot
+            return true;
+        }
+
+        Entry poll() {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) return null;
+            Entry entry = slots[index];
+            slots[index] = null;
+            sequences.lazySet(index, position + mask + 1); // free for the next lap
+            head = position + 1;
+            return entry;
+        }
+
+        long producedCount() {
+            return tail.get();
+        }
+
+        void markWritten() {
+            written = head;
+        }
+
+        long writtenCount() {
+            return written;
+        }
+
+        void discardPending() {
+            while (poll() != null) {
+                DROPPED.increment();
+            }
+            written = head;
         }
     }
 }
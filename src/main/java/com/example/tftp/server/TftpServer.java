@@ -1,26 +1,77 @@
 package com.example.tftp.server;
 
+import com.example.tftp.io.BufferPool;
+import com.example.tftp.io.RttEstimator;
 import com.example.tftp.model.*;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class TftpServer {
     private static final int DEFAULT_PORT = 69;
     private static final String DEFAULT_DIR = "./tftp-server-files";
-    private static final int THREAD_POOL_SIZE = 10;
+    public static final int DEFAULT_POOL_SIZE = 10;
+    private static final int MAX_REQUEST_SIZE = 516;
+    private static final int MAX_WINDOW_SIZE = 64;
+    public static final int DEFAULT_MAX_TRANSFERS = 1000;
 
     private int port;
     private String baseDir;
     private volatile boolean running;
     private ExecutorService threadPool;
+    private Semaphore transferPermits; // null: bounded by the pool size
+    private FileCache fileCache; // null: every RRQ reads the file
+    private MappedFiles mappedFiles; // null: large files are read, not mapped
+    private MulticastGroups multicastGroups; // null: the multicast option is not acknowledged
+    private BandwidthShaper bandwidthShaper; // null: DATA goes out as fast as ACKs come back
+    private TftpRollover rollover = TftpRollover.ZERO;
+    private ServerMetrics metrics = new ServerMetrics("pool");
+    private final TimerWheel timers = new TimerWheel();
+    private int listeners = 1; // sockets sharing the port via SO_REUSEPORT, one thread each
+    private SessionTable[] sessionShards; // one per listener
+    private boolean answerStrays;
+    private StrayResponder strays; // null unless answerStrays
 
     public TftpServer(int port, String baseDir) {
+        this(port, baseDir, DEFAULT_POOL_SIZE);
+    }
+
+    /** Serves at most {@code poolSize} transfers at a time on a fixed pool of platform threads. */
+    public TftpServer(int port, String baseDir, int poolSize) {
         this.port = port;
         this.baseDir = baseDir;
         this.running = true;
-        this.threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+        this.threadPool = Executors.newFixedThreadPool(poolSize);
+    }
+
+    /**
+     * One virtual thread per transfer (Java 21+), at most {@code maxTransfers} at a time.
+     * The handlers keep their blocking receive loops; parked virtual threads cost no platform thread.
+     */
+    public static TftpServer withVirtualThreads(int port, String baseDir, int maxTransfers) {
+        TftpServer server = new TftpServer(port, baseDir);
+        server.threadPool.shutdown();
+        server.threadPool = newVirtualThreadExecutor();
+        server.transferPermits = new Semaphore(maxTransfers);
+        server.metrics = new ServerMetrics("virtual");
+        return server;
+    }
+
+    // looked up reflectively so that the default Java 11 build still compiles
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer, running on "
+                    + System.getProperty("java.version"), e);
+        }
     }
 
     public void start() {
@@ -32,97 +83,344 @@ public class TftpServer {
             }
         }
 
-        System.out.println("TFTP Server starting on port " + port);
+        System.out.println("TFTP Server starting on port " + port + (listeners > 1 ? " (" + listeners + " listeners)" : ""));
         System.out.println("Base directory: " + dir.getAbsolutePath());
         System.out.println("Press Ctrl+C to stop the server");
 
-        try (DatagramSocket serverSocket = new DatagramSocket(port)) {
-            serverSocket.setSoTimeout(1000);
+        sessionShards = new SessionTable[listeners];
+        DatagramSocket[] sockets = new DatagramSocket[listeners];
+        try {
+            for (int i = 0; i < listeners; i++) {
+                sessionShards[i] = new SessionTable(timers);
+                sockets[i] = openListener();
+            }
+            if (answerStrays) {
+                strays = new StrayResponder(metrics);
+                strays.start();
+            }
+            metrics.start(port);
+            if (bandwidthShaper != null) {
+                bandwidthShaper.register(port);
+            }
+            timers.start("tftp-timers");
+
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 1; i < listeners; i++) {
+                DatagramSocket socket = sockets[i];
+                SessionTable sessions = sessionShards[i];
+                Thread thread = new Thread(() -> listen(socket, sessions), "tftp-listener-" + i);
+                thread.start();
+                threads.add(thread);
+            }
+            listen(sockets[0], sessionShards[0]);
 
-            while (running) {
-                try {
-                    byte[] buffer = new byte[516];
-                    DatagramPacket requestPacket = new DatagramPacket(buffer, buffer.length);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to start server on port " + port + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            for (DatagramSocket socket : sockets) {
+                if (socket != null) socket.close();
+            }
+            threadPool.shutdown();
+            timers.stop();
+            if (strays != null) {
+                strays.stop();
+            }
+            metrics.stop();
+            System.out.println(metrics);
+            for (int i = 0; i < listeners; i++) {
+                if (sessionShards[i] != null) {
+                    System.out.println((listeners > 1 ? "Listener " + i + ": " : "") + sessionShards[i]);
+                }
+            }
+            if (bandwidthShaper != null) {
+                bandwidthShaper.unregister();
+                System.out.println(bandwidthShaper);
+            }
+            if (fileCache != null) {
+                System.out.println(fileCache);
+            }
+            if (mappedFiles != null) {
+                System.out.println(mappedFiles);
+            }
+            if (multicastGroups != null) {
+                System.out.println(multicastGroups);
+            }
+            System.out.println("TFTP Server stopped");
+        }
+    }
 
-                    serverSocket.receive(requestPacket);
+    // with several listeners the kernel hashes each client's address and port to one of the
+    // sockets, so a client's retransmitted request reaches the shard that holds its transfer
+    private DatagramSocket openListener() throws IOException {
+        if (listeners == 1) {
+            DatagramSocket socket = new DatagramSocket(port);
+            socket.setSoTimeout(1000);
+            return socket;
+        }
+        DatagramSocket socket = new DatagramSocket(null);
+        try {
+            if (!socket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                throw new SocketException("SO_REUSEPORT is not supported on " + System.getProperty("os.name"));
+            }
+            socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            socket.bind(new InetSocketAddress(port));
+            socket.setSoTimeout(1000);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /** Receive loop of one listener: queues a handler for every request that is not a duplicate. */
+    private void listen(DatagramSocket serverSocket, SessionTable sessions) {
+        ByteBuffer buffer = null;
+        DatagramPacket requestPacket = null;
+
+        while (running) {
+            try {
+                if (buffer == null) {
+                    buffer = BufferPool.heap().acquire(MAX_REQUEST_SIZE);
+                    requestPacket = new DatagramPacket(buffer.array(), MAX_REQUEST_SIZE);
+                }
 
-                    threadPool.execute(new ClientHandler(serverSocket, requestPacket, baseDir));
+                serverSocket.receive(requestPacket);
 
-                } catch (SocketTimeoutException e) {
+                // a retransmitted request is answered by the handler already serving it
+                SessionTable.Entry session = sessions.open((InetSocketAddress) requestPacket.getSocketAddress(),
+                        requestPacket.getData(), requestPacket.getLength());
+                if (session == null) {
+                    metrics.requestDuplicated();
                     continue;
-                } catch (IOException e) {
-                    if (running) {
-                        System.err.println("Error receiving packet: " + e.getMessage());
-                    }
                 }
-            }
 
-        } catch (SocketException e) {
-            System.err.println("Failed to start server on port " + port + ": " + e.getMessage());
-        } finally {
-            threadPool.shutdown();
-            System.out.println("TFTP Server stopped");
+                // the handler releases the buffer once the request is parsed
+                ClientHandler handler = new ClientHandler(serverSocket, requestPacket, buffer, baseDir,
+                        fileCache, mappedFiles, multicastGroups, bandwidthShaper, rollover, metrics, session, strays);
+                buffer = null;
+                metrics.sessionQueued();
+                if (transferPermits == null) {
+                    threadPool.execute(handler);
+                } else if (acquirePermit()) {
+                    threadPool.execute(() -> {
+                        try {
+                            handler.run();
+                        } finally {
+                            transferPermits.release();
+                        }
+                    });
+                } else {
+                    session.close();
+                    metrics.sessionDropped();
+                }
+
+            } catch (SocketTimeoutException e) {
+                continue;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error receiving packet: " + e.getMessage());
+                }
+            }
         }
+        BufferPool.heap().release(buffer);
     }
 
     public void stop() {
         running = false;
     }
 
+    /**
+     * Answers datagrams from other TIDs with ERROR 5 from a second socket on each transfer's
+     * port (see {@link StrayResponder}); off by default, the kernel answers them with ICMP.
+     */
+    public void setAnswerStrays(boolean answerStrays) {
+        this.answerStrays = answerStrays;
+    }
+
+    /** Serves RRQs of small, hot files from memory; null disables the cache. */
+    public void setFileCache(FileCache fileCache) {
+        this.fileCache = fileCache;
+    }
+
+    /** Serves RRQs of large files from shared mappings; null disables mapping. */
+    public void setMappedFiles(MappedFiles mappedFiles) {
+        this.mappedFiles = mappedFiles;
+    }
+
+    /** Serves RRQs with the RFC 2090 multicast option to groups of clients; null disables it. */
+    public void setMulticastGroups(MulticastGroups multicastGroups) {
+        this.multicastGroups = multicastGroups;
+    }
+
+    /** Paces outgoing DATA by rate limits and fair shares; null disables shaping. */
+    public void setBandwidthShaper(BandwidthShaper bandwidthShaper) {
+        this.bandwidthShaper = bandwidthShaper;
+    }
+
+    /** Block number that follows 65535 in transfers of more than 65535 blocks. */
+    public void setRollover(TftpRollover rollover) {
+        this.rollover = rollover;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Binds {@code listeners} sockets to the port with SO_REUSEPORT (Linux, and other systems
+     * that balance it), each read by its own thread into its own session table, so request
+     * intake scales across cores during boot storms. 1, the default, binds a plain socket.
+     */
+    public void setListeners(int listeners) {
+        if (listeners < 1) throw new IllegalArgumentException("Need at least one listener: " + listeners);
+        this.listeners = listeners;
+    }
+
+    // at the limit new requests wait in the socket buffer; clients retransmit them if it overflows
+    private boolean acquirePermit() throws IOException {
+        try {
+            while (running) {
+                if (transferPermits.tryAcquire(1, TimeUnit.SECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a transfer slot");
+        }
+    }
+
     static class ClientHandler implements Runnable {
+        private static final int SESSION_GIVE_UP = 25000; // ms of silence before a transfer is dropped
+
+        // receiveAck results that are not block numbers
+        private static final int ACK_TIMEOUT = -1;
+        private static final int ACK_IGNORED = -2;
+        private static final int ACK_ERROR = -3;
+
         private DatagramSocket serverSocket;
         private DatagramPacket requestPacket;
+        private ByteBuffer requestBuffer;
         private String baseDir;
-
-        public ClientHandler(DatagramSocket socket, DatagramPacket packet, String baseDir) {
+        private FileCache fileCache;
+        private MappedFiles mappedFiles;
+        private MulticastGroups multicastGroups;
+        private BandwidthShaper bandwidthShaper;
+        private BandwidthShaper.Session shaped; // null: this transfer is not paced
+        private TftpRollover rollover;
+        private ServerMetrics metrics;
+        private SessionTable.Entry session;
+        private StrayResponder strays; // null: the kernel answers strays with ICMP
+        private Closeable strayWatch; // null until the socket is connected to the client
+        private final RttEstimator rtt = new RttEstimator(RttEstimator.DEFAULT_INITIAL_RTO, SESSION_GIVE_UP);
+        private long deadline; // System.nanoTime() by which the awaited packet is due, see armTimer
+        private boolean completed; // the transfer ran to its end, for the metrics
+
+        // pooled, reused for every DATA/ACK of the transfer, see TftpPacketView
+        private int packetSize;
+        private ByteBuffer sendBuffer;
+        private DatagramPacket sendDatagram; // to the group; unicast transfers write to the connected channel
+        private final ByteBuffer[] sendPacket = new ByteBuffer[BlockSource.MAX_GATHER];
+        private ByteBuffer receiveBuffer;
+        private DatagramPacket receiveDatagram;
+        private final TftpPacketView view = new TftpPacketView();
+
+        public ClientHandler(DatagramSocket socket, DatagramPacket packet, ByteBuffer buffer, String baseDir,
+                             FileCache fileCache, MappedFiles mappedFiles, MulticastGroups multicastGroups,
+                             BandwidthShaper bandwidthShaper, TftpRollover rollover, ServerMetrics metrics,
+                             SessionTable.Entry session, StrayResponder strays) {
             this.serverSocket = socket;
             this.requestPacket = packet;
+            this.requestBuffer = buffer;
             this.baseDir = baseDir;
+            this.fileCache = fileCache;
+            this.mappedFiles = mappedFiles;
+            this.multicastGroups = multicastGroups;
+            this.bandwidthShaper = bandwidthShaper;
+            this.rollover = rollover;
+            this.metrics = metrics;
+            this.session = session;
+            this.strays = strays;
         }
 
         @Override
         public void run() {
+            metrics.sessionStarted();
+            long startedAt = System.nanoTime();
             InetAddress clientAddress = requestPacket.getAddress();
             int clientPort = requestPacket.getPort();
             TftpPacket tftpPacket = null;
 
-            try (DatagramSocket clientSocket = new DatagramSocket()) {
-                clientSocket.setSoTimeout(5000);
-
-                byte[] requestData = new byte[requestPacket.getLength()];
-                System.arraycopy(requestPacket.getData(), 0, requestData, 0, requestPacket.getLength());
-
-                tftpPacket = TftpPacket.fromBytes(requestData);
-                String filename = tftpPacket.getFilename();
-
-                if (tftpPacket.getOpCode() == TftpOpCode.WRQ) {
-                    File file = new File(baseDir, filename);
-
-                    if (file.exists()) {
-                        sendError(clientSocket, clientAddress, clientPort, TftpException.FILE_EXISTS,
-                                "File already exists");
-                        return;
+            try (DatagramChannel channel = StrayResponder.openTransferChannel(strays != null);
+                 DatagramSocket clientSocket = channel.socket()) {
+                try {
+                    byte[] requestData = new byte[requestPacket.getLength()];
+                    System.arraycopy(requestPacket.getData(), 0, requestData, 0, requestPacket.getLength());
+                    BufferPool.heap().release(requestBuffer);
+                    requestBuffer = null;
+
+                    tftpPacket = TftpPacket.fromBytes(requestData);
+                    String filename = tftpPacket.getFilename();
+                    TftpOptions options = TftpOptions.negotiate(tftpPacket.getOptions(),
+                            TftpOptions.MAX_BLOCK_SIZE, MAX_WINDOW_SIZE);
+                    if (options.getTimeout() > 0) {
+                        rtt.setFixedTimeout(options.getTimeout());
                     }
+                    packetSize = options.getPacketSize();
+                    sendBuffer = BufferPool.direct().acquire(packetSize); // written to the connected channel
+                    // heap: the timed receive goes through the socket adaptor, which fills a DatagramPacket
+                    receiveBuffer = BufferPool.heap().acquire(packetSize);
+                    receiveDatagram = new DatagramPacket(receiveBuffer.array(), packetSize);
+
+                    if (tftpPacket.getOpCode() == TftpOpCode.WRQ) {
+                        File file = new File(baseDir, filename);
+
+                        if (file.exists()) {
+                            sendError(clientSocket, clientAddress, clientPort, TftpException.FILE_EXISTS,
+                                    "File already exists");
+                            return;
+                        }
 
-                    handleWriteRequest(clientSocket, clientAddress, clientPort, tftpPacket);
-                } else if (tftpPacket.getOpCode() == TftpOpCode.RRQ) {
-                    handleReadRequest(clientSocket, clientAddress, clientPort, tftpPacket);
-                }
-
-            } catch (TftpException te) {
-                try {
-                    sendError(new DatagramSocket(), clientAddress, clientPort, te.getErrorCode(), te.getMessage());
-                } catch (IOException ignored) {}
-            } catch (Exception e) {
-                try {
-                    sendError(new DatagramSocket(), clientAddress, clientPort, TftpException.UNDEFINED,
+                        handleWriteRequest(clientSocket, clientAddress, clientPort, tftpPacket, options);
+                    } else if (tftpPacket.getOpCode() == TftpOpCode.RRQ) {
+                        handleReadRequest(clientSocket, clientAddress, clientPort, tftpPacket, options);
+                    }
+                } catch (TftpException te) {
+                    // from the transfer's port: a client connected to it would drop anything else
+                    sendError(clientSocket, clientAddress, clientPort, te.getErrorCode(), te.getMessage());
+                } catch (Exception e) {
+                    sendError(clientSocket, clientAddress, clientPort, TftpException.UNDEFINED,
                             "Unexpected server error");
-                } catch (IOException ignored) {}
+                }
+            } catch (IOException ignored) {
+                // no transfer channel, or the ERROR could not be sent
+            } finally {
+                BufferPool.heap().release(requestBuffer);
+                BufferPool.direct().release(sendBuffer); // a group transfer swapped it for a heap one:
+                BufferPool.heap().release(sendBuffer);   // each pool ignores the other's buffers
+                BufferPool.heap().release(receiveBuffer);
+                if (shaped != null) {
+                    shaped.close();
+                }
+                if (strayWatch != null) {
+                    try {
+                        strayWatch.close();
+                    } catch (IOException ignored) {}
+                }
+                session.close();
+                metrics.sessionEnded(completed, System.nanoTime() - startedAt);
             }
         }
 
         private void handleWriteRequest(DatagramSocket socket, InetAddress clientAddress,
-                                        int clientPort, TftpPacket request) throws TftpException {
+                                        int clientPort, TftpPacket request, TftpOptions options) throws TftpException {
 
             String filename = request.getFilename();
             File file = new File(baseDir, filename);
@@ -144,30 +442,103 @@ public class TftpServer {
                 parentDir.mkdirs();
             }
 
-            System.out.println("[" + clientAddress + ":" + clientPort + "] Receiving file: " + filename);
+            // RFC 2349: refuse an announced upload that cannot fit before any data is sent
+            if (options.isTransferSizeRequested()) {
+                long usable = parentDir != null ? parentDir.getUsableSpace() : 0;
+                if (usable > 0 && options.getTransferSize() > usable) {
+                    throw new TftpException("Not enough space for " + options.getTransferSize() + " bytes",
+                            TftpException.DISK_FULL);
+                }
+                options.acknowledgeTransferSize(options.getTransferSize());
+            }
+
+            System.out.println("[" + clientAddress + ":" + clientPort + "] Receiving file: " + filename +
+                    (options.isTransferSizeRequested() ? " (" + options.getTransferSize() + " bytes)" : ""));
+
+            try {
+                // a whole window arrives back to back: make room for it so the tail is not dropped
+                if (socket.getReceiveBufferSize() < options.getWindowBytes()) {
+                    socket.setReceiveBufferSize(options.getWindowBytes());
+                }
+            } catch (SocketException e) {
+                System.err.println("Failed to resize receive buffer: " + e.getMessage());
+            }
 
             try (FileOutputStream fos = new FileOutputStream(file)) {
-                int expectedBlock = 1;
+                connect(socket, clientAddress, clientPort);
+                long expectedBlock = 1;
+                int windowSize = options.getWindowSize();
+                int blocksSinceAck = 0;
+                boolean rollbackSent = false;
                 boolean lastPacket = false;
+                long ackSentAt; // 0 after a timeout: a re-sent ACK gives no RTT sample
 
-                // Initial ACK(0)
-                sendPacket(socket, clientAddress, clientPort, TftpPacket.createACK(0));
+                // Initial ACK(0), or OACK when options were accepted
+                TftpPacket firstResponse = options.isEmpty()
+                        ? TftpPacket.createACK(0)
+                        : TftpPacket.createOACK(options.getAcknowledged());
+                send(socket, firstResponse);
+                ackSentAt = System.nanoTime();
+                armTimer();
 
                 while (!lastPacket) {
-                    TftpPacket dataPacket = receiveDataPacket(socket, clientAddress, clientPort, expectedBlock);
-                    if (dataPacket == null) break;
+                    TftpPacketView dataPacket = receiveDataPacket(socket);
+
+                    if (dataPacket == null) {
+                        if (!rtt.backoff()) {
+                            throw new TftpException("Timeout waiting for block " + expectedBlock, TftpException.UNDEFINED);
+                        }
+                        // re-acknowledge the last in-order block so the client resumes from there
+                        resendLastAck(socket, firstResponse, expectedBlock);
+                        metrics.retransmitted();
+                        blocksSinceAck = 0;
+                        ackSentAt = 0;
+                        armTimer();
+                        continue;
+                    }
 
-                    byte[] data = dataPacket.getData();
-                    fos.write(data);
+                    if (rollover.fromWire(dataPacket.getBlockNumber(), expectedBlock) != expectedBlock) {
+                        // lock-step: re-ACK every duplicate, the client resent because our ACK was lost (RFC 1350);
+                        // duplicate or gap in a window: roll the client back once per gap.
+                        // Neither is progress, so the deadline stays where it is
+                        if (windowSize == 1 || !rollbackSent) {
+                            resendLastAck(socket, firstResponse, expectedBlock);
+                            metrics.retransmitted();
+                            rollbackSent = true;
+                            blocksSinceAck = 0;
+                        }
+                        continue;
+                    }
+                    rollbackSent = false;
+                    armTimer();
+
+                    // ACK -> first block of the next window is one round trip
+                    if (ackSentAt != 0) {
+                        sample(System.nanoTime() - ackSentAt);
+                        ackSentAt = 0;
+                    } else {
+                        rtt.acknowledge();
+                    }
 
-                    sendPacket(socket, clientAddress, clientPort, TftpPacket.createACK(expectedBlock));
+                    fos.write(receiveBuffer.array(), dataPacket.getDataOffset(), dataPacket.getDataLength());
+                    metrics.blockReceived(dataPacket.getDataLength());
 
-                    lastPacket = data.length < 512;
+                    lastPacket = dataPacket.getDataLength() < options.getBlockSize();
+                    if (lastPacket || ++blocksSinceAck >= windowSize) {
+                        sendAck(socket, expectedBlock);
+                        blocksSinceAck = 0;
+                        ackSentAt = System.nanoTime();
+                    }
                     expectedBlock++;
                 }
 
-                System.out.println("[" + clientAddress + ":" + clientPort + "] File received: " + filename);
+                completed = true;
+                System.out.println("[" + clientAddress + ":" + clientPort + "] File received: " + filename +
+                        " (srtt " + String.format("%.2f", rtt.getSrttMillis()) + " ms, rto " + rtt.getRtoMillis() + " ms)");
 
+            } catch (TftpException te) {
+                file.delete();
+                throw te;
             } catch (IOException ioe) {
                 if (file.exists()) file.delete();
                 throw new TftpException("IO error during upload", TftpException.UNDEFINED, ioe);
@@ -175,7 +546,7 @@ public class TftpServer {
         }
 
         private void handleReadRequest(DatagramSocket socket, InetAddress clientAddress,
-                                       int clientPort, TftpPacket request) throws TftpException {
+                                       int clientPort, TftpPacket request, TftpOptions options) throws TftpException {
 
             String filename = request.getFilename();
             File file = new File(baseDir, filename);
@@ -196,31 +567,111 @@ public class TftpServer {
 
                 System.out.println("[" + clientAddress + ":" + clientPort + "] Sending file: " + filename + " (" + file.length() + " bytes)");
 
-                try (FileInputStream fis = new FileInputStream(file)) {
-                    int blockNumber = 1;
-                    byte[] buffer = new byte[512];
-                    int bytesRead;
+                if (options.isTransferSizeRequested()) {
+                    options.acknowledgeTransferSize(file.length());
+                }
 
-                    while ((bytesRead = fis.read(buffer)) != -1) {
-                        byte[] data = new byte[bytesRead];
-                        System.arraycopy(buffer, 0, data, 0, bytesRead);
+                if (bandwidthShaper != null) {
+                    shaped = bandwidthShaper.open(new InetSocketAddress(clientAddress, clientPort), filename);
+                }
 
-                        TftpPacket dataPacket = TftpPacket.createDATA(blockNumber, data);
-                        sendPacketWithRetry(socket, clientAddress, clientPort, dataPacket, 5);
+                // a late joiner could not tell which lap of the block counter it hears:
+                // files that need rollover are served over unicast
+                if (multicastGroups != null && options.isMulticastRequested()
+                        && file.length() / options.getBlockSize() < TftpRollover.MAX_BLOCK_NUMBER) {
+                    MulticastGroups.Member member = new MulticastGroups.Member(
+                            new InetSocketAddress(clientAddress, clientPort), options);
+                    MulticastGroups.Transfer transfer = multicastGroups.join(file, member);
+                    if (transfer != null) {
+                        if (transfer.isRunBy(member)) {
+                            sendToGroup(socket, transfer, member, file);
+                        } else {
+                            completed = true; // handed over to the group's sender
+                            System.out.println("[" + clientAddress + ":" + clientPort + "] Joined multicast group " +
+                                    transfer.group + " for " + filename);
+                        }
+                        return;
+                    }
+                    // every group address is taken: serve this client over unicast
+                }
+
+                connect(socket, clientAddress, clientPort);
+
+                if (!options.isEmpty()) {
+                    TftpPacket oack = TftpPacket.createOACK(options.getAcknowledged());
+                    if (!sendUntilAcked(socket, oack, 0)) {
+                        System.out.println("[" + clientAddress + ":" + clientPort + "] No acknowledgment for OACK, aborting");
+                        return;
+                    }
+                }
 
-                        if (!receiveAck(socket, clientAddress, clientPort, blockNumber)) {
-                            System.out.println("[" + clientAddress + ":" + clientPort + "] Timeout waiting for ACK " + blockNumber + ", aborting");
+                // a whole window is written back to back: keep it from being dropped in the send buffer
+                if (socket.getSendBufferSize() < options.getWindowBytes()) {
+                    socket.setSendBufferSize(options.getWindowBytes());
+                }
+
+                try (BlockSource source = BlockSource.open(file, fileCache, mappedFiles)) {
+                    int blockSize = options.getBlockSize();
+                    int windowSize = options.getWindowSize();
+                    long fileLength = source.length();
+                    // the final block is always shorter than blockSize, possibly empty
+                    long lastBlock = fileLength / blockSize + 1;
+                    long base = 1; // oldest unacknowledged block
+                    long highestSent = 0;
+                    long windowSentAt = 0;
+                    long firstNewBlock = 1; // blocks from here on went out once, in this window (Karn)
+                    boolean resend = true;
+
+                    while (base <= lastBlock) {
+                        long windowEnd = Math.min(base + windowSize - 1, lastBlock);
+
+                        if (resend) {
+                            long previouslySent = highestSent;
+                            // an ACK of a block sent for the first time answers its only copy and times
+                            // this window; blocks resent at its start do not make it ambiguous
+                            windowSentAt = System.nanoTime();
+                            firstNewBlock = highestSent + 1;
+                            highestSent = Math.max(highestSent, windowEnd);
+                            for (long block = base; block <= windowEnd; block++) {
+                                if (block <= previouslySent) metrics.retransmitted();
+                                sendBlock(socket, source, block, blockSize);
+                            }
+                            armTimer();
+                        }
+
+                        // ACK(base - 1) inside a window means "gap, resend from base" (RFC 7440);
+                        // in lock-step mode it is just a duplicate and must not trigger a resend
+                        long lowest = windowSize > 1 ? base - 1 : base;
+                        long acked = receiveAck(socket, lowest, windowEnd);
+
+                        if (acked == ACK_ERROR) {
                             return;
                         }
+                        if (acked == ACK_TIMEOUT) {
+                            if (!rtt.backoff()) {
+                                System.out.println("[" + clientAddress + ":" + clientPort + "] Timeout waiting for ACK " + windowEnd + ", aborting");
+                                return;
+                            }
+                            resend = true;
+                            continue;
+                        }
+                        if (acked == ACK_IGNORED) {
+                            resend = false; // keeps the window's deadline: stale ACKs must not delay the resend
+                            continue;
+                        }
 
-                        blockNumber++;
+                        if (acked >= firstNewBlock) {
+                            sample(System.nanoTime() - windowSentAt);
+                        } else {
+                            rtt.acknowledge();
+                        }
+                        resend = true;
+                        base = acked + 1;
                     }
 
-                    TftpPacket finalPacket = TftpPacket.createDATA(blockNumber, new byte[0]);
-                    sendPacketWithRetry(socket, clientAddress, clientPort, finalPacket, 5);
-                    receiveAck(socket, clientAddress, clientPort, blockNumber);
-
-                    System.out.println("[" + clientAddress + ":" + clientPort + "] File sent successfully: " + filename);
+                    completed = true;
+                    System.out.println("[" + clientAddress + ":" + clientPort + "] File sent successfully: " + filename +
+                            " (srtt " + String.format("%.2f", rtt.getSrttMillis()) + " ms, rto " + rtt.getRtoMillis() + " ms)");
                 } catch (IOException ioe) {
                     throw new TftpException("Failed to read file '" + filename + "'", TftpException.UNDEFINED, ioe);
                 }
@@ -229,6 +680,167 @@ public class TftpServer {
             }
         }
 
+        /**
+         * RFC 2090 group transfer, run by the handler of the first RRQ. DATA goes to the group and
+         * only the master client ACKs, lock-step. Once the master has the whole file the next member
+         * becomes master and ACKs the last block it has in order, so it gets what it missed first.
+         */
+        private void sendToGroup(DatagramSocket socket, MulticastGroups.Transfer transfer,
+                                 MulticastGroups.Member first, File file) throws TftpException {
+            List<MulticastGroups.Member> members = new ArrayList<>();
+            members.add(first);
+            int served = 0;
+            long blocksSent = 0;
+
+            try (BlockSource source = BlockSource.open(file, fileCache, mappedFiles);
+                 MulticastSocket groupSocket = transfer.openSocket()) {
+                int blockSize = first.options.getBlockSize();
+                int lastBlock = (int) (source.length() / blockSize) + 1;
+                // the group socket sends DatagramPackets, which need the array
+                BufferPool.direct().release(sendBuffer);
+                sendBuffer = BufferPool.heap().acquire(packetSize);
+                sendDatagram = new DatagramPacket(sendBuffer.array(), 0, transfer.group);
+                MulticastGroups.Member master = null;
+                int sentBlock = 0; // 0 until the master answers its OACK
+                long sentAt = 0; // 0 after a retransmission (Karn)
+
+                System.out.println("[" + transfer.group + "] Multicasting file: " + file.getName());
+
+                while (true) {
+                    for (MulticastGroups.Member joined : transfer.takeJoined()) {
+                        MulticastGroups.Member known = findMember(members, joined.address);
+                        if (known == null) {
+                            members.add(joined);
+                            known = joined;
+                        }
+                        // a repeated RRQ means the OACK was lost
+                        sendOack(socket, transfer, known, known == master);
+                    }
+
+                    if (master == null) {
+                        if (members.isEmpty()) {
+                            if (transfer.close()) break;
+                            continue;
+                        }
+                        master = members.get(0);
+                        sentBlock = 0;
+                        rtt.acknowledge();
+                        sendOack(socket, transfer, master, true);
+                        sentAt = System.nanoTime();
+                        armTimer();
+                    }
+
+                    TftpPacketView packet;
+                    try {
+                        packet = receive(socket);
+                    } catch (SocketTimeoutException e) {
+                        if (!rtt.backoff()) {
+                            System.out.println("[" + transfer.group + "] Master client " + master.address +
+                                    " stopped responding, dropped");
+                            members.remove(master);
+                            master = null;
+                        } else if (sentBlock == 0) {
+                            sendOack(socket, transfer, master, true);
+                        } else {
+                            sendBlock(groupSocket, source, sentBlock, blockSize);
+                            metrics.retransmitted();
+                            blocksSent++;
+                        }
+                        sentAt = 0;
+                        armTimer();
+                        continue;
+                    }
+
+                    MulticastGroups.Member sender = findMember(members, receiveDatagram.getSocketAddress());
+                    if (sender == null) {
+                        sendError(socket, receiveDatagram.getAddress(), receiveDatagram.getPort(),
+                                TftpException.UNKNOWN_TRANSFER_ID, "Unknown transfer ID");
+                        continue;
+                    }
+                    // an ERROR or ACK of the last block from any member: it gave up or is done
+                    if (packet.isError() || packet.isAck() && packet.getBlockNumber() >= lastBlock) {
+                        if (packet.isAck()) served++;
+                        members.remove(sender);
+                        if (sender == master) master = null;
+                        continue;
+                    }
+                    if (sender != master || !packet.isAck()) {
+                        continue;
+                    }
+
+                    int acked = packet.getBlockNumber();
+                    if (sentAt != 0 && (sentBlock == 0 || acked == sentBlock)) {
+                        sample(System.nanoTime() - sentAt);
+                    } else {
+                        rtt.acknowledge();
+                    }
+                    sentBlock = acked + 1;
+                    sendBlock(groupSocket, source, sentBlock, blockSize);
+                    blocksSent++;
+                    sentAt = System.nanoTime();
+                    armTimer();
+                }
+
+                completed = true;
+                System.out.println("[" + transfer.group + "] File sent to " + served + " client(s): " + file.getName() +
+                        " (" + blocksSent + " blocks multicast, last block " + lastBlock + ")");
+            } catch (IOException ioe) {
+                throw new TftpException("Failed to read file '" + file.getName() + "'", TftpException.UNDEFINED, ioe);
+            } finally {
+                transfer.abort();
+            }
+        }
+
+        private void sendOack(DatagramSocket socket, MulticastGroups.Transfer transfer,
+                              MulticastGroups.Member member, boolean master) throws IOException {
+            member.options.acknowledgeMulticast(transfer.group.getAddress().getHostAddress(),
+                    transfer.group.getPort(), master);
+            byte[] data = TftpPacket.createOACK(member.options.getAcknowledged()).toBytes();
+            socket.send(new DatagramPacket(data, data.length, member.address));
+        }
+
+        private static MulticastGroups.Member findMember(List<MulticastGroups.Member> members, SocketAddress address) {
+            for (MulticastGroups.Member member : members) {
+                if (member.address.equals(address)) return member;
+            }
+            return null;
+        }
+
+        // DATA(block) to the client, gathered from the header and the source's own memory where
+        // it has some; the group's DatagramPacket needs it copied into the send buffer
+        private void sendBlock(DatagramSocket socket, BlockSource source, long block, int blockSize) throws IOException {
+            long offset = (block - 1) * blockSize;
+            int length = (int) Math.min(blockSize, source.length() - offset);
+            if (shaped != null) {
+                shaped.acquire(length + TftpOptions.HEADER_SIZE);
+            }
+            TftpPacketView.beginData(sendBuffer, rollover.toWire(block));
+            if (socket.isConnected()) {
+                sendPacket[0] = sendBuffer;
+                sendWithRetry(socket.getChannel(), sendPacket, source.gather(sendPacket, offset, length), 5);
+            } else {
+                source.read(sendBuffer, offset, length);
+                sendBuffer.flip();
+                sendWithRetry(socket, sendBuffer, 5);
+            }
+            metrics.blockSent(length);
+        }
+
+        private void sample(long rttNanos) {
+            rtt.sample(rttNanos);
+            metrics.roundTrip(rttNanos);
+        }
+
+        // from here on the kernel drops other TIDs' datagrams and sends skip the per-packet
+        // address checks; the stray responder, if any, answers the dropped ones from the same port
+        private void connect(DatagramSocket socket, InetAddress address, int port) throws IOException {
+            socket.connect(new InetSocketAddress(address, port));
+            if (strays != null) {
+                strayWatch = strays.watch(socket.getChannel());
+            }
+        }
+
+        // unconnected socket only: a member, a stray or a client the transfer never connected to
         private void sendPacket(DatagramSocket socket, InetAddress address, int port,
                                 TftpPacket packet) throws IOException {
             byte[] data = packet.toBytes();
@@ -236,113 +848,200 @@ public class TftpServer {
             socket.send(udpPacket);
         }
 
-        private void sendPacketWithRetry(DatagramSocket socket, InetAddress address, int port,
-                                         TftpPacket packet, int maxRetries) throws IOException {
+        // connected socket: the channel's write needs no address
+        private void send(DatagramSocket socket, TftpPacket packet) throws IOException {
+            socket.getChannel().write(ByteBuffer.wrap(packet.toBytes()));
+        }
+
+        private void sendPacketWithRetry(DatagramSocket socket, TftpPacket packet, int maxRetries) throws IOException {
+            sendWithRetry(socket, ByteBuffer.wrap(packet.toBytes()), maxRetries);
+        }
+
+        private void sendAck(DatagramSocket socket, long block) throws IOException {
+            TftpPacketView.encodeAck(sendBuffer, rollover.toWire(block));
+            socket.getChannel().write(sendBuffer);
+        }
+
+        // the OACK / ACK(0) until the first block is in, then ACK of the last in-order block
+        private void resendLastAck(DatagramSocket socket, TftpPacket firstResponse, long expectedBlock) throws IOException {
+            if (expectedBlock == 1) {
+                send(socket, firstResponse);
+            } else {
+                sendAck(socket, expectedBlock - 1);
+            }
+        }
+
+        // a connected transfer socket writes to its channel; the group socket sends sendDatagram
+        private void sendWithRetry(DatagramSocket socket, ByteBuffer data, int maxRetries) throws IOException {
+            int start = data.position();
             for (int i = 0; i < maxRetries; i++) {
                 try {
-                    sendPacket(socket, address, port, packet);
+                    if (socket.isConnected()) {
+                        socket.getChannel().write(data.position(start));
+                    } else {
+                        sendDatagram.setData(data.array(), data.arrayOffset() + start, data.limit() - start);
+                        socket.send(sendDatagram);
+                    }
                     return;
                 } catch (IOException e) {
                     if (i == maxRetries - 1) {
                         throw e;
                     }
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted during retry", ie);
+                    pauseBeforeRetry();
+                }
+            }
+        }
+
+        // gathering write; every buffer is marked where the packet starts for a retry
+        private void sendWithRetry(DatagramChannel channel, ByteBuffer[] packet, int count,
+                                   int maxRetries) throws IOException {
+            for (int j = 0; j < count; j++) {
+                packet[j].mark();
+            }
+            for (int i = 0; i < maxRetries; i++) {
+                try {
+                    for (int j = 0; j < count; j++) {
+                        packet[j].reset();
                     }
+                    channel.write(packet, 0, count);
+                    return;
+                } catch (IOException e) {
+                    if (i == maxRetries - 1) {
+                        throw e;
+                    }
+                    pauseBeforeRetry();
                 }
             }
         }
 
+        private static void pauseBeforeRetry() throws IOException {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted during retry", ie);
+            }
+        }
+
         private void sendError(DatagramSocket socket, InetAddress address, int port,
                                int errorCode, String message) throws IOException {
             TftpPacket errorPacket = TftpPacket.createERROR(errorCode, message);
-            sendPacket(socket, address, port, errorPacket);
+            if (socket.isConnected()) {
+                send(socket, errorPacket);
+            } else {
+                sendPacket(socket, address, port, errorPacket);
+            }
+            metrics.errorSent(errorCode);
             System.err.println("[" + address + ":" + port + "] Error sent: " +
                     errorCode + " - " + message);
         }
 
-        private boolean receiveAck(DatagramSocket socket, InetAddress expectedAddress, int expectedPort, int expectedBlock) throws IOException {
-            byte[] buffer = new byte[516]; // ACK is small but use 516 for safety
-            DatagramPacket ackPacket = new DatagramPacket(buffer, buffer.length);
+        // sends the packet and waits for ACK(block), retransmitting on timeout
+        private boolean sendUntilAcked(DatagramSocket socket, TftpPacket packet, int block) throws IOException {
+            boolean retransmitted = false;
+            do {
+                long sentAt = System.nanoTime();
+                sendPacketWithRetry(socket, packet, 5);
+                if (retransmitted) metrics.retransmitted();
+                armTimer();
+
+                long acked;
+                while ((acked = receiveAck(socket, block, block)) == ACK_IGNORED) {
+                    // stale packet, keep waiting for what is left of the RTO
+                }
+                if (acked == block) {
+                    if (retransmitted) rtt.acknowledge(); else sample(System.nanoTime() - sentAt);
+                    return true;
+                }
+                if (acked == ACK_ERROR) return false;
+                retransmitted = true;
+            } while (rtt.backoff());
+            return false;
+        }
 
+        // returns the acknowledged block if it lies in [lowest, highest], otherwise one of the ACK_* codes
+        // the socket is connected: every datagram is from the client
+        private long receiveAck(DatagramSocket socket, long lowest, long highest) throws IOException {
             try {
-                socket.receive(ackPacket);
-
-                // If TID doesn't match, send UNKNOWN_TRANSFER_ID to the sender and ignore packet
-                InetAddress senderAddr = ackPacket.getAddress();
-                int senderPort = ackPacket.getPort();
-                if (!senderAddr.equals(expectedAddress) || senderPort != expectedPort) {
-                    sendError(socket, senderAddr, senderPort, TftpException.UNKNOWN_TRANSFER_ID, "Unknown transfer ID");
-                    return false;
-                }
+                TftpPacketView tftpAck = receive(socket);
 
-                byte[] dat = new byte[ackPacket.getLength()];
-                System.arraycopy(ackPacket.getData(), 0, dat, 0, ackPacket.getLength());
-                TftpPacket tftpAck = TftpPacket.fromBytes(dat);
-                if (tftpAck.getOpCode() == TftpOpCode.ERROR) {
+                if (tftpAck.isError()) {
                     System.err.println("Received ERROR: " + tftpAck.getErrorMessage());
-                    return false;
+                    return ACK_ERROR;
                 }
 
-                return tftpAck.getOpCode() == TftpOpCode.ACK &&
-                        tftpAck.getBlockNumber() == expectedBlock;
+                if (!tftpAck.isAck()) {
+                    return ACK_IGNORED;
+                }
+                long block = rollover.fromWire(tftpAck.getBlockNumber(), highest);
+                return block < lowest || block > highest ? ACK_IGNORED : block;
 
             } catch (SocketTimeoutException e) {
-                return false;
+                return ACK_TIMEOUT;
             }
         }
 
-        private TftpPacket receiveDataPacket(DatagramSocket socket, InetAddress expectedAddress, int expectedPort, int expectedBlock)
-                throws IOException {
-            byte[] buffer = new byte[516];
-            DatagramPacket dataPacket = new DatagramPacket(buffer, buffer.length);
-
+        // returns the next DATA packet whatever its block number, or null once the deadline passes
+        private TftpPacketView receiveDataPacket(DatagramSocket socket) throws IOException, TftpException {
             try {
-                socket.receive(dataPacket);
-
-                InetAddress senderAddr = dataPacket.getAddress();
-                int senderPort = dataPacket.getPort();
-                if (!senderAddr.equals(expectedAddress) || senderPort != expectedPort) {
-                    // reply to the unexpected sender with UNKNOWN_TRANSFER_ID (5)
-                    sendError(socket, senderAddr, senderPort, TftpException.UNKNOWN_TRANSFER_ID, "Unknown transfer ID");
-                    return null;
-                }
-
-                byte[] receivedData = new byte[dataPacket.getLength()];
-                System.arraycopy(buffer, 0, receivedData, 0, dataPacket.getLength());
-
-                TftpPacket packet = TftpPacket.fromBytes(receivedData);
-
-                if (packet.getOpCode() == TftpOpCode.ERROR) {
-                    System.err.println("Received ERROR: " + packet.getErrorMessage());
-                    return null;
-                }
+                while (true) {
+                    // the socket is connected: every datagram is from the client
+                    TftpPacketView packet = receive(socket);
 
-                if (packet.getOpCode() != TftpOpCode.DATA) {
-                    System.err.println("Expected DATA, got: " + packet.getOpCode());
-                    return null;
-                }
+                    if (packet.isError()) {
+                        throw new TftpException("Client aborted transfer: " + packet.getErrorMessage(), packet.getErrorCode());
+                    }
 
-                if (packet.getBlockNumber() != expectedBlock) {
-                    System.err.println("Expected block " + expectedBlock +
-                            ", got: " + packet.getBlockNumber());
-                    return null;
+                    if (packet.isData()) {
+                        return packet;
+                    }
+                    System.err.println("Expected DATA, got opcode: " + packet.getOpCodeValue());
                 }
-
-                return packet;
-
             } catch (SocketTimeoutException e) {
                 return null;
             }
         }
+
+        // the awaited reply is due one RTO from now; call after each (re)transmission and on progress only
+        private void armTimer() {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rtt.getRtoMillis());
+        }
+
+        // next datagram into the shared receive buffer; throws SocketTimeoutException once the deadline
+        // passes, however many packets were received and ignored meanwhile. Through the socket adaptor,
+        // since a blocking channel read has no timeout
+        private TftpPacketView receive(DatagramSocket socket) throws IOException {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Retransmission deadline passed");
+            }
+            receiveDatagram.setLength(packetSize);
+            socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining + 999_999)));
+            socket.receive(receiveDatagram);
+            session.touch(); // the client is alive: not a stale entry
+            receiveBuffer.clear().limit(receiveDatagram.getLength());
+            return view.wrap(receiveBuffer);
+        }
     }
 
     public static void main(String[] args) {
         int port = DEFAULT_PORT;
         String baseDir = DEFAULT_DIR;
+        String mode = "pool";
+        int eventLoops = NioTftpServer.DEFAULT_EVENT_LOOPS;
+        int maxTransfers = DEFAULT_MAX_TRANSFERS;
+        int poolSize = DEFAULT_POOL_SIZE;
+        int listeners = 1;
+        long cacheBytes = FileCache.DEFAULT_BUDGET;
+        long mapBytes = MappedFiles.DEFAULT_MIN_SIZE;
+        String multicast = null; // ADDR[:PORT], disabled by default
+        TftpRollover rollover = TftpRollover.ZERO;
+        long globalRate = 0; // bytes/s, 0 = unlimited
+        long perClientRate = 0;
+        List<String> rateRules = new ArrayList<>(); // GLOB=RATE[,WEIGHT]
+        File metricsFile = null; // JMX only by default
+        int metricsInterval = ServerMetrics.DEFAULT_INTERVAL_SECONDS;
+        boolean answerStrays = false; // ICMP port unreachable from the kernel
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-p") && i + 1 < args.length) {
@@ -351,13 +1050,146 @@ public class TftpServer {
             } else if (args[i].equals("-d") && i + 1 < args.length) {
                 baseDir = args[i + 1];
                 i++;
+            } else if (args[i].equals("-m") && i + 1 < args.length) {
+                mode = args[i + 1];
+                i++;
+            } else if (args[i].equals("-l") && i + 1 < args.length) {
+                eventLoops = Integer.parseInt(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-t") && i + 1 < args.length) {
+                poolSize = Integer.parseInt(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-L") && i + 1 < args.length) {
+                listeners = Integer.parseInt(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-c") && i + 1 < args.length) {
+                maxTransfers = Integer.parseInt(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-C") && i + 1 < args.length) {
+                cacheBytes = Long.parseLong(args[i + 1]) * 1024 * 1024;
+                i++;
+            } else if (args[i].equals("-M") && i + 1 < args.length) {
+                mapBytes = Long.parseLong(args[i + 1]) * 1024 * 1024;
+                i++;
+            } else if (args[i].equals("-r") && i + 1 < args.length) {
+                rollover = TftpRollover.fromValue(Integer.parseInt(args[i + 1]));
+                i++;
+            } else if (args[i].equals("-G") && i + 1 < args.length) {
+                multicast = args[i + 1];
+                i++;
+            } else if (args[i].equals("-B") && i + 1 < args.length) {
+                globalRate = BandwidthShaper.parseRate(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-P") && i + 1 < args.length) {
+                perClientRate = BandwidthShaper.parseRate(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-F") && i + 1 < args.length) {
+                rateRules.add(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-S") && i + 1 < args.length) {
+                metricsFile = new File(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-I") && i + 1 < args.length) {
+                metricsInterval = Integer.parseInt(args[i + 1]);
+                i++;
+            } else if (args[i].equals("-E")) {
+                answerStrays = true;
             } else if (args[i].equals("-h") || args[i].equals("--help")) {
                 printHelp();
                 return;
             }
         }
 
-        TftpServer server = new TftpServer(port, baseDir);
+        FileCache fileCache = cacheBytes > 0 ? new FileCache(cacheBytes) : null;
+        MappedFiles mappedFiles = mapBytes > 0 ? new MappedFiles(mapBytes) : null;
+        MulticastGroups multicastGroups = null;
+        if (multicast != null) {
+            int colon = multicast.indexOf(':');
+            try {
+                String address = colon < 0 ? multicast : multicast.substring(0, colon);
+                int groupPort = colon < 0 ? MulticastGroups.DEFAULT_PORT : Integer.parseInt(multicast.substring(colon + 1));
+                multicastGroups = new MulticastGroups(InetAddress.getByName(address), groupPort);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Invalid multicast group " + multicast + ": " + e.getMessage());
+                return;
+            }
+        }
+
+        BandwidthShaper bandwidthShaper = null;
+        if (globalRate > 0 || perClientRate > 0 || !rateRules.isEmpty()) {
+            bandwidthShaper = new BandwidthShaper(globalRate, perClientRate);
+            for (String rule : rateRules) {
+                int eq = rule.lastIndexOf('=');
+                try {
+                    if (eq <= 0) throw new IllegalArgumentException("expected GLOB=RATE[,WEIGHT]");
+                    String[] rateAndWeight = rule.substring(eq + 1).split(",", 2);
+                    double weight = rateAndWeight.length > 1 ? Double.parseDouble(rateAndWeight[1]) : 1;
+                    bandwidthShaper.addRule(rule.substring(0, eq), BandwidthShaper.parseRate(rateAndWeight[0]), weight);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid rate rule " + rule + ": " + e.getMessage());
+                    return;
+                }
+            }
+        }
+
+        if (mode.equals("nio")) {
+            NioTftpServer server;
+            try {
+                server = new NioTftpServer(port, baseDir, eventLoops);
+            } catch (IOException e) {
+                System.err.println("Failed to create event loops: " + e.getMessage());
+                return;
+            }
+            server.setFileCache(fileCache);
+            server.setMappedFiles(mappedFiles);
+            server.setRollover(rollover);
+            server.setAnswerStrays(answerStrays);
+            server.getMetrics().setSnapshotFile(metricsFile, metricsInterval);
+            if (multicastGroups != null) {
+                System.out.println("Multicast is not supported by -m nio, serving RRQs over unicast");
+            }
+            if (bandwidthShaper != null) {
+                System.out.println("Bandwidth shaping is not supported by -m nio, sending unpaced");
+            }
+            if (listeners > 1) {
+                System.out.println("Sharded listeners are not supported by -m nio, the first event loop takes all requests");
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println("\nShutting down TFTP server...");
+                server.stop();
+            }));
+            server.start();
+            return;
+        } else if (!mode.equals("pool") && !mode.equals("virtual")) {
+            System.err.println("Unknown mode: " + mode);
+            printHelp();
+            return;
+        }
+
+        TftpServer server;
+        if (mode.equals("virtual")) {
+            try {
+                server = withVirtualThreads(port, baseDir, maxTransfers);
+            } catch (UnsupportedOperationException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+        } else {
+            server = new TftpServer(port, baseDir, poolSize);
+        }
+        try {
+            server.setListeners(listeners);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        server.setFileCache(fileCache);
+        server.setMappedFiles(mappedFiles);
+        server.setMulticastGroups(multicastGroups);
+        server.setBandwidthShaper(bandwidthShaper);
+        server.setRollover(rollover);
+        server.setAnswerStrays(answerStrays);
+        server.getMetrics().setSnapshotFile(metricsFile, metricsInterval);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\nShutting down TFTP server...");
@@ -374,10 +1206,36 @@ public class TftpServer {
         System.out.println("Options:");
         System.out.println("  -p PORT    Port number (default: 69)");
         System.out.println("  -d DIR     Base directory (default: ./tftp-server-files)");
+        System.out.println("  -m MODE    Engine: pool (thread per transfer, default), virtual (virtual thread");
+        System.out.println("             per transfer, Java 21+) or nio (event loops)");
+        System.out.println("  -l N       Event loop threads for -m nio (default: " + NioTftpServer.DEFAULT_EVENT_LOOPS + ")");
+        System.out.println("  -c N       Max simultaneous transfers for -m virtual (default: " + DEFAULT_MAX_TRANSFERS + ")");
+        System.out.println("  -t N       Transfer threads for -m pool (default: " + DEFAULT_POOL_SIZE + ")");
+        System.out.println("  -L N       Listening sockets sharing the port via SO_REUSEPORT, one receive thread");
+        System.out.println("             each, so request intake spreads across cores (Linux; default: 1)");
+        System.out.println("  -C MB      Off-heap cache for hot files, 0 disables (default: " +
+                FileCache.DEFAULT_BUDGET / (1024 * 1024) + ")");
+        System.out.println("  -M MB      Serve files of at least MB from shared memory mappings, 0 disables (default: " +
+                MappedFiles.DEFAULT_MIN_SIZE / (1024 * 1024) + ")");
+        System.out.println("  -r 0|1     Block number after 65535 in transfers of more than 65535 blocks (default: 0)");
+        System.out.println("  -G ADDR[:PORT]  Serve RFC 2090 multicast RRQs from groups starting at ADDR, e.g. " +
+                MulticastGroups.DEFAULT_ADDRESS + ":" + MulticastGroups.DEFAULT_PORT + " (pool and virtual modes)");
+        System.out.println("  -B RATE    Cap on all DATA sent, e.g. 500K, 100M, 1G bytes/s; transfers share it");
+        System.out.println("             in proportion to their weight (pool and virtual modes, as -P and -F)");
+        System.out.println("  -P RATE    Cap on the DATA sent to one client IP");
+        System.out.println("  -F GLOB=RATE[,WEIGHT]  Cap on all transfers of matching files together (0: no cap)");
+        System.out.println("             and their weight (default 1), e.g. '*.iso=50M' or 'pxelinux*=0,4'; repeatable");
+        System.out.println("  -S FILE    Write a metrics snapshot to FILE every interval, JSON if it ends in .json");
+        System.out.println("             (metrics are always available over JMX as com.example.tftp:type=Server)");
+        System.out.println("  -I SEC     Metrics interval, also the averaging window of bytes/s (default: " +
+                ServerMetrics.DEFAULT_INTERVAL_SECONDS + ")");
+        System.out.println("  -E         Answer datagrams from unknown TIDs with ERROR 5 from a second socket on each");
+        System.out.println("             transfer's port (SO_REUSEADDR); by default the kernel answers them with ICMP");
         System.out.println("  -h, --help Show this help message");
         System.out.println();
         System.out.println("Examples:");
         System.out.println("  java TftpServer");
         System.out.println("  java TftpServer -p 6969 -d /var/tftp");
+        System.out.println("  java TftpServer -p 6969 -m nio -l 2");
     }
 }
@@ -0,0 +1,223 @@
+package com.example.tftp.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel: a ring of buckets, one per tick, each holding the timeouts that fall into
+ * it on some turn of the wheel. Scheduling and cancelling are O(1) from any thread; only the
+ * thread that advances the wheel touches the buckets. A tick is expired once it has fully passed,
+ * so deadlines fire up to one tick late, never early, which is fine for retransmission and
+ * eviction timers measured in tens of milliseconds and more.
+ *
+ * The wheel advances either on its own daemon thread ({@link #start}) or from a thread that
+ * already loops, e.g. an event loop, calling {@link #expire} on every iteration. Tasks run on
+ * that thread and must not block.
+ */
+public class TimerWheel {
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long origin = System.nanoTime();
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private long tick; // next tick to expire, only touched by the advancing thread
+
+    private volatile Thread worker;
+
+    public TimerWheel() {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /** {@code ticksPerWheel} is rounded up to a power of two. */
+    public TimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) throw new IllegalArgumentException("Tick must be positive: " + tickDuration);
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /** Runs {@code task} once, no earlier than {@code delay} from now. */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - origin + Math.max(0, unit.toNanos(delay)));
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /** Timeouts scheduled and neither fired nor cancelled yet. */
+    public int size() {
+        return pending.get();
+    }
+
+    // ---------------------- ADVANCING ----------------------
+
+    /** Advances the wheel on a daemon thread of its own until {@link #stop}. */
+    public synchronized void start(String threadName) {
+        if (worker != null) return;
+        Thread thread = new Thread(() -> {
+            while (worker == Thread.currentThread()) {
+                long now = System.nanoTime();
+                expire(now);
+                LockSupport.parkNanos(this, nanosToNextTick(now));
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    /** Stops the thread started by {@link #start}; timeouts still pending never fire. */
+    public synchronized void stop() {
+        Thread thread = worker;
+        worker = null;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Fires every timeout due by {@code now} (a {@link System#nanoTime} reading) and returns how
+     * many fired. Must only be called from one thread at a time.
+     */
+    public int expire(long now) {
+        long target = (now - origin) / tickNanos - 1; // the last tick that has fully passed
+        int fired = 0;
+        while (tick <= target) {
+            transferScheduled();
+            removeCancelled();
+            fired += wheel[(int) (tick & mask)].expire(tick);
+            tick++;
+        }
+        return fired;
+    }
+
+    /** Nanos from {@code now} until the next tick boundary, for loops that sleep between ticks. */
+    public long nanosToNextTick(long now) {
+        long sinceOrigin = now - origin;
+        return tickNanos - sinceOrigin % tickNanos;
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state != Timeout.PENDING) continue;
+            long due = timeout.deadline / tickNanos;
+            timeout.remainingRounds = Math.max(0, (due - tick) / wheel.length);
+            wheel[(int) (Math.max(due, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    // ---------------------- TIMEOUTS ----------------------
+
+    /** Handle of a scheduled task. */
+    public final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline; // nanos since the wheel's origin
+        volatile int state = PENDING; // not private: updated through STATE
+
+        // owned by the advancing thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /** Returns false if the task already ran or was cancelled. */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) return false;
+            pending.decrementAndGet();
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        private boolean expire() {
+            if (!STATE.compareAndSet(this, PENDING, EXPIRED)) return false;
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Timer task failed: " + e);
+            }
+            return true;
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    /** Doubly linked so that cancelled timeouts are unlinked in O(1). */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            else head = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            else tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        int expire(long tick) {
+            int fired = 0;
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                } else if (timeout.deadline / tickNanos <= tick) {
+                    remove(timeout);
+                    if (timeout.expire()) fired++;
+                }
+                timeout = next;
+            }
+            return fired;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.tftp.client;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ProgressAggregatorTest {
+    private static final long MS = 1_000_000;
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong total = new AtomicLong(-1);
+    private final Queue<Runnable> posted = new ArrayDeque<>();
+    private final List<ProgressAggregator.Snapshot> shown = new ArrayList<>();
+
+    // the real timer never fires within a test: ticks are driven by hand with chosen timestamps
+    private ProgressAggregator aggregator() {
+        return new ProgressAggregator(bytes::get, total::get, shown::add, posted::add, 3_600_000);
+    }
+
+    private void drain() {
+        Runnable r;
+        while ((r = posted.poll()) != null) r.run();
+    }
+
+    @Test
+    public void testTicksAreCoalescedUntilConsumed() {
+        ProgressAggregator aggregator = aggregator();
+        aggregator.start();
+        long now = System.nanoTime();
+        bytes.set(1000);
+        aggregator.tick(now + 50 * MS);
+        bytes.set(2000);
+        aggregator.tick(now + 100 * MS); // the first one is still queued: skipped
+        aggregator.tick(now + 150 * MS);
+        assertEquals(1, posted.size());
+        drain();
+        assertEquals(1, shown.size());
+        assertEquals(1000, shown.get(0).getTransferred());
+
+        aggregator.tick(now + 200 * MS);
+        drain();
+        assertEquals(2000, shown.get(1).getTransferred());
+        aggregator.close();
+    }
+
+    @Test
+    public void testRatesAndEta() {
+        ProgressAggregator aggregator = aggregator();
+        total.set(10_000_000);
+        aggregator.start();
+        long now = System.nanoTime();
+        // 1 MB/s steady for 5 s
+        for (int i = 1; i <= 100; i++) {
+            bytes.set(i * 50_000L);
+            aggregator.tick(now + i * 50 * MS);
+            drain();
+        }
+        ProgressAggregator.Snapshot s = shown.get(shown.size() - 1);
+        assertEquals(5_000_000, s.getTransferred());
+        assertEquals(1_000_000, s.getAverageRate(), 20_000);
+        assertEquals(1_000_000, s.getCurrentRate(), 20_000);
+        assertEquals(5000, s.getEtaMillis(), 200);
+
+        // stalled: the current rate decays, the average stays
+        for (int i = 101; i <= 140; i++) {
+            aggregator.tick(now + i * 50 * MS);
+            drain();
+        }
+        s = shown.get(shown.size() - 1);
+        assertTrue(s.getCurrentRate() < 200_000);
+        assertTrue(s.getAverageRate() > 700_000);
+
+        bytes.set(10_000_000);
+        aggregator.stop();
+        drain();
+        assertEquals(0, shown.get(shown.size() - 1).getEtaMillis());
+        aggregator.close();
+    }
+
+    @Test
+    public void testTickAfterStopIsDropped() {
+        ProgressAggregator aggregator = aggregator();
+        aggregator.start();
+        aggregator.tick(System.nanoTime());
+        aggregator.stop();
+        drain();
+        assertEquals(1, shown.size()); // only the final snapshot
+        aggregator.close();
+    }
+}
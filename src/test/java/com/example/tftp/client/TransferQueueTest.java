@@ -0,0 +1,65 @@
+package com.example.tftp.client;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TransferQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCancelStopsRunningAndQueuedTransfers() throws Exception {
+        // сервер, который никогда не отвечает: первая передача висит, остальные ждут в очереди
+        try (DatagramSocket silent = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(3);
+            TransferQueue queue = new TransferQueue(1, new TransferQueue.Listener() {
+                @Override
+                public void onStateChanged(TransferQueue.Transfer transfer) {
+                    if (transfer.getState() == TransferQueue.State.RUNNING) started.countDown();
+                    if (transfer.isDone()) done.countDown();
+                }
+            });
+            TransferQueue.Transfer[] transfers = new TransferQueue.Transfer[3];
+            for (int i = 0; i < transfers.length; i++) {
+                transfers[i] = queue.download(InetAddress.getLoopbackAddress(), silent.getLocalPort(),
+                        "f" + i, new File(folder.getRoot(), "f" + i), 512, 1);
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(TransferQueue.State.RUNNING, transfers[0].getState());
+            assertEquals(2, queue.countBatch(TransferQueue.State.QUEUED));
+
+            queue.cancelAll();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (TransferQueue.Transfer transfer : transfers) {
+                assertEquals(TransferQueue.State.CANCELLED, transfer.getState());
+            }
+            assertEquals(0, queue.getPendingCount());
+            assertEquals(0, queue.getBatchTransferred());
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelismBounds() {
+        TransferQueue queue = new TransferQueue(2, null);
+        queue.setParallelism(8);
+        assertEquals(8, queue.getParallelism());
+        queue.setParallelism(1);
+        assertEquals(1, queue.getParallelism());
+        try {
+            queue.setParallelism(0);
+            fail("0 workers accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        queue.shutdown();
+    }
+}
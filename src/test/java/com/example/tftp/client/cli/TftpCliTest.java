@@ -0,0 +1,64 @@
+package com.example.tftp.client.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class TftpCliTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGlobWalksOnlyBelowTheFixedPart() throws IOException {
+        File root = folder.getRoot();
+        folder.newFile("a.bin");
+        folder.newFile("b.txt");
+        folder.newFolder("sub", "deep");
+        folder.newFile("sub/c.bin");
+        folder.newFile("sub/deep/d.bin");
+
+        List<File> flat = TftpCli.expandGlob(root + "/*.bin");
+        assertEquals(Arrays.asList(new File(root, "a.bin")), flat);
+
+        List<File> one = TftpCli.expandGlob(root + "/*/*.bin");
+        assertEquals(Arrays.asList(new File(root, "sub/c.bin")), one);
+
+        List<File> all = TftpCli.expandGlob(root + "/**.bin");
+        assertEquals(3, all.size());
+
+        // без шаблона путь возвращается как есть, даже если файла нет
+        assertEquals(Arrays.asList(new File("plain.bin")), TftpCli.expandGlob("plain.bin"));
+        assertTrue(TftpCli.expandGlob(root + "/missing/*.bin").isEmpty());
+    }
+
+    @Test
+    public void testManifestSkipsCommentsAndBlankLines() throws IOException {
+        File manifest = folder.newFile("files.txt");
+        Files.write(manifest.toPath(), Arrays.asList("# boot set", "", "  kernel.img  ", "initrd.img /tmp/initrd"));
+        assertEquals(Arrays.asList("kernel.img", "initrd.img /tmp/initrd"), TftpCli.readManifest(manifest.getPath()));
+    }
+
+    @Test
+    public void testJsonQuoting() {
+        assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", TftpCli.quote("a\"b\\c\n\u0001"));
+    }
+
+    @Test
+    public void testBadArgumentsExitWithUsage() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        TftpCli cli = new TftpCli(new PrintStream(new ByteArrayOutputStream()), new PrintStream(err));
+        assertEquals(2, cli.run(new String[]{"fetch", "x"}));
+        assertEquals(2, cli.run(new String[]{"get"}));
+        assertEquals(2, cli.run(new String[]{"-b", "4", "get", "x"}));
+        assertTrue(err.toString().contains("Try -h"));
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.tftp.client.load;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class LoadGeneratorTest {
+
+    private static LoadGenerator generator() {
+        PrintStream sink = new PrintStream(new ByteArrayOutputStream());
+        return new LoadGenerator(sink, sink);
+    }
+
+    @Test
+    public void testMixIsPickedByWeight() {
+        LoadGenerator generator = generator();
+        generator.parseMix("boot.img:3, initrd.img ,pxelinux.0:2");
+        assertEquals("boot.img", generator.pick(0));
+        assertEquals("boot.img", generator.pick(2));
+        assertEquals("initrd.img", generator.pick(3));
+        assertEquals("pxelinux.0", generator.pick(4));
+        assertEquals("pxelinux.0", generator.pick(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroWeightIsRejected() {
+        generator().parseMix("boot.img:0");
+    }
+
+    @Test
+    public void testReadsNeedFiles() {
+        assertTrue(generator().parse(new String[]{"-W", "100"}));
+        assertTrue(generator().parse(new String[]{"-f", "boot.img"}));
+        assertFalse(generator().parse(new String[]{"-h"}));
+        try {
+            generator().parse(new String[]{"-W", "50"});
+            fail("RRQs without -f");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testBadArgumentsExitWithUsage() {
+        assertEquals(2, generator().run(new String[]{"-f", "a", "-L", "100"}));
+        assertEquals(2, generator().run(new String[]{"-f", "a", "-W", "101"}));
+        assertEquals(2, generator().run(new String[]{"-f", "a", "-b", "4"}));
+        assertEquals(2, generator().run(new String[]{"-f", "a", "-x", "1"}));
+        assertEquals(2, generator().run(new String[]{"-f"}));
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.tftp.client.load;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LoadStatsTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void testPercentilesUseNearestRank() {
+        LoadStats stats = new LoadStats();
+        for (int i = 100; i >= 1; i--) {
+            stats.completed(false, i * MS, 10);
+        }
+        assertEquals(50 * MS, stats.percentileNanos(50));
+        assertEquals(99 * MS, stats.percentileNanos(99));
+        assertEquals(100 * MS, stats.percentileNanos(99.9));
+        assertEquals(100 * MS, stats.percentileNanos(100));
+        assertEquals(1 * MS, stats.percentileNanos(0));
+        assertEquals(1000, stats.getBytes());
+    }
+
+    @Test
+    public void testNoCompletedTransfers() {
+        LoadStats stats = new LoadStats();
+        stats.timedOut(false, 0);
+        assertEquals(0, stats.percentileNanos(50));
+        assertEquals(1, stats.getTransfers());
+        assertEquals(0, stats.getCompleted());
+    }
+
+    @Test
+    public void testOutcomesAreCountedSeparately() {
+        LoadStats stats = new LoadStats();
+        stats.completed(true, MS, 100);
+        stats.timedOut(false, 50);
+        stats.errorPacket(false, 1, 0);
+        stats.errorPacket(true, 6, 0);
+        stats.errorPacket(false, 1, 0);
+        stats.failed(false, 0);
+        stats.addRetransmits(3);
+        stats.addDrops(2);
+
+        assertEquals(6, stats.getTransfers());
+        assertEquals(4, stats.getReads());
+        assertEquals(2, stats.getWrites());
+        assertEquals(1, stats.getCompleted());
+        assertEquals(1, stats.getTimeouts());
+        assertEquals(3, stats.getErrorPackets());
+        assertEquals(Integer.valueOf(2), stats.getErrorPacketsByCode().get(1));
+        assertEquals(1, stats.getFailures());
+        assertEquals(150, stats.getBytes());
+        assertEquals(3, stats.getRetransmits());
+        assertEquals(2, stats.getDrops());
+        assertTrue(stats.report(1_000_000_000L).contains("error pkts   3 {1=2, 6=1}"));
+    }
+
+    @Test
+    public void testLatencyStorageGrows() {
+        LoadStats stats = new LoadStats();
+        for (int i = 1; i <= 5000; i++) {
+            stats.completed(false, i, 0);
+        }
+        assertEquals(5000, stats.getCompleted());
+        assertEquals(2500, stats.percentileNanos(50));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.tftp.client.view;
+
+import com.example.tftp.server.TftpLogger.Level;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogListModelTest {
+
+    private static List<String> events(LogListModel model) {
+        List<String> events = new ArrayList<>();
+        model.addListDataListener(new ListDataListener() {
+            public void intervalAdded(ListDataEvent e) { events.add("+" + e.getIndex0() + ".." + e.getIndex1()); }
+            public void intervalRemoved(ListDataEvent e) { events.add("-" + e.getIndex0() + ".." + e.getIndex1()); }
+            public void contentsChanged(ListDataEvent e) { events.add("~"); }
+        });
+        return events;
+    }
+
+    @Test
+    public void testAppendsAreBatchedUntilFlush() {
+        LogListModel model = new LogListModel(10);
+        List<String> events = events(model);
+        for (int i = 0; i < 3; i++) model.append(Level.INFO, "line " + i);
+        assertEquals(0, model.getSize());
+
+        model.flush();
+        assertEquals(3, model.getSize());
+        assertEquals("line 0", model.getElementAt(0).message);
+        assertEquals(List.of("+0..2"), events);
+    }
+
+    @Test
+    public void testRingKeepsOnlyTheNewestLines() {
+        LogListModel model = new LogListModel(4);
+        List<String> events = events(model);
+        for (int i = 0; i < 3; i++) model.append(Level.INFO, "a" + i);
+        model.flush();
+        for (int i = 0; i < 3; i++) model.append(Level.INFO, "b" + i);
+        model.flush();
+
+        assertEquals(4, model.getSize());
+        assertEquals("a2", model.getElementAt(0).message);
+        assertEquals("b2", model.getElementAt(3).message);
+        assertEquals(List.of("+0..2", "-0..1", "+1..3"), events);
+
+        // больше строк, чем помещается, за один раз: остаются последние
+        for (int i = 0; i < 100; i++) model.append(Level.INFO, "c" + i);
+        model.flush();
+        assertEquals(4, model.getSize());
+        assertEquals("c96", model.getElementAt(0).message);
+        assertEquals("c99", model.getElementAt(3).message);
+    }
+
+    @Test
+    public void testSeverityFilter() {
+        LogListModel model = new LogListModel(8);
+        model.append(Level.DEBUG, "d");
+        model.append(Level.INFO, "i");
+        model.append(Level.WARN, "w");
+        model.append(Level.ERROR, "e");
+        model.flush();
+        assertEquals(3, model.getSize()); // INFO and above by default
+
+        model.setMinLevel(Level.WARN);
+        assertEquals(2, model.getSize());
+        assertEquals("w", model.getElementAt(0).message);
+
+        // a hidden line still takes its place in the ring and is evicted in order
+        for (int i = 0; i < 5; i++) model.append(Level.DEBUG, "x" + i);
+        model.append(Level.ERROR, "e2");
+        model.flush();
+        assertEquals(3, model.getSize()); // d and i were evicted, both hidden
+        assertEquals("w", model.getElementAt(0).message);
+        assertEquals("e2", model.getElementAt(2).message);
+
+        model.append(Level.DEBUG, "y");
+        model.flush();
+        assertEquals("e", model.getElementAt(0).message); // w is gone from the ring
+
+        model.setMinLevel(Level.DEBUG);
+        assertEquals(8, model.getSize());
+        assertEquals("e", model.getElementAt(0).message);
+        assertEquals("y", model.getElementAt(7).message);
+        assertTrue(model.getElementAt(6).toString().endsWith("ERROR: e2"));
+    }
+}
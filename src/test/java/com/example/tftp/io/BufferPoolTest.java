@@ -0,0 +1,58 @@
+package com.example.tftp.io;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testAcquireSetsLimitToRequestedSize() {
+        BufferPool pool = new BufferPool(false, BufferPool.DEFAULT_RETAINED_BYTES);
+        ByteBuffer buffer = pool.acquire(516);
+
+        assertEquals(516, buffer.limit());
+        assertEquals(0, buffer.position());
+        assertEquals(1024, buffer.capacity());
+        assertTrue(buffer.hasArray());
+    }
+
+    @Test
+    public void testReleasedBufferIsReusedForSameClass() {
+        BufferPool pool = new BufferPool(true, BufferPool.DEFAULT_RETAINED_BYTES);
+        ByteBuffer first = pool.acquire(1432);
+        first.putInt(42);
+        pool.release(first);
+
+        ByteBuffer second = pool.acquire(2000);
+        assertSame(first, second);
+        assertTrue(second.isDirect());
+        assertEquals(0, second.position());
+        assertEquals(2000, second.limit());
+        assertEquals(1, pool.getAllocatedCount());
+        assertEquals(1, pool.getReusedCount());
+    }
+
+    @Test
+    public void testForeignBuffersAreNotPooled() {
+        BufferPool pool = new BufferPool(false, BufferPool.DEFAULT_RETAINED_BYTES);
+        pool.release(ByteBuffer.allocate(1000)); // not a size class
+        pool.release(ByteBuffer.allocateDirect(1024)); // wrong kind
+
+        assertNotEquals(1000, pool.acquire(1000).capacity());
+        assertFalse(pool.acquire(1024).isDirect());
+        assertEquals(0, pool.getReusedCount());
+    }
+
+    @Test
+    public void testRetainedBuffersAreBounded() {
+        BufferPool pool = new BufferPool(false, 4096); // at most 4 idle 1 KiB buffers
+        ByteBuffer[] buffers = new ByteBuffer[6];
+        for (int i = 0; i < buffers.length; i++) buffers[i] = pool.acquire(1024);
+        for (ByteBuffer buffer : buffers) pool.release(buffer);
+
+        for (int i = 0; i < buffers.length; i++) pool.acquire(1024);
+        assertEquals(4, pool.getReusedCount());
+        assertEquals(8, pool.getAllocatedCount());
+    }
+}
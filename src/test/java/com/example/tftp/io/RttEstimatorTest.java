@@ -0,0 +1,67 @@
+package com.example.tftp.io;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RttEstimatorTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void testStartsAtInitialRto() {
+        assertEquals(RttEstimator.DEFAULT_INITIAL_RTO, new RttEstimator().getRtoMillis());
+    }
+
+    @Test
+    public void testFirstSampleSetsRto() {
+        RttEstimator rtt = new RttEstimator();
+        rtt.sample(200 * MS);
+        // srtt + 4 * rttvar = 200 + 4 * 100
+        assertEquals(600, rtt.getRtoMillis());
+        assertEquals(200.0, rtt.getSrttMillis(), 0.001);
+    }
+
+    @Test
+    public void testLoopbackRttIsClampedToMinimum() {
+        RttEstimator rtt = new RttEstimator();
+        for (int i = 0; i < 10; i++) {
+            rtt.sample(MS / 10);
+        }
+        assertEquals(RttEstimator.MIN_RTO, rtt.getRtoMillis());
+    }
+
+    @Test
+    public void testBackoffDoublesUpToMaximum() {
+        RttEstimator rtt = new RttEstimator(1000, Integer.MAX_VALUE);
+        rtt.backoff();
+        assertEquals(2000, rtt.getRtoMillis());
+        for (int i = 0; i < 10; i++) {
+            rtt.backoff();
+        }
+        assertEquals(RttEstimator.MAX_RTO, rtt.getRtoMillis());
+    }
+
+    @Test
+    public void testGivesUpAfterSilenceLimit() {
+        RttEstimator rtt = new RttEstimator(1000, 2500);
+        assertTrue(rtt.backoff());  // 1 s waited
+        assertFalse(rtt.backoff()); // 1 + 2 s
+    }
+
+    @Test
+    public void testProgressRestartsGiveUpClock() {
+        RttEstimator rtt = new RttEstimator(1000, 2500);
+        assertTrue(rtt.backoff());
+        rtt.acknowledge();
+        assertTrue(rtt.backoff());
+    }
+
+    @Test
+    public void testFixedTimeoutIgnoresSamplesAndBackoff() {
+        RttEstimator rtt = new RttEstimator();
+        rtt.setFixedTimeout(3);
+        rtt.sample(MS);
+        rtt.backoff();
+        assertEquals(3000, rtt.getRtoMillis());
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.tftp.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.Collections;
+import java.util.Map;
+
+public class TftpOptionsTest {
+
+    @Test
+    public void testDefaultBlockSizeIsNotRequested() {
+        assertTrue(TftpOptions.request(TftpOptions.DEFAULT_BLOCK_SIZE, TftpOptions.DEFAULT_WINDOW_SIZE).isEmpty());
+        assertEquals("1428", TftpOptions.request(1428, TftpOptions.DEFAULT_WINDOW_SIZE).get(TftpOptions.BLKSIZE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequestRejectsOutOfRangeBlockSize() {
+        TftpOptions.request(TftpOptions.MAX_BLOCK_SIZE + 1, TftpOptions.DEFAULT_WINDOW_SIZE);
+    }
+
+    @Test
+    public void testServerCapsBlockSize() {
+        TftpOptions options = TftpOptions.negotiate(TftpOptions.request(65464, TftpOptions.DEFAULT_WINDOW_SIZE), 8192, 1);
+        assertEquals(8192, options.getBlockSize());
+        assertEquals("8192", options.getAcknowledged().get(TftpOptions.BLKSIZE));
+    }
+
+    @Test
+    public void testServerIgnoresInvalidBlockSize() {
+        TftpOptions options = TftpOptions.negotiate(Collections.singletonMap(TftpOptions.BLKSIZE, "4"), 8192, 1);
+        assertTrue(options.isEmpty());
+        assertEquals(TftpOptions.DEFAULT_BLOCK_SIZE, options.getBlockSize());
+    }
+
+    @Test
+    public void testServerCapsWindowSize() {
+        TftpOptions options = TftpOptions.negotiate(TftpOptions.request(1428, 256), 8192, 64);
+        assertEquals(64, options.getWindowSize());
+        assertEquals("64", options.getAcknowledged().get(TftpOptions.WINDOWSIZE));
+    }
+
+    @Test
+    public void testServerWithoutWindowingIgnoresWindowSize() {
+        TftpOptions options = TftpOptions.negotiate(TftpOptions.request(512, 16), 8192, 1);
+        assertTrue(options.isEmpty());
+        assertEquals(TftpOptions.DEFAULT_WINDOW_SIZE, options.getWindowSize());
+    }
+
+    @Test
+    public void testTransferSizeIsAcknowledgedByHandler() {
+        TftpOptions options = TftpOptions.negotiate(TftpOptions.request(512, 1, 0), 8192, 1);
+        assertTrue(options.isTransferSizeRequested());
+        assertTrue(options.isEmpty());
+
+        options.acknowledgeTransferSize(123456789012L);
+        assertEquals(123456789012L, options.getTransferSize());
+        assertEquals("123456789012", options.getAcknowledged().get(TftpOptions.TSIZE));
+    }
+
+    @Test
+    public void testClientReadsTransferSize() throws TftpException {
+        Map<String, String> requested = TftpOptions.request(512, 1, 0);
+        TftpOptions options = TftpOptions.fromOack(requested, Collections.singletonMap(TftpOptions.TSIZE, "4096"));
+        assertEquals(4096, options.getTransferSize());
+        assertEquals(-1, new TftpOptions().getTransferSize());
+    }
+
+    @Test
+    public void testServerEchoesTimeout() {
+        TftpOptions options = TftpOptions.negotiate(TftpOptions.request(512, 1, -1, 5), 8192, 1);
+        assertEquals(5, options.getTimeout());
+        assertEquals("5", options.getAcknowledged().get(TftpOptions.TIMEOUT));
+    }
+
+    @Test
+    public void testClientRejectsChangedTimeout() {
+        Map<String, String> requested = TftpOptions.request(512, 1, -1, 5);
+        try {
+            TftpOptions.fromOack(requested, Collections.singletonMap(TftpOptions.TIMEOUT, "6"));
+            fail("Expected option negotiation failure");
+        } catch (TftpException e) {
+            assertEquals(TftpException.OPTION_NEGOTIATION, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testClientAcceptsSmallerBlockSize() throws TftpException {
+        Map<String, String> requested = TftpOptions.request(8192, TftpOptions.DEFAULT_WINDOW_SIZE);
+        TftpOptions options = TftpOptions.fromOack(requested, Collections.singletonMap(TftpOptions.BLKSIZE, "1428"));
+        assertEquals(1428, options.getBlockSize());
+    }
+
+    @Test
+    public void testClientRejectsLargerBlockSize() {
+        Map<String, String> requested = TftpOptions.request(1024, TftpOptions.DEFAULT_WINDOW_SIZE);
+        try {
+            TftpOptions.fromOack(requested, Collections.singletonMap(TftpOptions.BLKSIZE, "2048"));
+            fail("Expected option negotiation failure");
+        } catch (TftpException e) {
+            assertEquals(TftpException.OPTION_NEGOTIATION, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testClientRejectsUnrequestedOption() {
+        try {
+            TftpOptions.fromOack(Collections.emptyMap(), Collections.singletonMap(TftpOptions.BLKSIZE, "512"));
+            fail("Expected option negotiation failure");
+        } catch (TftpException e) {
+            assertEquals(TftpException.OPTION_NEGOTIATION, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testMulticastIsAcknowledgedByHandler() {
+        Map<String, String> requested = TftpOptions.requestMulticast(TftpOptions.request(1428, 8, 0));
+        TftpOptions options = TftpOptions.negotiate(requested, 8192, 64);
+        assertTrue(options.isMulticastRequested());
+        assertFalse(options.getAcknowledged().containsKey(TftpOptions.MULTICAST));
+
+        options.acknowledgeMulticast("239.255.69.1", 1758, true);
+        assertEquals("239.255.69.1,1758,1", options.getAcknowledged().get(TftpOptions.MULTICAST));
+        assertEquals(TftpOptions.DEFAULT_WINDOW_SIZE, options.getWindowSize());
+        assertFalse(options.getAcknowledged().containsKey(TftpOptions.WINDOWSIZE));
+    }
+
+    @Test
+    public void testClientReadsMulticast() throws TftpException {
+        Map<String, String> requested = TftpOptions.requestMulticast(TftpOptions.request(512, 1));
+        TftpOptions options = TftpOptions.fromOack(requested,
+                Collections.singletonMap(TftpOptions.MULTICAST, "239.255.69.2,1758,0"));
+        assertEquals("239.255.69.2", options.getMulticastAddress());
+        assertEquals(1758, options.getMulticastPort());
+        assertFalse(options.isMasterClient());
+
+        // a later OACK may only hand over the master role
+        assertTrue(TftpOptions.fromOack(requested, Collections.singletonMap(TftpOptions.MULTICAST, ",,1")).isMasterClient());
+        try {
+            TftpOptions.fromOack(requested, Collections.singletonMap(TftpOptions.MULTICAST, "239.255.69.2,1758"));
+            fail("Expected option negotiation failure");
+        } catch (TftpException e) {
+            assertEquals(TftpException.OPTION_NEGOTIATION, e.getErrorCode());
+        }
+    }
+}
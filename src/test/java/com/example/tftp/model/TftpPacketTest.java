@@ -3,6 +3,8 @@ package com.example.tftp.model;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class TftpPacketTest {
 
@@ -63,6 +65,38 @@ public class TftpPacketTest {
         assertEquals("File not found", restored.getErrorMessage());
     }
 
+    @Test
+    public void testRRQWithOptionsSerialization() throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("blksize", "1428");
+        TftpPacket original = TftpPacket.createRRQ("boot.img", TftpMode.OCTET, options);
+        TftpPacket restored = TftpPacket.fromBytes(original.toBytes());
+
+        assertEquals(TftpOpCode.RRQ, restored.getOpCode());
+        assertEquals("boot.img", restored.getFilename());
+        assertEquals("1428", restored.getOptions().get("blksize"));
+    }
+
+    @Test
+    public void testOACKPacketSerialization() throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("blksize", "8192");
+        TftpPacket original = TftpPacket.createOACK(options);
+        TftpPacket restored = TftpPacket.fromBytes(original.toBytes());
+
+        assertEquals(TftpOpCode.OACK, restored.getOpCode());
+        assertEquals(options, restored.getOptions());
+    }
+
+    @Test
+    public void testOptionNamesAreCaseInsensitive() throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("BlkSize", "1024");
+        TftpPacket restored = TftpPacket.fromBytes(TftpPacket.createWRQ("a.bin", TftpMode.OCTET, options).toBytes());
+
+        assertEquals("1024", restored.getOptions().get("blksize"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testInvalidOpCode() {
         TftpOpCode.fromValue(99);
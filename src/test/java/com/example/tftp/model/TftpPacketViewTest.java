@@ -0,0 +1,77 @@
+package com.example.tftp.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class TftpPacketViewTest {
+
+    @Test
+    public void testEncodedAckMatchesPacket() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        TftpPacketView.encodeAck(buffer, 65535);
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertArrayEquals(TftpPacket.createACK(65535).toBytes(), bytes);
+    }
+
+    @Test
+    public void testEncodedDataMatchesPacket() throws IOException {
+        byte[] payload = "Hello, TFTP!".getBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(TftpOptions.HEADER_SIZE + 512);
+        TftpPacketView.beginData(buffer, 7).put(payload).flip();
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertArrayEquals(TftpPacket.createDATA(7, payload).toBytes(), bytes);
+    }
+
+    @Test
+    public void testDecodeDataInPlace() throws IOException {
+        byte[] payload = "block payload".getBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(TftpPacket.createDATA(300, payload).toBytes());
+
+        TftpPacketView view = new TftpPacketView().wrap(buffer);
+        assertTrue(view.isData());
+        assertFalse(view.isAck());
+        assertEquals(300, view.getBlockNumber());
+        assertEquals(payload.length, view.getDataLength());
+        assertArrayEquals(payload, Arrays.copyOfRange(buffer.array(), view.getDataOffset(),
+                view.getDataOffset() + view.getDataLength()));
+
+        ByteBuffer data = view.data();
+        assertEquals(payload.length, data.remaining());
+        assertEquals('b', data.get(data.position()));
+    }
+
+    @Test
+    public void testDecodeError() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(TftpPacket.createERROR(TftpException.DISK_FULL, "Disk full").toBytes());
+
+        TftpPacketView view = new TftpPacketView().wrap(buffer);
+        assertTrue(view.isError());
+        assertEquals(TftpException.DISK_FULL, view.getErrorCode());
+        assertEquals("Disk full", view.getErrorMessage());
+    }
+
+    @Test
+    public void testOackFallsBackToFullDecode() throws IOException {
+        TftpPacket oack = TftpPacket.createOACK(TftpOptions.request(1024, 4));
+        TftpPacketView view = new TftpPacketView().wrap(ByteBuffer.wrap(oack.toBytes()));
+
+        assertTrue(view.isOack());
+        assertEquals("1024", view.toPacket().getOptions().get(TftpOptions.BLKSIZE));
+    }
+
+    @Test
+    public void testShortDatagramIsNothing() {
+        TftpPacketView view = new TftpPacketView().wrap(ByteBuffer.wrap(new byte[] {0, 3, 0}));
+
+        assertFalse(view.isData());
+        assertEquals(3, view.getOpCodeValue());
+        assertEquals(-1, new TftpPacketView().wrap(ByteBuffer.wrap(new byte[] {0})).getOpCodeValue());
+    }
+}
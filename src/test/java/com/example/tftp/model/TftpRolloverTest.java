@@ -0,0 +1,50 @@
+package com.example.tftp.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TftpRolloverTest {
+
+    @Test
+    public void testBlocksBelowRolloverAreUnchanged() {
+        for (TftpRollover rollover : TftpRollover.values()) {
+            assertEquals(0, rollover.toWire(0));
+            assertEquals(65535, rollover.toWire(65535));
+            assertEquals(1234, rollover.fromWire(1234, 1234));
+        }
+    }
+
+    @Test
+    public void testWrapToZero() {
+        assertEquals(0, TftpRollover.ZERO.toWire(65536));
+        assertEquals(1, TftpRollover.ZERO.toWire(65537));
+        assertEquals(0, TftpRollover.ZERO.toWire(65536L * 5));
+        assertEquals(65536, TftpRollover.ZERO.fromWire(0, 65536));
+        assertEquals(65535, TftpRollover.ZERO.fromWire(65535, 65536)); // duplicate of the previous lap
+    }
+
+    @Test
+    public void testWrapToOne() {
+        assertEquals(1, TftpRollover.ONE.toWire(65536));
+        assertEquals(65535, TftpRollover.ONE.toWire(131070));
+        assertEquals(1, TftpRollover.ONE.toWire(131071));
+        assertEquals(65536, TftpRollover.ONE.fromWire(1, 65536));
+        assertEquals(131071, TftpRollover.ONE.fromWire(1, 131070));
+    }
+
+    @Test
+    public void testMultiGigabyteOffsets() {
+        long block = 8L * 1024 * 1024 * 1024 / 512 + 1; // past 8 GiB at 512-byte blocks
+        for (TftpRollover rollover : TftpRollover.values()) {
+            int wire = rollover.toWire(block);
+            assertTrue(wire >= 0 && wire <= TftpRollover.MAX_BLOCK_NUMBER);
+            assertEquals(block, rollover.fromWire(wire, block - 10));
+            assertEquals(block, rollover.fromWire(wire, block + 10));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidValue() {
+        TftpRollover.fromValue(2);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.tftp.server;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BandwidthShaperTest {
+
+    private static InetSocketAddress client(int last, int port) throws Exception {
+        return new InetSocketAddress(InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) last}), port);
+    }
+
+    @Test
+    public void testParseRate() {
+        assertEquals(1500, BandwidthShaper.parseRate("1500"));
+        assertEquals(500 * 1024, BandwidthShaper.parseRate("500K"));
+        assertEquals(10 * 1024 * 1024, BandwidthShaper.parseRate("10m"));
+        assertEquals(1536L * 1024 * 1024, BandwidthShaper.parseRate("1.5G"));
+        assertEquals(0, BandwidthShaper.parseRate("0"));
+        try {
+            BandwidthShaper.parseRate("-1M");
+            fail("negative rate accepted");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testTokenBucketPacing() {
+        BandwidthShaper.TokenBucket bucket = new BandwidthShaper.TokenBucket(512 * 1024);
+        long now = System.nanoTime();
+        // весь burst (64K) уходит сразу, следующий пакет ждёт, пока долг не погасится
+        assertEquals(0, bucket.reserve(64 * 1024, now));
+        assertEquals(0, bucket.reserve(1024, now));
+        long wait = bucket.reserve(1024, now);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1953), wait, TimeUnit.MICROSECONDS.toNanos(5));
+        assertEquals(0, bucket.debtNanos(now + TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void testRulesAndPerClientLimits() throws Exception {
+        BandwidthShaper shaper = new BandwidthShaper(0, 2 * 1024 * 1024);
+        shaper.addRule("*.iso", 1024 * 1024, 1);
+        shaper.addRule("pxelinux*", 0, 4);
+
+        BandwidthShaper.Session image = shaper.open(client(1, 1000), "ubuntu.iso");
+        BandwidthShaper.Session loader = shaper.open(client(1, 1001), "pxelinux.0");
+        BandwidthShaper.Session other = shaper.open(client(2, 1002), "other/config.txt");
+
+        assertEquals(1024 * 1024, image.getLimit());
+        assertEquals(2 * 1024 * 1024, loader.getLimit());
+        assertEquals(4.0, loader.getWeight(), 0);
+        assertEquals(1.0, other.getWeight(), 0);
+        assertEquals(3, shaper.getSessionCount());
+        assertEquals(3, shaper.getSessions().size());
+
+        image.close();
+        image.close();
+        loader.close();
+        other.close();
+        assertEquals(0, shaper.getSessionCount());
+
+        try {
+            shaper.addRule("*", 0, 0);
+            fail("zero weight accepted");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void testGlobalLimitIsSharedByWeight() throws Exception {
+        BandwidthShaper shaper = new BandwidthShaper(4 * 1024 * 1024, 0);
+        shaper.addRule("heavy*", 0, 3);
+        AtomicLong lightBytes = new AtomicLong();
+        AtomicLong heavyBytes = new AtomicLong();
+        long measureFrom = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        long deadline = measureFrom + TimeUnit.SECONDS.toNanos(1);
+
+        Thread light = sender(shaper.open(client(1, 1000), "light.bin"), lightBytes, measureFrom, deadline);
+        Thread heavy = sender(shaper.open(client(2, 1000), "heavy.bin"), heavyBytes, measureFrom, deadline);
+        light.start();
+        heavy.start();
+        light.join();
+        heavy.join();
+
+        // оба клиента ACK-ают мгновенно; делят лимит примерно 1:3 (без весов было бы 1:1)
+        double ratio = (double) heavyBytes.get() / lightBytes.get();
+        assertTrue("heavy/light = " + ratio, ratio > 1.8 && ratio < 4.5);
+        long total = lightBytes.get() + heavyBytes.get();
+        assertTrue("total = " + total, total < 5 * 1024 * 1024);
+    }
+
+    private static Thread sender(BandwidthShaper.Session session, AtomicLong sent, long measureFrom, long deadline) {
+        return new Thread(() -> {
+            try {
+                long now;
+                while ((now = System.nanoTime()) < deadline) {
+                    session.acquire(1428);
+                    if (now >= measureFrom) sent.addAndGet(1428);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                session.close();
+            }
+        });
+    }
+}
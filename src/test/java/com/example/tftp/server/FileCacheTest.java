@@ -0,0 +1,97 @@
+package com.example.tftp.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+public class FileCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(String name, int size) throws IOException {
+        File file = folder.newFile(name);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) data[i] = (byte) i;
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    public void testSecondReadIsHit() throws IOException {
+        FileCache cache = new FileCache(1024 * 1024);
+        File file = createFile("boot.img", 1000);
+
+        ByteBuffer first = cache.get(file);
+        ByteBuffer second = cache.get(file);
+
+        assertEquals(1000, first.remaining());
+        assertEquals(1000, second.remaining());
+        assertEquals((byte) 999, second.get(999));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1000, cache.getUsedBytes());
+    }
+
+    @Test
+    public void testModifiedFileIsReloaded() throws IOException {
+        FileCache cache = new FileCache(1024 * 1024);
+        File file = createFile("boot.img", 1000);
+        cache.get(file);
+
+        Files.write(file.toPath(), new byte[500]);
+        assertEquals(500, cache.get(file).remaining());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(500, cache.getUsedBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        FileCache cache = new FileCache(2500);
+        File a = createFile("a", 1000);
+        File b = createFile("b", 1000);
+        File c = createFile("c", 1000);
+
+        cache.get(a);
+        cache.get(b);
+        cache.get(a); // b is now the eldest
+        cache.get(c);
+
+        assertEquals(1, cache.getEvictionCount());
+        cache.get(a);
+        assertEquals(2, cache.getHitCount());
+        cache.get(b);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testLargeFileIsNotCached() throws IOException {
+        FileCache cache = new FileCache(1000);
+        File file = createFile("kernel", 800); // more than half of the budget
+
+        assertNull(cache.get(file));
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    public void testCachedSourceServesSlices() throws IOException {
+        FileCache cache = new FileCache(1024 * 1024);
+        File file = createFile("boot.img", 1000);
+
+        try (BlockSource source = BlockSource.open(file, cache, null)) {
+            assertEquals(1000, source.length());
+            ByteBuffer dst = ByteBuffer.allocate(16);
+            dst.put((byte) -1);
+            source.read(dst, 600, 10);
+
+            assertEquals(11, dst.position());
+            assertEquals((byte) 600, dst.get(1));
+            assertEquals((byte) 609, dst.get(10));
+        }
+    }
+}
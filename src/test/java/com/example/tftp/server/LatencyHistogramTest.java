@@ -0,0 +1,43 @@
+package com.example.tftp.server;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private static final long US = 1000L;
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long v : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(v + " above its bucket", v <= LatencyHistogram.upperBound(index));
+            if (index > 0) {
+                assertTrue(v + " in a lower bucket", v > LatencyHistogram.upperBound(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentileErrorIsBounded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordNanos(i * 100 * US); // 0.1 .. 100 ms
+        }
+        long p50 = histogram.percentileMicros(50);
+        long p99 = histogram.percentileMicros(99);
+        assertTrue(p50 >= 50_000 && p50 <= 50_000 * 1.125);
+        assertTrue(p99 >= 99_000 && p99 <= 100_000);
+        assertEquals(100_000, histogram.percentileMicros(100));
+        assertEquals(100_000, histogram.getMaxMicros());
+        assertEquals(1000, histogram.getCount());
+        assertEquals(50_050, histogram.getMeanMicros());
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileMicros(99));
+        assertEquals(0, histogram.getMeanMicros());
+    }
+}
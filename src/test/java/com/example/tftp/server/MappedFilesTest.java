@@ -0,0 +1,102 @@
+package com.example.tftp.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+public class MappedFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(String name, int size) throws IOException {
+        File file = folder.newFile(name);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) data[i] = (byte) i;
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    public void testConcurrentReadersShareOneMapping() throws IOException {
+        MappedFiles mappedFiles = new MappedFiles(1);
+        File file = createFile("image.iso", 4096);
+
+        MappedFiles.Mapping first = mappedFiles.acquire(file);
+        MappedFiles.Mapping second = mappedFiles.acquire(file);
+
+        assertSame(first, second);
+        assertEquals(1, mappedFiles.getMappedCount());
+        assertEquals(1, mappedFiles.getSharedCount());
+
+        mappedFiles.release(first);
+        assertEquals(1, mappedFiles.getActiveCount());
+        mappedFiles.release(second);
+        assertEquals(0, mappedFiles.getActiveCount());
+    }
+
+    @Test
+    public void testSmallFileIsNotMapped() throws IOException {
+        MappedFiles mappedFiles = new MappedFiles(8192);
+        assertNull(mappedFiles.acquire(createFile("small", 4096)));
+    }
+
+    @Test
+    public void testChangedFileGetsNewMapping() throws IOException {
+        MappedFiles mappedFiles = new MappedFiles(1);
+        File file = createFile("image.iso", 4096);
+        MappedFiles.Mapping old = mappedFiles.acquire(file);
+
+        Files.write(file.toPath(), new byte[8192]);
+        MappedFiles.Mapping fresh = mappedFiles.acquire(file);
+
+        assertNotSame(old, fresh);
+        assertEquals(8192, fresh.size);
+        mappedFiles.release(old); // must not drop the fresh mapping
+        assertEquals(1, mappedFiles.getActiveCount());
+        mappedFiles.release(fresh);
+    }
+
+    @Test
+    public void testMappedSourceServesBlocks() throws IOException {
+        MappedFiles mappedFiles = new MappedFiles(1);
+        File file = createFile("image.iso", 4096);
+
+        try (BlockSource source = BlockSource.open(file, null, mappedFiles)) {
+            assertEquals(4096, source.length());
+            ByteBuffer dst = ByteBuffer.allocate(516);
+            dst.position(4);
+            source.read(dst, 1024, 512);
+
+            assertEquals(516, dst.position());
+            assertEquals((byte) 1024, dst.get(4));
+            assertEquals((byte) 1535, dst.get(515));
+        }
+        assertEquals(0, mappedFiles.getActiveCount());
+    }
+
+    @Test
+    public void testMappedSourceGathersWithoutCopy() throws IOException {
+        MappedFiles mappedFiles = new MappedFiles(1);
+        File file = createFile("image.iso", 4096);
+
+        try (BlockSource source = BlockSource.open(file, null, mappedFiles)) {
+            ByteBuffer[] packet = new ByteBuffer[BlockSource.MAX_GATHER];
+            packet[0] = ByteBuffer.allocateDirect(516);
+            packet[0].putInt(0x00030003);
+            int count = source.gather(packet, 1024, 512);
+
+            // заголовок отдельно, блок — прямо из отображения
+            assertEquals(2, count);
+            assertEquals(4, packet[0].remaining());
+            assertEquals(512, packet[1].remaining());
+            assertEquals((byte) 1024, packet[1].get(packet[1].position()));
+            assertEquals((byte) 1535, packet[1].get(packet[1].limit() - 1));
+        }
+    }
+}
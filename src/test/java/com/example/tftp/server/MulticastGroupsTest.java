@@ -0,0 +1,71 @@
+package com.example.tftp.server;
+
+import com.example.tftp.model.TftpOptions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Collections;
+
+public class MulticastGroupsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MulticastGroups.Member member(int port, int blockSize) {
+        TftpOptions options = TftpOptions.negotiate(
+                TftpOptions.requestMulticast(TftpOptions.request(blockSize, 1)), 8192, 1);
+        return new MulticastGroups.Member(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), options);
+    }
+
+    private File createFile(String name) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), new byte[1000]);
+        return file;
+    }
+
+    @Test
+    public void testSecondRequestJoinsRunningTransfer() throws IOException {
+        MulticastGroups groups = new MulticastGroups(InetAddress.getByName("239.255.69.1"), 1758);
+        File file = createFile("boot.img");
+        MulticastGroups.Member first = member(5001, 1428);
+        MulticastGroups.Member second = member(5002, 1428);
+
+        MulticastGroups.Transfer transfer = groups.join(file, first);
+        assertTrue(transfer.isRunBy(first));
+        assertSame(transfer, groups.join(file, second));
+        assertFalse(transfer.isRunBy(second));
+
+        assertFalse(transfer.close()); // second has not been picked up yet
+        assertEquals(Collections.singletonList(second), transfer.takeJoined());
+        assertTrue(transfer.close());
+        assertEquals(0, groups.getActiveCount());
+    }
+
+    @Test
+    public void testOtherBlockSizeGetsOwnGroup() throws IOException {
+        MulticastGroups groups = new MulticastGroups(InetAddress.getByName("239.255.69.1"), 1758);
+        File file = createFile("boot.img");
+
+        MulticastGroups.Transfer small = groups.join(file, member(5001, 512));
+        MulticastGroups.Transfer large = groups.join(file, member(5002, 1428));
+
+        assertNotSame(small, large);
+        assertEquals("239.255.69.1", small.group.getAddress().getHostAddress());
+        assertEquals("239.255.69.2", large.group.getAddress().getHostAddress());
+
+        small.abort();
+        MulticastGroups.Transfer next = groups.join(createFile("kernel"), member(5003, 512));
+        assertEquals("239.255.69.1", next.group.getAddress().getHostAddress()); // address reused
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnicastAddressIsRejected() throws IOException {
+        new MulticastGroups(InetAddress.getByName("10.0.0.1"), 1758);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.tftp.server;
+
+import com.example.tftp.model.TftpException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.management.ObjectName;
+
+public class ServerMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSessionLifecycle() {
+        ServerMetrics metrics = new ServerMetrics("pool");
+        metrics.sessionQueued();
+        metrics.sessionQueued();
+        metrics.sessionQueued();
+        assertEquals(3, metrics.getQueuedSessions());
+
+        metrics.sessionStarted();
+        metrics.sessionStarted();
+        metrics.sessionDropped();
+        assertEquals(0, metrics.getQueuedSessions());
+        assertEquals(2, metrics.getActiveSessions());
+
+        metrics.sessionEnded(true, 5_000_000);
+        metrics.sessionEnded(false, 1_000_000);
+        assertEquals(0, metrics.getActiveSessions());
+        assertEquals(1, metrics.getCompletedSessions());
+        assertEquals(1, metrics.getFailedSessions());
+        // only completed transfers count towards the duration
+        assertEquals(5, metrics.getTransferMillisMax());
+    }
+
+    @Test
+    public void testTrafficAndErrors() {
+        ServerMetrics metrics = new ServerMetrics("nio");
+        metrics.blockSent(512);
+        metrics.blockSent(100);
+        metrics.blockReceived(1428);
+        metrics.retransmitted();
+        metrics.roundTrip(250_000);
+        metrics.errorSent(TftpException.FILE_NOT_FOUND);
+        metrics.errorSent(TftpException.FILE_NOT_FOUND);
+        metrics.errorSent(42);
+
+        assertEquals(612, metrics.getBytesSent());
+        assertEquals(2, metrics.getBlocksSent());
+        assertEquals(1428, metrics.getBytesReceived());
+        assertEquals(1, metrics.getRetransmits());
+        assertEquals(250, metrics.getBlockRttMicrosMax());
+        assertEquals(Long.valueOf(2), metrics.getErrorsByCode().get("1"));
+        assertEquals(Long.valueOf(1), metrics.getErrorsByCode().get("other"));
+        assertTrue(metrics.toJson().contains("\"errors\":{\"1\":2,\"other\":1}"));
+    }
+
+    @Test
+    public void testRegistersMBeanAndWritesSnapshotOnStop() throws Exception {
+        File snapshot = new File(folder.getRoot(), "metrics.json");
+        ServerMetrics metrics = new ServerMetrics("pool");
+        metrics.setSnapshotFile(snapshot, 60);
+        metrics.start(16999);
+        ObjectName name = new ObjectName("com.example.tftp:type=Server,port=16999");
+        try {
+            metrics.blockSent(512);
+            assertEquals(512L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesSent"));
+        } finally {
+            metrics.stop();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        String json = new String(Files.readAllBytes(snapshot.toPath()), StandardCharsets.UTF_8);
+        assertTrue(json, json.startsWith("{\"engine\":\"pool\""));
+        assertTrue(json, json.contains("\"bytes_sent\":512"));
+    }
+}
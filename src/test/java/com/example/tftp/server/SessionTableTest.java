@@ -0,0 +1,96 @@
+package com.example.tftp.server;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+public class SessionTableTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("127.0.0.1", 40000);
+
+    private static byte[] rrq(String filename) {
+        return ("\0\1" + filename + "\0octet\0").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testDuplicateRequestIsAbsorbed() {
+        TimerWheel wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 64);
+        SessionTable table = new SessionTable(wheel, 1000);
+        byte[] request = rrq("boot.img");
+        // хвост буфера за длиной пакета не входит в ключ
+        byte[] padded = java.util.Arrays.copyOf(request, 516);
+
+        SessionTable.Entry entry = table.open(CLIENT, padded, request.length);
+        assertNotNull(entry);
+        assertNull(table.open(CLIENT, request, request.length));
+        assertNotNull(table.open(new InetSocketAddress("127.0.0.1", 40001), request, request.length));
+        assertNotNull(table.open(CLIENT, rrq("other.img"), rrq("other.img").length));
+        assertEquals(1, table.getDuplicates());
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void testClosedEntryLeavesAtOnce() {
+        TimerWheel wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 64);
+        SessionTable table = new SessionTable(wheel, 1000);
+        byte[] request = rrq("boot.img");
+
+        table.open(CLIENT, request, request.length).close();
+        // клиент снова получил тот же порт: это новая загрузка, а не копия запроса
+        assertNotNull(table.open(CLIENT, request, request.length));
+        assertEquals(1, wheel.size());
+        assertEquals(0, table.getDuplicates());
+    }
+
+    @Test
+    public void testStaleEntryIsEvicted() {
+        TimerWheel wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 64);
+        long start = System.nanoTime();
+        SessionTable table = new SessionTable(wheel, 1000);
+        byte[] request = rrq("boot.img");
+
+        SessionTable.Entry stale = table.open(CLIENT, request, request.length);
+        wheel.expire(start + 500 * MS);
+        assertEquals(1, table.size());
+        wheel.expire(start + 1050 * MS);
+        assertEquals(0, table.size());
+        assertEquals(1, table.getEvicted());
+
+        // новый запрос не вытесняется закрытием старой записи
+        SessionTable.Entry fresh = table.open(CLIENT, request, request.length);
+        stale.close();
+        assertEquals(1, table.size());
+        fresh.close();
+        assertEquals(0, table.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRunningTransferOutlivesStalePeriod() throws InterruptedException {
+        // перенос считается от настоящего времени, поэтому колесо двигаем по часам, а не вручную
+        TimerWheel wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 64);
+        SessionTable table = new SessionTable(wheel, 100);
+        byte[] request = rrq("boot.img");
+
+        SessionTable.Entry running = table.open(CLIENT, request, request.length);
+        running.touch();
+        Thread.sleep(150);
+        wheel.expire(System.nanoTime());
+        // передача шла весь период: запись остаётся, проверка переносится
+        assertEquals(1, table.size());
+        assertEquals(0, table.getEvicted());
+        assertEquals(1, wheel.size());
+
+        // следующий период без активности: обработчик завис, запись вытесняется
+        Thread.sleep(150);
+        wheel.expire(System.nanoTime());
+        assertEquals(0, table.size());
+        assertEquals(1, table.getEvicted());
+
+        running.close();
+        assertEquals(0, wheel.size());
+    }
+}
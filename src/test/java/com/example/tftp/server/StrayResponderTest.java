@@ -0,0 +1,94 @@
+package com.example.tftp.server;
+
+import com.example.tftp.model.TftpException;
+import com.example.tftp.model.TftpOpCode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+public class StrayResponderTest {
+
+    private static final byte[] ACK_1 = {0, 4, 0, 1};
+
+    private static InetSocketAddress loopback(DatagramChannel channel) throws Exception {
+        int port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    private static ByteBuffer receive(DatagramChannel channel) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(516);
+        for (int i = 0; i < 40 && channel.receive(buffer) == null; i++) {
+            Thread.sleep(5);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testKernelSplitsClientFromStrays() throws Exception {
+        try (DatagramChannel client = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             DatagramChannel stray = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             DatagramChannel transfer = StrayResponder.openTransferChannel(true)) {
+            transfer.connect(loopback(client));
+            DatagramChannel twin = StrayResponder.openTwin(transfer);
+            assertNotNull(twin);
+            try {
+                transfer.configureBlocking(false);
+                client.configureBlocking(false);
+                stray.configureBlocking(false);
+
+                client.send(ByteBuffer.wrap(ACK_1), loopback(transfer));
+                stray.send(ByteBuffer.wrap(ACK_1), loopback(transfer));
+
+                // пакет клиента получает подключённый канал, чужой — двойник
+                assertEquals(4, receive(transfer).remaining());
+                assertEquals(0, transfer.read(ByteBuffer.allocate(516)));
+
+                ServerMetrics metrics = new ServerMetrics("test");
+                Thread.sleep(20);
+                StrayResponder.answer(twin, ByteBuffer.allocate(516), metrics);
+
+                ByteBuffer error = receive(stray);
+                assertEquals(TftpOpCode.ERROR.getValue(), error.getShort(0));
+                assertEquals(TftpException.UNKNOWN_TRANSFER_ID, error.getShort(2));
+                assertEquals(0, receive(client).remaining());
+            } finally {
+                twin.close();
+            }
+        }
+    }
+
+    @Test
+    public void testUnsharedTransferPortTakesNoTwin() throws Exception {
+        try (DatagramChannel transfer = StrayResponder.openTransferChannel(false)) {
+            // без -E порт передачи не открыт для SO_REUSEADDR
+            assertFalse(transfer.getOption(StandardSocketOptions.SO_REUSEADDR));
+            assertNull(StrayResponder.openTwin(transfer));
+        }
+    }
+
+    @Test
+    public void testErrorFromStrayIsNotAnswered() throws Exception {
+        try (DatagramChannel stray = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             DatagramChannel transfer = StrayResponder.openTransferChannel(true)) {
+            transfer.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 9));
+            DatagramChannel twin = StrayResponder.openTwin(transfer);
+            assertNotNull(twin);
+            try {
+                stray.configureBlocking(false);
+                stray.send(ByteBuffer.wrap(new byte[]{0, 5, 0, 5, 'x', 0}), loopback(transfer));
+                Thread.sleep(20);
+                StrayResponder.answer(twin, ByteBuffer.allocate(516), new ServerMetrics("test"));
+
+                // ответ на ERROR мог бы зациклить двух серверов
+                assertEquals(0, receive(stray).remaining());
+            } finally {
+                twin.close();
+            }
+        }
+    }
+}
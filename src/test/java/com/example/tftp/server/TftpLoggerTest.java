@@ -0,0 +1,77 @@
+package com.example.tftp.server;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class TftpLoggerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void restoreDefaults() {
+        TftpLogger.setLevel(TftpLogger.Level.INFO);
+        TftpLogger.setRotation(TftpLogger.DEFAULT_MAX_FILE_BYTES, TftpLogger.DEFAULT_MAX_BACKUPS);
+    }
+
+    private List<String> readLog(File dir) throws IOException {
+        return Files.readAllLines(new File(dir, "tftp_log.txt").toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMessagesReachFileWithLevel() throws IOException {
+        File dir = folder.newFolder();
+        TftpLogger.init(dir.getPath());
+
+        TftpLogger.log("Client UI started");
+        TftpLogger.error("Download failed");
+        assertTrue(TftpLogger.flush(5000));
+
+        List<String> lines = readLog(dir);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith("] INFO Client UI started"));
+        assertTrue(lines.get(1).endsWith("] ERROR Download failed"));
+    }
+
+    @Test
+    public void testMessagesBelowLevelAreSkipped() throws IOException {
+        File dir = folder.newFolder();
+        TftpLogger.init(dir.getPath());
+        TftpLogger.setLevel(TftpLogger.Level.WARN);
+
+        TftpLogger.debug("progress");
+        TftpLogger.info("started");
+        TftpLogger.warn("slow");
+        assertTrue(TftpLogger.flush(5000));
+
+        List<String> lines = readLog(dir);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("WARN slow"));
+        assertFalse(TftpLogger.isEnabled(TftpLogger.Level.DEBUG));
+    }
+
+    @Test
+    public void testFileIsRotatedBySize() throws IOException {
+        File dir = folder.newFolder();
+        TftpLogger.init(dir.getPath());
+        TftpLogger.setRotation(1000, 2);
+
+        for (int i = 0; i < 100; i++) {
+            TftpLogger.log("message number " + i);
+            if (i % 10 == 9) assertTrue(TftpLogger.flush(5000));
+        }
+
+        assertTrue(new File(dir, "tftp_log.txt.1").exists());
+        assertTrue(new File(dir, "tftp_log.txt.2").exists());
+        assertFalse(new File(dir, "tftp_log.txt.3").exists());
+        assertTrue(new File(dir, "tftp_log.txt").length() <= 1100);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.tftp.server;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TimerWheelTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testFiresInDeadlineOrder() {
+        TimerWheel wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+        long start = System.nanoTime();
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(() -> fired.add("b"), 50, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> fired.add("a"), 20, TimeUnit.MILLISECONDS);
+        // дальше одного оборота колеса (8 тиков по 10 мс)
+        wheel.schedule(() -> fired.add("c"), 250, TimeUnit.MILLISECONDS);
+        assertEquals(3, wheel.size());
+
+        assertEquals(0, wheel.expire(start));
+        assertEquals(1, wheel.expire(start + 40 * MS));
+        assertEquals(1, wheel.expire(start + 70 * MS));
+        // тот же слот на следующем обороте ещё не срабатывает
+        assertEquals(0, wheel.expire(start + 170 * MS));
+        assertEquals(1, wheel.expire(start + 270 * MS));
+        assertEquals(java.util.Arrays.asList("a", "b", "c"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCancel() {
+        TimerWheel wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+        long start = System.nanoTime();
+        List<String> fired = new ArrayList<>();
+        TimerWheel.Timeout early = wheel.schedule(() -> fired.add("early"), 20, TimeUnit.MILLISECONDS);
+        TimerWheel.Timeout late = wheel.schedule(() -> fired.add("late"), 60, TimeUnit.MILLISECONDS);
+
+        assertTrue(early.cancel()); // ещё в очереди, не в колесе
+        wheel.expire(start + 10 * MS);
+        assertTrue(late.cancel()); // уже в корзине
+        assertFalse(late.cancel());
+        assertEquals(0, wheel.size());
+
+        assertEquals(0, wheel.expire(start + 100 * MS));
+        assertTrue(fired.isEmpty());
+        assertTrue(late.isCancelled());
+    }
+
+    @Test
+    public void testNeverFiresBeforeDeadline() {
+        TimerWheel wheel = new TimerWheel(100, TimeUnit.MILLISECONDS, 8);
+        long scheduledAt = System.nanoTime();
+        // срок в конце тика: тик срабатывания начинается на 90 мс раньше срока
+        TimerWheel.Timeout timeout = wheel.schedule(() -> {}, 190, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, wheel.expire(scheduledAt + 90 * MS)); // срок минус один тик
+        assertEquals(0, wheel.expire(scheduledAt + 100 * MS)); // уже в тике срока, но раньше срока
+        assertEquals(0, wheel.expire(scheduledAt + 190 * MS));
+        assertFalse(timeout.isExpired());
+        assertEquals(1, wheel.expire(scheduledAt + 290 * MS));
+    }
+
+    @Test
+    public void testOverdueFiresOnNextExpire() {
+        TimerWheel wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+        long start = System.nanoTime();
+        wheel.expire(start + 500 * MS);
+        TimerWheel.Timeout timeout = wheel.schedule(() -> {}, 0, TimeUnit.MILLISECONDS);
+        assertEquals(1, wheel.expire(start + 510 * MS));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void testOwnThread() throws Exception {
+        TimerWheel wheel = new TimerWheel();
+        CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule(latch::countDown, i, TimeUnit.MILLISECONDS);
+        }
+        wheel.start("test-timers");
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.tftp.server;
+
+import com.example.tftp.io.TftpReader;
+import com.example.tftp.io.TftpWriter;
+import com.example.tftp.model.TftpOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Whole transfers over loopback between TftpReader/TftpWriter and a server in the same JVM,
+ * for every engine: windows, tsize, block number rollover and a peer that loses packets.
+ */
+@RunWith(Parameterized.class)
+public class TransferRoundTripTest {
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{{"pool"}, {"nio"}});
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String engine;
+    private File serverDir;
+    private int port;
+    private Runnable stopServer;
+    private Thread serverThread;
+
+    public TransferRoundTripTest(String engine) {
+        this.engine = engine;
+    }
+
+    @Before
+    public void startServer() throws Exception {
+        serverDir = folder.newFolder("server");
+        try (DatagramSocket probe = new DatagramSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        if (engine.equals("nio")) {
+            NioTftpServer server = new NioTftpServer(port, serverDir.getPath(), 2);
+            stopServer = server::stop;
+            serverThread = new Thread(server::start, "test-server");
+        } else {
+            TftpServer server = new TftpServer(port, serverDir.getPath());
+            stopServer = server::stop;
+            serverThread = new Thread(server::start, "test-server");
+        }
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        // сервер открывает порт в своём потоке: ждём, пока он не ответит на запрос.
+        // Занимать порт самим для проверки нельзя — сервер может попасть в этот момент
+        byte[] request = "\0\1missing.bin\0octet\0".getBytes(StandardCharsets.US_ASCII);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try (DatagramSocket probe = new DatagramSocket()) {
+            probe.setSoTimeout(20);
+            byte[] reply = new byte[516];
+            while (true) {
+                probe.send(new DatagramPacket(request, request.length, LOOPBACK, port));
+                try {
+                    probe.receive(new DatagramPacket(reply, reply.length));
+                    return;
+                } catch (SocketTimeoutException e) {
+                    if (System.nanoTime() > deadline) fail("Server did not answer on port " + port);
+                }
+            }
+        }
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        stopServer.run();
+        serverThread.join(5000);
+    }
+
+    private byte[] createServerFile(String name, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        Files.write(new File(serverDir, name).toPath(), data);
+        return data;
+    }
+
+    private byte[] read(String name, TftpReader reader, int toPort) throws Exception {
+        File target = new File(folder.getRoot(), "download-" + name);
+        reader.readFile(name, target, LOOPBACK, toPort, null);
+        return Files.readAllBytes(target.toPath());
+    }
+
+    private void write(String name, byte[] data, TftpWriter writer, int toPort) throws Exception {
+        File source = new File(folder.getRoot(), "upload-" + name);
+        Files.write(source.toPath(), data);
+        writer.writeFile(name, source, LOOPBACK, toPort, null);
+    }
+
+    private byte[] uploaded(String name) throws IOException {
+        return Files.readAllBytes(new File(serverDir, name).toPath());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size * 31L).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testWindowedReadReportsTransferSize() throws Exception {
+        byte[] data = createServerFile("windowed.bin", 200_000);
+        AtomicLong transferSize = new AtomicLong(-1);
+        TftpReader reader = new TftpReader();
+        reader.setBlockSize(1428);
+        reader.setWindowSize(16);
+
+        File target = new File(folder.getRoot(), "windowed.bin");
+        reader.readFile("windowed.bin", target, LOOPBACK, port, new TftpReader.ProgressCallback() {
+            @Override public void onProgress(long transferred, long total) {}
+            @Override public void onLog(String message) {}
+            @Override public void onOptionsNegotiated(TftpOptions options) {
+                transferSize.set(options.getTransferSize());
+            }
+        });
+
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertEquals(16, reader.getWindowSize());
+        assertEquals(1428, reader.getBlockSize());
+        assertEquals(data.length, transferSize.get());
+    }
+
+    @Test
+    public void testWindowedWrite() throws Exception {
+        byte[] data = randomBytes(200_001);
+        TftpWriter writer = new TftpWriter();
+        writer.setBlockSize(1428);
+        writer.setWindowSize(16);
+
+        write("upload.bin", data, writer, port);
+
+        assertArrayEquals(data, uploaded("upload.bin"));
+        assertEquals(16, writer.getWindowSize());
+    }
+
+    @Test
+    public void testFileAlignedToBlockSizeEndsWithEmptyBlock() throws Exception {
+        byte[] data = createServerFile("aligned.bin", 512 * 4);
+        assertArrayEquals(data, read("aligned.bin", new TftpReader(), port));
+
+        write("aligned-up.bin", data, new TftpWriter(), port);
+        assertArrayEquals(data, uploaded("aligned-up.bin"));
+    }
+
+    @Test
+    public void testBlockNumberRollsOverInBothDirections() throws Exception {
+        // 70000 блоков по 8 байт: номер блока проходит через 65535 -> 0
+        byte[] data = createServerFile("rollover.bin", 8 * 70_000 + 3);
+        TftpReader reader = new TftpReader();
+        reader.setBlockSize(8);
+        reader.setWindowSize(64);
+        assertArrayEquals(data, read("rollover.bin", reader, port));
+
+        TftpWriter writer = new TftpWriter();
+        writer.setBlockSize(8);
+        writer.setWindowSize(64);
+        write("rollover-up.bin", data, writer, port);
+        assertArrayEquals(data, uploaded("rollover-up.bin"));
+    }
+
+    @Test
+    public void testLockStepSurvivesLostDataAndAcks() throws Exception {
+        byte[] data = createServerFile("lossy.bin", 512 * 40 + 100);
+        try (LossyProxy proxy = new LossyProxy(port, 7, 5, 41)) {
+            assertArrayEquals(data, read("lossy.bin", new TftpReader(), proxy.port()));
+            assertTrue(proxy.dropped.get() > 0);
+        }
+        try (LossyProxy proxy = new LossyProxy(port, 7, 5, 41)) {
+            write("lossy-up.bin", data, new TftpWriter(), proxy.port());
+            assertArrayEquals(data, uploaded("lossy-up.bin"));
+            assertTrue(proxy.dropped.get() > 0);
+        }
+    }
+
+    @Test
+    public void testWindowSurvivesLostDataAndAcks() throws Exception {
+        byte[] data = createServerFile("lossy-window.bin", 1024 * 300 + 1);
+        TftpReader reader = new TftpReader();
+        reader.setBlockSize(1024);
+        reader.setWindowSize(8);
+        try (LossyProxy proxy = new LossyProxy(port, 11, 3, 301)) {
+            assertArrayEquals(data, read("lossy-window.bin", reader, proxy.port()));
+            assertTrue(proxy.dropped.get() > 0);
+        }
+
+        TftpWriter writer = new TftpWriter();
+        writer.setBlockSize(1024);
+        writer.setWindowSize(8);
+        try (LossyProxy proxy = new LossyProxy(port, 11, 3, 301)) {
+            write("lossy-window-up.bin", data, writer, proxy.port());
+            assertArrayEquals(data, uploaded("lossy-window-up.bin"));
+            assertTrue(proxy.dropped.get() > 0);
+        }
+    }
+
+    /**
+     * Relays one transfer between a client and the server, dropping the first copy of every
+     * {@code dataEvery}-th DATA block and {@code ackEvery}-th ACK in either direction. The final
+     * block and its ACK always get through: after the last ACK nobody is left to answer a resend.
+     */
+    private static final class LossyProxy implements AutoCloseable {
+        private final DatagramSocket clientSide = new DatagramSocket(0, LOOPBACK);
+        private final DatagramSocket serverSide = new DatagramSocket(0, LOOPBACK);
+        private final int dataEvery;
+        private final int ackEvery;
+        private final int lastBlock;
+        private final boolean[] droppedData;
+        private final boolean[] droppedAck;
+        final AtomicInteger dropped = new AtomicInteger();
+        private volatile SocketAddress client;
+        private volatile SocketAddress server; // the listening port until the transfer's TID answers
+
+        LossyProxy(int serverPort, int dataEvery, int ackEvery, int lastBlock) throws IOException {
+            this.dataEvery = dataEvery;
+            this.ackEvery = ackEvery;
+            this.lastBlock = lastBlock;
+            this.droppedData = new boolean[lastBlock + 1];
+            this.droppedAck = new boolean[lastBlock + 1];
+            this.server = new InetSocketAddress(LOOPBACK, serverPort);
+            start("proxy-up", clientSide, true);
+            start("proxy-down", serverSide, false);
+        }
+
+        int port() {
+            return clientSide.getLocalPort();
+        }
+
+        private void start(String name, DatagramSocket from, boolean upstream) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[65536];
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                boolean tidKnown = false;
+                try {
+                    while (true) {
+                        packet.setLength(buffer.length);
+                        from.receive(packet);
+                        if (upstream) {
+                            client = packet.getSocketAddress();
+                        } else if (!tidKnown) {
+                            server = packet.getSocketAddress();
+                            tidKnown = true;
+                        }
+                        if (drop(buffer, packet.getLength())) continue;
+                        SocketAddress to = upstream ? server : client;
+                        DatagramSocket via = upstream ? serverSide : clientSide;
+                        via.send(new DatagramPacket(buffer, packet.getLength(), to));
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            }, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private synchronized boolean drop(byte[] packet, int length) {
+            if (length < 4) return false;
+            int opcode = packet[1];
+            int block = ((packet[2] & 0xff) << 8) | (packet[3] & 0xff);
+            if (block < 1 || block >= lastBlock) return false;
+            if (opcode == 3 && block % dataEvery == 0 && !droppedData[block]) {
+                droppedData[block] = true;
+            } else if (opcode == 4 && block % ackEvery == 0 && !droppedAck[block]) {
+                droppedAck[block] = true;
+            } else {
+                return false;
+            }
+            dropped.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void close() {
+            clientSide.close();
+            serverSide.close();
+        }
+    }
+}